@@ -0,0 +1,88 @@
+package com.cscie97.benchmark;
+
+import com.cscie97.Utility;
+import com.cscie97.ledger.AccountBalances;
+import com.cscie97.ledger.AccountTable;
+import com.cscie97.ledger.Block;
+import com.cscie97.ledger.LedgerException;
+import com.cscie97.ledger.MerkleTree;
+import com.cscie97.ledger.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks hashing a block: the Merkle root of the block's transactions on its own, and the hash of the whole block.
+ * Parameterized by the number of transactions in the block and the note length of each transaction.
+ *
+ * @author Burak Ufuktepe
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+
+    /**
+     * Number of transactions in the block.
+     */
+    @Param({"10", "100", "1000"})
+    private int blockSize;
+
+    /**
+     * Length of the note of each transaction.
+     */
+    @Param({"16", "1024"})
+    private int noteLength;
+
+    /**
+     * Block whose hash is computed.
+     */
+    private Block block;
+
+    /**
+     * String representations of the block's transactions, which are the leaves of the Merkle tree.
+     */
+    private ArrayList<String> leaves;
+
+    /**
+     * Builds a block with the given number of transactions.
+     *
+     * @throws LedgerException  if a transaction cannot be added to the block
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws LedgerException {
+        String note = "n".repeat(this.noteLength);
+        this.block = new Block(1, Utility.hashString("benchmark seed"), null,
+                new AccountBalances(new AccountTable()));
+        this.leaves = new ArrayList<>();
+        for (int i = 0; i < this.blockSize; i++) {
+            Transaction txn = new Transaction(i, Transaction.MIN_FEE, note, "payer-" + i, "receiver-" + i);
+            this.block.addTransaction(txn);
+            this.leaves.add(txn.toString());
+        }
+    }
+
+    /**
+     * Computes the hash of the block, including the Merkle root of its transactions.
+     *
+     * @return  Hash of the block
+     */
+    @Benchmark
+    public String computeHash() {
+        return this.block.computeHash();
+    }
+
+    /**
+     * Computes the Merkle root of the block's transactions.
+     *
+     * @return  Merkle root
+     */
+    @Benchmark
+    public String getRootHash() {
+        return MerkleTree.getRootHash(this.leaves);
+    }
+}
@@ -0,0 +1,158 @@
+package com.cscie97.benchmark;
+
+import com.cscie97.ledger.Account;
+import com.cscie97.ledger.Block;
+import com.cscie97.ledger.Ledger;
+import com.cscie97.ledger.LedgerException;
+import com.cscie97.ledger.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the Ledger operations on the transaction and query paths: processing a transaction, reading an account
+ * balance, and validating the chain. A fresh ledger is built for every iteration, with every account funded and a
+ * chain of committed blocks in place. The number of transactions per block is fixed by Block.MAX_NUM_OF_TXNS, so the
+ * ledger is parameterized by the number of accounts and the note length.
+ *
+ * The Ledger reports every operation on standard output, which would dominate the measurements, so standard output
+ * is discarded while the ledger is in use.
+ *
+ * @author Burak Ufuktepe
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LedgerBenchmark {
+
+    /**
+     * Class constant for the number of blocks committed before each iteration.
+     */
+    private static final int COMMITTED_BLOCKS = 100;
+
+    /**
+     * Number of accounts in the ledger besides the master account.
+     */
+    @Param({"100", "10000"})
+    private int accountCount;
+
+    /**
+     * Length of the note of each transaction.
+     */
+    @Param({"16", "1024"})
+    private int noteLength;
+
+    /**
+     * Ledger under test.
+     */
+    private Ledger ledger;
+
+    /**
+     * Addresses of the accounts besides the master account.
+     */
+    private String[] addresses;
+
+    /**
+     * Note of each transaction.
+     */
+    private String note;
+
+    /**
+     * Index of the next account to be used.
+     */
+    private int nextAccount;
+
+    /**
+     * Standard output, restored after each iteration.
+     */
+    private PrintStream stdout;
+
+    /**
+     * Builds a ledger with funded accounts and a chain of committed blocks.
+     *
+     * @throws LedgerException  if the ledger cannot be built
+     */
+    @Setup(Level.Iteration)
+    public void setUp() throws LedgerException {
+        this.stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        // The transaction map is shared by all ledgers, so drop the transactions of previous iterations
+        Block.getTransactionMap().clear();
+
+        this.ledger = new Ledger("benchmark", "Ledger benchmark", "benchmark seed");
+        this.addresses = new String[this.accountCount];
+        for (int i = 0; i < this.accountCount; i++) {
+            this.addresses[i] = "account-" + i;
+            this.ledger.createAccount(this.addresses[i]);
+        }
+        this.note = "n".repeat(this.noteLength);
+
+        // Fund the accounts and commit the blocks
+        for (int i = 0; i < COMMITTED_BLOCKS * Block.MAX_NUM_OF_TXNS; i++) {
+            this.ledger.processTransaction(this.ledger.createTransaction(1000, Transaction.MIN_FEE, this.note,
+                    Account.MASTER, this.addresses[i % this.accountCount]));
+        }
+        this.nextAccount = 0;
+    }
+
+    /**
+     * Closes the ledger and restores standard output.
+     *
+     * @throws LedgerException  if the ledger cannot be closed
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown() throws LedgerException {
+        this.ledger.close();
+        System.setOut(this.stdout);
+    }
+
+    /**
+     * Retrieves the address of the next account in round-robin order.
+     *
+     * @return  Address of the account
+     */
+    private String nextAddress() {
+        String address = this.addresses[this.nextAccount];
+        this.nextAccount = (this.nextAccount + 1) % this.accountCount;
+        return address;
+    }
+
+    /**
+     * Creates and processes a transaction. Every tenth call also commits a block.
+     *
+     * @return  Transaction ID
+     * @throws LedgerException  if the transaction is rejected
+     */
+    @Benchmark
+    public long processTransaction() throws LedgerException {
+        return this.ledger.processTransaction(this.ledger.createTransaction(1, Transaction.MIN_FEE, this.note,
+                Account.MASTER, this.nextAddress()));
+    }
+
+    /**
+     * Retrieves the committed balance of an account.
+     *
+     * @return  Account balance
+     * @throws LedgerException  if the account has not been committed
+     */
+    @Benchmark
+    public long getAccountBalance() throws LedgerException {
+        return this.ledger.getAccountBalance(this.nextAddress());
+    }
+
+    /**
+     * Validates the chain of committed blocks.
+     *
+     * @throws LedgerException  if the chain is not valid
+     */
+    @Benchmark
+    public void validate() throws LedgerException {
+        this.ledger.validate();
+    }
+}
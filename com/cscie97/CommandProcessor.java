@@ -5,13 +5,22 @@ import com.cscie97.authentication.AuthenticationService;
 import com.cscie97.controller.StoreControllerService;
 import com.cscie97.ledger.Ledger;
 import com.cscie97.ledger.LedgerException;
+import com.cscie97.ledger.LedgerRouter;
+import com.cscie97.ledger.RetentionPolicy;
 import com.cscie97.ledger.Transaction;
+import com.cscie97.ledger.TransactionResult;
+import com.cscie97.ledger.WriteAheadLog;
 import com.cscie97.store.*;
 import com.cscie97.controller.Event;
 import com.cscie97.controller.EventType;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import static java.util.Map.entry;
 
@@ -42,6 +51,11 @@ public class CommandProcessor {
 	 */
 	private Ledger ledger;
 
+	/**
+	 * Routes accounts and transactions to the root ledger and the ledgers of the regions.
+	 */
+	private LedgerRouter ledgerRouter;
+
 	/**
 	 * Authentication Service instance.
 	 */
@@ -52,24 +66,44 @@ public class CommandProcessor {
 	 */
 	private static final Map<String, Map<String, String>> CMD_PATTERNS_MAP = Map.ofEntries(
 			entry("create-ledger", Map.ofEntries(
-					entry("create-ledger", ""), entry("description", ""), entry("seed", ""))),
+					entry("create-ledger", ""), entry("description", ""), entry("seed", ""),
+					entry("data-dir", "none"), entry("sync-window",
+							String.valueOf(WriteAheadLog.DEFAULT_SYNC_WINDOW_MILLIS)),
+					entry("retain-blocks", "0"), entry("retain-window", "0"))),
+			entry("create-ledger-shard", Map.ofEntries(
+					entry("create-ledger-shard", ""), entry("description", ""), entry("seed", ""),
+					entry("data-dir", "none"), entry("sync-window",
+							String.valueOf(WriteAheadLog.DEFAULT_SYNC_WINDOW_MILLIS)))),
+			entry("settle-ledgers", Map.ofEntries(
+					entry("every", "0"))),
 			entry("create-account", Map.ofEntries(
-					entry("create-account", ""))),
+					entry("create-account", ""), entry("region", LedgerRouter.ROOT_REGION))),
 			entry("process-transaction", Map.ofEntries(
 					entry("amount", ""), entry("fee", ""), entry("note", ""),
 					entry("payer", ""), entry("receiver", ""))),
+			entry("process-transactions", Map.ofEntries(
+					entry("file", ""))),
 			entry("get-account-balance", Map.ofEntries(
 					entry("get-account-balance", ""))),
-			entry("get-account-balances", Map.ofEntries()),
+			entry("get-account-balances", Map.ofEntries(
+					entry("region", LedgerRouter.ROOT_REGION))),
 			entry("get-block", Map.ofEntries(
 					entry("get-block", ""))),
 			entry("get-transaction", Map.ofEntries(
 					entry("get-transaction", ""))),
+			entry("export-blocks", Map.ofEntries(
+					entry("export-blocks", ""), entry("file", ""))),
+			entry("import-blocks", Map.ofEntries(
+					entry("file", ""))),
 			entry("validate", Map.ofEntries()),
 			entry("define-store", Map.ofEntries(
 					entry("define-store", ""), entry("name", ""), entry("address", ""))),
 			entry("show-store", Map.ofEntries(
 					entry("show-store", ""))),
+			entry("set-store-capacity", Map.ofEntries(
+					entry("set-store-capacity", ""), entry("capacity", ""))),
+			entry("get-occupancy", Map.ofEntries(
+					entry("get-occupancy", ""), entry("aisle", "none"))),
 			entry("define-aisle", Map.ofEntries(
 					entry("define-aisle", ""), entry("name", ""), entry("description", ""),
 					entry("location", ""))),
@@ -169,15 +203,22 @@ public class CommandProcessor {
 	 */
 	private static final Map<String, String> methodsMap = Map.ofEntries(
 			entry("create-ledger", "createLedger"),
+			entry("create-ledger-shard", "createLedgerShard"),
+			entry("settle-ledgers", "settleLedgers"),
 			entry("create-account", "createAccount"),
 			entry("process-transaction", "processTransaction"),
+			entry("process-transactions", "processTransactions"),
 			entry("get-account-balance", "getAccountBalance"),
 			entry("get-account-balances", "getAccountBalances"),
 			entry("get-block", "getBlock"),
 			entry("get-transaction", "getTransaction"),
+			entry("export-blocks", "exportBlocks"),
+			entry("import-blocks", "importBlocks"),
 			entry("validate", "validateLedger"),
 			entry("define-store", "defineStore"),
 			entry("show-store", "showStore"),
+			entry("set-store-capacity", "setStoreCapacity"),
+			entry("get-occupancy", "getOccupancy"),
 			entry("define-aisle", "defineAisle"),
 			entry("show-aisle", "showAisle"),
 			entry("define-shelf", "defineShelf"),
@@ -237,22 +278,121 @@ public class CommandProcessor {
 	}
 
 	/**
-	 * Creates a ledger object for the given parameters.
+	 * Creates a ledger object for the given parameters. If a data directory is given, the ledger persists its state
+	 * in that directory and syncs its write-ahead log at most sync-window milliseconds after each change. A persisted
+	 * ledger keeps at most retain-blocks committed blocks, or the blocks committed in the last retain-window seconds,
+	 * on the heap and loads older blocks from the data directory on demand. A value of 0 means no limit.
 	 *
 	 * @param args
 	 * @throws CommandProcessorException
 	 */
 	public void createLedger(Map<String, String> args) throws CommandProcessorException {
+		// Resolve the data directory
+		Path dataDirectory = args.get("data-dir").equals("none") ? null : Paths.get(args.get("data-dir"));
+
+		long syncWindow;
+
+		// Parse the sync window as an integer
+		try {
+			syncWindow = Long.parseLong(args.get("sync-window"));
+		} catch (NumberFormatException e) {
+			throw new CommandProcessorException("", "create ledger", "Sync window must be an integer", 0);
+		}
+
+		RetentionPolicy retentionPolicy;
+
+		// Parse the retention limits as integers
+		try {
+			retentionPolicy = new RetentionPolicy(Integer.parseInt(args.get("retain-blocks")),
+					Long.parseLong(args.get("retain-window")) * 1000);
+		} catch (NumberFormatException e) {
+			throw new CommandProcessorException("", "create ledger", "Retention limits must be integers", 0);
+		} catch (IllegalArgumentException e) {
+			throw new CommandProcessorException("", "create ledger", "Retention limits must not be negative", 0);
+		}
+
 		try {
 			// Create the ledger
-			this.ledger = new Ledger(args.get("create-ledger"), args.get("description"), args.get("seed"));
+			this.ledger = new Ledger(args.get("create-ledger"), args.get("description"), args.get("seed"),
+					dataDirectory, syncWindow, retentionPolicy);
+			this.ledgerRouter = new LedgerRouter(this.ledger);
+		} catch (LedgerException e) {
+			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
+		}
+	}
+
+	/**
+	 * Checks if a ledger exists and creates the ledger of a region for the given parameters. Accounts created in the
+	 * region are processed by the region's ledger, and transactions to other regions are settled through the root
+	 * ledger.
+	 *
+	 * @param args
+	 * @throws CommandProcessorException
+	 */
+	public void createLedgerShard(Map<String, String> args) throws CommandProcessorException {
+		// Check if a ledger exists
+		if (this.ledger == null) {
+			throw new CommandProcessorException("", "create ledger shard", "No ledger found", 0);
+		}
+
+		// Resolve the data directory
+		Path dataDirectory = args.get("data-dir").equals("none") ? null : Paths.get(args.get("data-dir"));
+
+		long syncWindow;
+
+		// Parse the sync window as an integer
+		try {
+			syncWindow = Long.parseLong(args.get("sync-window"));
+		} catch (NumberFormatException e) {
+			throw new CommandProcessorException("", "create ledger shard", "Sync window must be an integer", 0);
+		}
+
+		try {
+			// Create the ledger of the region and add it to the router
+			Ledger shard = new Ledger(args.get("create-ledger-shard"), args.get("description"), args.get("seed"),
+					dataDirectory, syncWindow);
+			this.ledgerRouter.addShard(args.get("create-ledger-shard"), shard);
+		} catch (LedgerException e) {
+			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
+		}
+	}
+
+	/**
+	 * Checks if a ledger exists and settles the transactions between regions. If a period in seconds is given,
+	 * schedules the settlement to run periodically instead.
+	 *
+	 * @param args
+	 * @throws CommandProcessorException
+	 */
+	public void settleLedgers(Map<String, String> args) throws CommandProcessorException {
+		// Check if a ledger exists
+		if (this.ledger == null) {
+			throw new CommandProcessorException("", "settle ledgers", "No ledger found", 0);
+		}
+
+		long period;
+
+		// Parse the period as an integer
+		try {
+			period = Long.parseLong(args.get("every"));
+		} catch (NumberFormatException e) {
+			throw new CommandProcessorException("", "settle ledgers", "Period must be an integer", 0);
+		}
+
+		try {
+			if (period > 0) {
+				this.ledgerRouter.startSettlement(period * 1000);
+				System.out.println("Scheduled settlement every " + period + " seconds.");
+			} else {
+				this.ledgerRouter.settle();
+			}
 		} catch (LedgerException e) {
 			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
 		}
 	}
 
 	/**
-	 * Checks if a ledger exists and creates an account for the given parameters.
+	 * Checks if a ledger exists and creates an account in the ledger of the given region.
 	 *
 	 * @param args
 	 * @throws CommandProcessorException
@@ -265,7 +405,7 @@ public class CommandProcessor {
 
 		try {
 			// Create the account
-			this.ledger.createAccount(args.get("create-account"));
+			this.ledgerRouter.createAccount(args.get("create-account"), args.get("region"));
 		} catch (LedgerException e) {
 			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
 		}
@@ -286,17 +426,75 @@ public class CommandProcessor {
 		Transaction txn;
 		try {
 			// Create the transaction
-			txn = this.ledger.createTransaction(args.get("amount"), args.get("fee"), args.get("note"),
+			txn = this.ledgerRouter.createTransaction(args.get("amount"), args.get("fee"), args.get("note"),
 					args.get("payer"), args.get("receiver"));
 
-			// Process the transaction
-			this.ledger.processTransaction(txn);
+			// Process the transaction in the payer's region
+			this.ledgerRouter.processTransaction(txn);
 
 		} catch (LedgerException e) {
 			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
 		}
 	}
 
+	/**
+	 * Checks if a ledger exists, reads the process-transaction commands in the given file and processes them as a
+	 * single batch. Lines that cannot be parsed or transactions that cannot be created are reported and skipped.
+	 * Prints the transactions rejected by the ledger.
+	 *
+	 * @param args
+	 * @throws CommandProcessorException
+	 */
+	public void processTransactions(Map<String, String> args) throws CommandProcessorException {
+		// Check if a ledger exists
+		if (this.ledger == null) {
+			throw new CommandProcessorException("", "process transactions", "No ledger found", 0);
+		}
+
+		List<Transaction> txns = new ArrayList<>();
+		int lineNum = 0;
+
+		// Read the batch file line by line and create a transaction for each process-transaction command
+		try (Scanner batchFile = new Scanner(new FileReader(args.get("file")))) {
+			while (batchFile.hasNextLine()) {
+				lineNum++;
+				String cmd = batchFile.nextLine();
+
+				// Skip zero length lines or comments
+				if (cmd.strip().length() == 0 || cmd.startsWith("#")) {
+					continue;
+				}
+
+				try {
+					List<String> cmdElements = this.reformatCmdElements(Utility.splitString(cmd));
+					if (!cmdElements.get(0).equals("process-transaction")) {
+						throw new IllegalArgumentException("only process-transaction commands can be batched");
+					}
+					Map<String, String> txnArgs = this.getArguments(cmdElements);
+					txns.add(this.ledgerRouter.createTransaction(txnArgs.get("amount"), txnArgs.get("fee"),
+							txnArgs.get("note"), txnArgs.get("payer"), txnArgs.get("receiver")));
+				} catch (IllegalArgumentException | NoSuchElementException e) {
+					System.out.println("Skipped line " + lineNum + ": " + e.getMessage());
+				} catch (LedgerException e) {
+					System.out.println("Skipped line " + lineNum + ": " + e.getReason());
+				}
+			}
+		} catch (FileNotFoundException e) {
+			throw new CommandProcessorException("", "process transactions", args.get("file") + " not found", 0);
+		}
+
+		// Process the transactions as a batch and print the rejected transactions
+		try {
+			for (TransactionResult result : this.ledgerRouter.processTransactions(txns)) {
+				if (!result.isAccepted()) {
+					System.out.println(result);
+				}
+			}
+		} catch (LedgerException e) {
+			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
+		}
+	}
+
 	/**
 	 * Checks if a ledger exists and retrieves the account balance.
 	 *
@@ -311,7 +509,7 @@ public class CommandProcessor {
 
 		try {
 			// Get the account balance and print it out
-			int balance = this.ledger.getAccountBalance(args.get("get-account-balance"));
+			long balance = this.ledgerRouter.getAccountBalance(args.get("get-account-balance"));
 			System.out.println(args.get("get-account-balance") + " has a balance of " + balance);
 		} catch (LedgerException e) {
 			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
@@ -319,7 +517,7 @@ public class CommandProcessor {
 	}
 
 	/**
-	 * Checks if a ledger exists and retrieves the account balances.
+	 * Checks if a ledger exists and retrieves the account balances of the given region.
 	 *
 	 * @param args
 	 * @throws CommandProcessorException
@@ -332,8 +530,8 @@ public class CommandProcessor {
 
 		try {
 			// Get the account balances and print them out
-			Map<String, Integer> addressBalanceMap = this.ledger.getAccountBalances();
-			for (Map.Entry<String, Integer> entry : addressBalanceMap.entrySet()) {
+			Map<String, Long> addressBalanceMap = this.ledgerRouter.getShard(args.get("region")).getAccountBalances();
+			for (Map.Entry<String, Long> entry : addressBalanceMap.entrySet()) {
 				System.out.println(entry.getKey() + ": " + entry.getValue());
 			}
 		} catch (LedgerException e) {
@@ -391,7 +589,62 @@ public class CommandProcessor {
 	}
 
 	/**
-	 * Checks if a ledger exists and validates the ledger.
+	 * Checks if a ledger exists and exports the committed blocks from the given block number to a file.
+	 *
+	 * @param args
+	 * @throws CommandProcessorException
+	 */
+	public void exportBlocks(Map<String, String> args) throws CommandProcessorException {
+		// Check if a ledger exists
+		if (this.ledger == null) {
+			throw new CommandProcessorException("", "export blocks", "No ledger found", 0);
+		}
+
+		int blockNum;
+
+		// Parse the block number as an integer
+		try {
+			blockNum = Integer.parseInt(args.get("export-blocks"));
+		} catch (NumberFormatException e) {
+			throw new CommandProcessorException("", "export blocks", "Block number must be an integer", 0);
+		}
+
+		// Export the blocks to the file
+		try (FileChannel file = FileChannel.open(Paths.get(args.get("file")), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			int numOfBlocks = this.ledger.exportBlocks(blockNum, file);
+			System.out.println("Exported " + numOfBlocks + " blocks to " + args.get("file") + ".");
+		} catch (IOException e) {
+			throw new CommandProcessorException("", "export blocks", "Cannot write " + args.get("file"), 0);
+		} catch (LedgerException e) {
+			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
+		}
+	}
+
+	/**
+	 * Checks if a ledger exists and imports the blocks in a file that was created by export-blocks.
+	 *
+	 * @param args
+	 * @throws CommandProcessorException
+	 */
+	public void importBlocks(Map<String, String> args) throws CommandProcessorException {
+		// Check if a ledger exists
+		if (this.ledger == null) {
+			throw new CommandProcessorException("", "import blocks", "No ledger found", 0);
+		}
+
+		// Import the blocks from the file
+		try (FileChannel file = FileChannel.open(Paths.get(args.get("file")), StandardOpenOption.READ)) {
+			this.ledger.importBlocks(file);
+		} catch (IOException e) {
+			throw new CommandProcessorException("", "import blocks", args.get("file") + " not found", 0);
+		} catch (LedgerException e) {
+			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
+		}
+	}
+
+	/**
+	 * Checks if a ledger exists and validates the root ledger and the ledger of each region.
 	 *
 	 * @param args
 	 * @throws CommandProcessorException
@@ -404,7 +657,7 @@ public class CommandProcessor {
 
 		// Validate the current state of the blockchain
 		try {
-			this.ledger.validate();
+			this.ledgerRouter.validate();
 		} catch (LedgerException e) {
 			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
 		}
@@ -464,6 +717,61 @@ public class CommandProcessor {
 		}
 	}
 
+	/**
+	 * Calls the Store Model Service API to set the max number of customers allowed in the store at the same time.
+	 * A capacity of 0 means no limit.
+	 *
+	 * @param args
+	 * @throws CommandProcessorException
+	 */
+	public void setStoreCapacity(Map<String, String> args) throws CommandProcessorException {
+
+		String authToken = this.getAuthTokenOfCurrentUser();
+
+		int capacity;
+
+		// Parse the capacity as an integer
+		try {
+			capacity = Integer.parseInt(args.get("capacity"));
+		} catch (NumberFormatException e) {
+			throw new CommandProcessorException("", "set store capacity", "Capacity must be an integer", 0);
+		}
+
+		try {
+			this.storeModelService.setStoreCapacity(args.get("set-store-capacity"), capacity, authToken);
+		} catch (StoreModelServiceException e) {
+			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
+		}
+	}
+
+	/**
+	 * Calls the Store Model Service API to show the number of customers in a store, or in an aisle if an aisle is
+	 * given.
+	 *
+	 * @param args
+	 * @throws CommandProcessorException
+	 */
+	public void getOccupancy(Map<String, String> args) throws CommandProcessorException {
+
+		String authToken = this.getAuthTokenOfCurrentUser();
+		String storeId = args.get("get-occupancy");
+
+		try {
+			if (args.get("aisle").equals("none")) {
+				Store store = this.storeModelService.getStore(storeId, authToken);
+				long occupancy = this.storeModelService.getStoreOccupancy(storeId, authToken);
+				System.out.println("Occupancy of " + storeId + ": " + occupancy
+						+ (store.getCapacity() > 0 ? " of " + store.getCapacity() : ""));
+			} else {
+				Address address = Address.of(storeId, args.get("aisle"));
+				long occupancy = this.storeModelService.getAisleOccupancy(address, authToken);
+				System.out.println("Occupancy of " + address + ": " + occupancy);
+			}
+		} catch (StoreModelServiceException e) {
+			throw new CommandProcessorException("", e.getAction(), e.getReason(), 0);
+		}
+	}
+
 	/**
 	 * Calls the Store Model Service API to define an aisle.
 	 *
@@ -951,7 +1259,7 @@ public class CommandProcessor {
 		Event event = new Event(EventType.CHECK_ACCOUNT_BALANCE, this.storeModelService,
 				args.get("check_account_balance_event"));
 		event.setCustomerId(args.get("customer"));
-		event.setLedger(this.ledger);
+		event.setLedgerRouter(this.ledgerRouter);
 		event.setVoicePrint(args.get("voiceprint"));
 		try {
 			this.storeModelService.processEvent(event);
@@ -975,7 +1283,7 @@ public class CommandProcessor {
 		Event event = new Event(EventType.ENTER_STORE, this.storeModelService,
 				args.get("enter_store_event"));
 		event.setCustomerId(args.get("customer"));
-		event.setLedger(this.ledger);
+		event.setLedgerRouter(this.ledgerRouter);
 		event.setFacePrint(args.get("faceprint"));
 
 		try {
@@ -1000,7 +1308,7 @@ public class CommandProcessor {
 		Event event = new Event(EventType.CHECKOUT, this.storeModelService,
 				args.get("checkout_event"));
 		event.setCustomerId(args.get("customer"));
-		event.setLedger(this.ledger);
+		event.setLedgerRouter(this.ledgerRouter);
 		event.setFacePrint(args.get("faceprint"));
 		try {
 			this.storeModelService.processEvent(event);
@@ -1367,8 +1675,10 @@ public class CommandProcessor {
 		for (Map.Entry<String, String> entry : argsMap.entrySet()) {
 			for (int i = 0; i < cmdElements.size() - 1; i++) {
 				if (cmdElements.get(i).equals(entry.getKey())) {
-					// If the argument is not a credential, store in lower case. Otherwise, store the argument as is.
-					if (!(entry.getKey().equals("value") || entry.getKey().equals("password"))) {
+					// If the argument is not a credential or a file path, store in lower case. Otherwise, store the
+					// argument as is.
+					if (!(entry.getKey().equals("value") || entry.getKey().equals("password")
+							|| entry.getKey().equals("file") || entry.getKey().equals("data-dir"))) {
 						argsMap.put(entry.getKey(), cmdElements.get(i + 1).toLowerCase());
 					} else {
 						argsMap.put(entry.getKey(), cmdElements.get(i + 1));
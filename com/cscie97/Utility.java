@@ -1,15 +1,30 @@
 package com.cscie97;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Utility {
 
+    /**
+     * Class variable that holds a SHA-256 digest per thread, so hashing neither looks up the provider nor allocates
+     * a digest. A digest is reset after every use.
+     */
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    });
+
     /**
      * Hashes a string using SHA-256.
      *
@@ -17,15 +32,76 @@ public class Utility {
      * @return  Hashed string
      */
     public static String hashString(String input) {
-        try {
-            // Hash the string using SHA-256 and encode the result to string
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] messageDigest = md.digest(input.getBytes());
-            return Base64.getEncoder().encodeToString(messageDigest);
-        } catch (NoSuchAlgorithmException e) {
-            System.out.println(e);
-            return null;
+        // Hash the string using SHA-256 and encode the result to string
+        return Base64.getEncoder().encodeToString(hash(input.getBytes()));
+    }
+
+    /**
+     * Hashes the concatenation of strings using SHA-256 without building the concatenated string. Gives the same
+     * result as hashString of the concatenated string.
+     *
+     * @param parts  Strings to be concatenated and hashed
+     * @return  Hashed string
+     */
+    public static String hashStrings(String... parts) {
+        MessageDigest md = digests.get();
+        for (String part : parts) {
+            md.update(part.getBytes());
+        }
+        return Base64.getEncoder().encodeToString(md.digest());
+    }
+
+    /**
+     * Hashes each string of a list using SHA-256. All strings are fed through the same digest.
+     *
+     * @param inputs  Strings to be hashed
+     * @return  List of hashed strings in the same order as the given strings
+     */
+    public static ArrayList<String> hashAll(List<String> inputs) {
+        MessageDigest md = digests.get();
+        Base64.Encoder encoder = Base64.getEncoder();
+        ArrayList<String> hashed = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            hashed.add(encoder.encodeToString(md.digest(input.getBytes())));
         }
+        return hashed;
+    }
+
+    /**
+     * Hashes the concatenation of byte arrays using SHA-256.
+     *
+     * @param inputs  Byte arrays to be concatenated and hashed
+     * @return  32-byte digest
+     */
+    public static byte[] hash(byte[]... inputs) {
+        MessageDigest md = digests.get();
+        for (byte[] input : inputs) {
+            md.update(input);
+        }
+        return md.digest();
+    }
+
+    /**
+     * Hashes the remaining bytes of a buffer using SHA-256. The buffer's position is moved to its limit.
+     *
+     * @param input  Buffer to be hashed
+     * @return  32-byte digest
+     */
+    public static byte[] hash(ByteBuffer input) {
+        MessageDigest md = digests.get();
+        md.update(input);
+        return md.digest();
+    }
+
+    /**
+     * Hashes the remaining bytes of a buffer using SHA-256 and writes the digest to another buffer. The input
+     * buffer's position is moved to its limit and the output buffer's position is advanced by 32 bytes.
+     *
+     * @param input  Buffer to be hashed
+     * @param output  Buffer that receives the 32-byte digest
+     */
+    public static void hash(ByteBuffer input, ByteBuffer output) {
+        output.put(hash(input));
     }
 
     /**
@@ -2,6 +2,8 @@ package com.cscie97.authentication;
 
 import com.cscie97.Utility;
 
+import java.security.MessageDigest;
+import java.util.Base64;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,27 +17,28 @@ import java.util.regex.Pattern;
 public class Credential {
 
 	/**
-	 * Hashed string of the credential.
+	 * SHA-256 digest of the credential.
 	 */
-	private String value;
+	private byte[] digest;
 
 	/**
-	 * Class constructor that hashes the given string and assigns it to the value property.
+	 * Class constructor that hashes the given string and assigns it to the digest property.
 	 *
 	 * @param aValue  Hashed string of the credential
 	 */
 	public Credential(String aValue) {
-		this.value = Utility.hashString(aValue);
+		this.digest = Utility.hash(aValue.getBytes());
 	}
 
 	/**
-	 * Determines whether the hash of the given string is equal to the Credential's value.
+	 * Determines whether the hash of the given string is equal to the Credential's digest. The digests are compared
+	 * in constant time, without encoding them to strings.
 	 *
 	 * @param value  String value to be compared to
-	 * @return  True if the hash of the given value is equal to the Credential's value. Otherwise, returns false.
+	 * @return  True if the hash of the given value is equal to the Credential's digest. Otherwise, returns false.
 	 */
 	public boolean equals(String value) {
-		return this.value.equals(Utility.hashString(value));
+		return MessageDigest.isEqual(this.digest, Utility.hash(value.getBytes()));
 	}
 
 	/**
@@ -75,7 +78,7 @@ public class Credential {
 	 * @return  Credential's value.
 	 */
 	public String getValue() {
-		return this.value;
+		return Base64.getEncoder().encodeToString(this.digest);
 	}
 
 	/**
@@ -85,6 +88,6 @@ public class Credential {
 	 */
 	public String toString() {
 		// For security reasons only the first 16 characters are displayed
-		return this.value.substring(0, 16);
+		return this.getValue().substring(0, 16);
 	}
 }
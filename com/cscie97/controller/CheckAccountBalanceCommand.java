@@ -2,8 +2,8 @@ package com.cscie97.controller;
 
 import com.cscie97.authentication.AuthenticationException;
 import com.cscie97.authentication.AuthenticationService;
-import com.cscie97.ledger.Ledger;
 import com.cscie97.ledger.LedgerException;
+import com.cscie97.ledger.LedgerRouter;
 import com.cscie97.store.*;
 
 /**
@@ -33,7 +33,7 @@ public class CheckAccountBalanceCommand implements Command {
      */
     public void execute(Event event) throws LedgerException, StoreModelServiceException, AuthenticationException {
         StoreModelService storeModelService = event.getStoreModelService();
-        Ledger ledger = event.getLedger();
+        LedgerRouter ledgerRouter = event.getLedgerRouter();
 
         // Get the store ID
         String storeId = storeModelService.getStoreFromDeviceId(event.getSourceDeviceId(), event.getAuthToken()).getId();
@@ -60,7 +60,7 @@ public class CheckAccountBalanceCommand implements Command {
         String accountAddress = storeModelService.getAccountAddress(event.getCustomerId(), event.getAuthToken());
 
         // Get customer's account balance
-        int accountBalance = ledger.getAccountBalance(accountAddress);
+        long accountBalance = ledgerRouter.getAccountBalance(accountAddress);
 
         // Announce a message for the total value of basket items and the customer's account balance
         String message;
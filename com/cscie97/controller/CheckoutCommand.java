@@ -2,8 +2,8 @@ package com.cscie97.controller;
 
 import com.cscie97.authentication.AuthenticationException;
 import com.cscie97.authentication.AuthenticationService;
-import com.cscie97.ledger.Ledger;
 import com.cscie97.ledger.LedgerException;
+import com.cscie97.ledger.LedgerRouter;
 import com.cscie97.ledger.Transaction;
 import com.cscie97.store.*;
 
@@ -19,6 +19,7 @@ import java.sql.Timestamp;
  *  - Announcing a goodbye message
  *  - Closing the turnstile
  *  - Having a robot assist a customer to his/her car if the basket items weigh more than 10 lbs
+ *  - Clearing and unassigning the basket once it has been paid for
  *
  * @author Burak Ufuktepe
  */
@@ -36,6 +37,7 @@ public class CheckoutCommand implements Command {
      * Announces a message if the customer does not have enough balance. Otherwise, creates and processes the
      * transaction. Opens the turnstile, announces a goodbye message, and closes the turnstile. Also, computes the
      * total weight of basket items. If the weight is over 10 lbs, a robot will assist the customer to his/her car.
+     * Finally, clears and unassigns a paid basket so that the customer gets a new basket on the next visit.
      *
      * @param event  event emitted by the turnstile of the Store Model Service
      * @throws LedgerException  if no block has been committed yet or if the account address does not exist, if the
@@ -46,7 +48,7 @@ public class CheckoutCommand implements Command {
      */
     public void execute(Event event) throws LedgerException, StoreModelServiceException, AuthenticationException {
         StoreModelService storeModelService = event.getStoreModelService();
-        Ledger ledger = event.getLedger();
+        LedgerRouter ledgerRouter = event.getLedgerRouter();
 
         // Get the store
         Store store = storeModelService.getStoreFromDeviceId(event.getSourceDeviceId(), event.getAuthToken());
@@ -76,15 +78,17 @@ public class CheckoutCommand implements Command {
 
         // Retrieve customer details
         String accountAddress = storeModelService.getCustomer(event.getCustomerId(), event.getAuthToken()).getAccountAddress();
-        String basketId = storeModelService.getCustomer(event.getCustomerId(), event.getAuthToken()).getBasket().getId();
+        Basket basket = storeModelService.getCustomer(event.getCustomerId(), event.getAuthToken()).getBasket();
+        String basketId = basket.getId();
 
         // Compute basket total
         int basketTotal = storeModelService.computeBasketTotal(basketId, event.getAuthToken());
 
         // Process the transaction if the basket total is positive
+        boolean paid = false;
         if (basketTotal > 0) {
             // Get the customer's account balance
-            int accountBalance = ledger.getAccountBalance(accountAddress);
+            long accountBalance = ledgerRouter.getAccountBalance(accountAddress);
 
             // Print the account balance
             System.out.println(event.getCustomerId() + " has an account balance of " + accountBalance + ".");
@@ -98,12 +102,22 @@ public class CheckoutCommand implements Command {
 
             String timeStamp = new Timestamp(System.currentTimeMillis()).toString();
             String note = "Transaction for " + event.getCustomerId() + " at " + timeStamp;
-            Transaction txn = ledger.createTransaction(String.valueOf(basketTotal), String.valueOf(Transaction.MIN_FEE),
-                    note, accountAddress, store.getId());
 
-            // Process the transaction
-            ledger.processTransaction(txn);
-            System.out.println(txn);
+            // A paid basket is unassigned, so each assignment of a basket is checked out at most once. A retried
+            // checkout of the same assignment carries the same key, while the next checkout carries a new one.
+            String idempotencyKey = "checkout " + event.getCustomerId() + " " + basketId + " "
+                    + basket.getAssignmentNumber();
+            Transaction txn = ledgerRouter.createTransaction(basketTotal, Transaction.MIN_FEE, note, accountAddress,
+                    store.getId(), idempotencyKey);
+
+            // Process the transaction. A retry returns the ID of the transaction that was accepted before.
+            long txnId = ledgerRouter.processTransaction(txn);
+            if (txnId == txn.getTransactionId()) {
+                System.out.println(txn);
+            } else {
+                System.out.println("Checkout was already charged in Transaction " + txnId + ".");
+            }
+            paid = true;
         }
 
         // Open the turnstile
@@ -128,5 +142,10 @@ public class CheckoutCommand implements Command {
             // Update the location of the customer
             event.getStoreModelService().updateCustomer(event.getCustomerId(), null, event.getAuthToken());
         }
+
+        // Clear and unassign the paid basket so that the next checkout of the customer is charged again
+        if (paid) {
+            storeModelService.clearBasket(basketId, event.getAuthToken());
+        }
     }
 }
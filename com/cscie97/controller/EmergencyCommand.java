@@ -43,7 +43,7 @@ public class EmergencyCommand implements Command {
         storeModelService.getAisle(storeId + ":" + aisleId, event.getAuthToken());
 
         // Create the Address and add it to the event
-        Address address = new Address(storeId, aisleId);
+        Address address = Address.of(storeId, aisleId);
         event.setAddress(address);
 
         // Open turnstiles
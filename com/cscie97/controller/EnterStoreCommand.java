@@ -3,13 +3,14 @@ package com.cscie97.controller;
 import com.cscie97.authentication.AuthToken;
 import com.cscie97.authentication.AuthenticationException;
 import com.cscie97.authentication.AuthenticationService;
-import com.cscie97.ledger.Ledger;
 import com.cscie97.ledger.LedgerException;
+import com.cscie97.ledger.LedgerRouter;
 import com.cscie97.store.*;
 
 /**
- * Provides implementation details for checking a customer's account balance, granting/denying access to the store,
- * opening the turnstile, announcing a welcome message, assigning a basket to the customer, and closing the turnstile.
+ * Provides implementation details for checking the store's occupancy and a customer's account balance,
+ * granting/denying access to the store, opening the turnstile, announcing a welcome message, assigning a basket to
+ * the customer, and closing the turnstile.
  *
  * @author Burak Ufuktepe
  */
@@ -22,9 +23,10 @@ public class EnterStoreCommand implements Command {
     }
 
     /**
-     * Retrieves a customer's account balance and grants access to the store if the customer has a positive balance.
-     * Otherwise, denies access. After granting access, opens the turnstile, announces a welcome message, assigns a
-     * basket to the customer if the customer is registered. Then closes the turnstile.
+     * Denies access if the store has reached its capacity. Otherwise, retrieves a customer's account balance and grants
+     * access to the store if the customer has a positive balance. Otherwise, denies access. After granting access,
+     * opens the turnstile, announces a welcome message, assigns a basket to the customer if the customer is
+     * registered. Then closes the turnstile.
      *
      * @param event  event emitted by the turnstile of the Store Model Service
      * @throws LedgerException  if no block has been committed yet or if the account address does not exist
@@ -32,10 +34,11 @@ public class EnterStoreCommand implements Command {
      */
     public void execute(Event event) throws LedgerException, StoreModelServiceException, AuthenticationException {
         StoreModelService storeModelService = event.getStoreModelService();
-        Ledger ledger = event.getLedger();
+        LedgerRouter ledgerRouter = event.getLedgerRouter();
 
-        String storeName = storeModelService.getStoreFromDeviceId(event.getSourceDeviceId(), event.getAuthToken()).getName();
-        String storeId = storeModelService.getStoreFromDeviceId(event.getSourceDeviceId(), event.getAuthToken()).getId();
+        Store store = storeModelService.getStoreFromDeviceId(event.getSourceDeviceId(), event.getAuthToken());
+        String storeName = store.getName();
+        String storeId = store.getId();
 
         // Get an auth token for the customer
         String customerAuthToken = this.authenticationService.getAuthToken(event.getFacePrint()).getId();
@@ -45,13 +48,28 @@ public class EnterStoreCommand implements Command {
 
         // Retrieve customer details
         boolean registered = storeModelService.getCustomer(event.getCustomerId(), event.getAuthToken()).isRegistered();
-        String accountAddress = storeModelService.getCustomer(event.getCustomerId(), event.getAuthToken()).getAccountAddress();
+        String accountAddress = storeModelService.getCustomer(event.getCustomerId(), event.getAuthToken())
+                .getAccountAddress();
         String firstName = storeModelService.getCustomer(event.getCustomerId(), event.getAuthToken()).getFirstName();
 
+        // Deny access if the store is full, unless the customer is already in the store. The occupancy is read
+        // without a lock, so customers entering at the same time may exceed the capacity by the number of turnstiles.
+        Address location = storeModelService.getCustomer(event.getCustomerId(), event.getAuthToken()).getLocation();
+        int capacity = store.getCapacity();
+        if (capacity > 0 && (location == null || !location.getStoreId().equals(storeId))) {
+            long occupancy = storeModelService.getStoreOccupancy(storeId, event.getAuthToken());
+            if (occupancy >= capacity) {
+                System.out.println("Access denied. " + storeId + " has reached its capacity of " + capacity + ".");
+                String message = "Sorry " + firstName + ", " + storeName + " is at capacity. Please try again later.";
+                storeModelService.announceMessage(event.getSourceDeviceId(), false, message, event.getAuthToken());
+                return;
+            }
+        }
+
         // Get the customer's account balance
-        int accountBalance;
+        long accountBalance;
         try {
-            accountBalance = ledger.getAccountBalance(accountAddress);
+            accountBalance = ledgerRouter.getAccountBalance(accountAddress);
         } catch (LedgerException e) {
             // Account has not been committed to a block yet, set the balance to zero
             accountBalance = 0;
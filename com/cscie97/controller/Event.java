@@ -1,6 +1,6 @@
 package com.cscie97.controller;
 
-import com.cscie97.ledger.Ledger;
+import com.cscie97.ledger.LedgerRouter;
 import com.cscie97.store.*;
 
 /**
@@ -19,9 +19,10 @@ public class Event {
     private StoreModelService storeModelService;
 
     /**
-     * Ledger instance that is used to access the Ledger Service API.
+     * LedgerRouter instance that is used to access the Ledger Service API. Routes each account to the ledger of its
+     * region.
      */
-    private Ledger ledger;
+    private LedgerRouter ledgerRouter;
 
     /**
      * Unique identifier of the source device which emitted the event.
@@ -100,8 +101,8 @@ public class Event {
      * Below are getters and setters
      */
 
-    public void setLedger(Ledger ledger) {
-        this.ledger = ledger;
+    public void setLedgerRouter(LedgerRouter ledgerRouter) {
+        this.ledgerRouter = ledgerRouter;
     }
 
     public void setAddress(Address address) {
@@ -156,8 +157,8 @@ public class Event {
         return this.storeModelService;
     }
 
-    public Ledger getLedger() {
-        return this.ledger;
+    public LedgerRouter getLedgerRouter() {
+        return this.ledgerRouter;
     }
 
     public String getSourceDeviceId() {
@@ -13,6 +13,11 @@ public class Account {
      */
     public static final String MASTER = "master";
 
+    /**
+     * Class constant for the initial balance of the master account, which equals the total value in the ledger.
+     */
+    public static final long MASTER_BALANCE = Integer.MAX_VALUE;
+
     /**
      * Unique identifier of the account.
      */
@@ -21,7 +26,7 @@ public class Account {
     /**
      * Account balance that reflects total transfers.
      */
-    private int balance;
+    private long balance;
 
     /**
      * Class constructor that sets the address of the account. If this is the master account, it funds the account with
@@ -32,7 +37,7 @@ public class Account {
     public Account(String anAddress) {
         this.address = anAddress;
         if (anAddress.equals(MASTER)) {
-            this.balance = Integer.MAX_VALUE;
+            this.balance = MASTER_BALANCE;
         } else {
             this.balance = 0;
         }
@@ -53,7 +58,7 @@ public class Account {
      *
      * @return Account balance
      */
-    public int getBalance() {
+    public long getBalance() {
         return this.balance;
     }
 
@@ -71,7 +76,7 @@ public class Account {
      *
      * @param amount The value of funds to be deposited
      */
-    public void deposit(int amount) {
+    public void deposit(long amount) {
         this.balance += amount;
     }
 
@@ -80,7 +85,7 @@ public class Account {
      *
      * @param amount The value of funds to be withdrawn
      */
-    public void withdraw(int amount) {
+    public void withdraw(long amount) {
         this.balance -= amount;
     }
 }
@@ -0,0 +1,196 @@
+package com.cscie97.ledger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the balances of the accounts of a Ledger in a primitive long array indexed by the account index assigned by
+ * the AccountTable. Accounts are added in index order, so the balances only cover the accounts that existed when
+ * they were created. Balances are stored as longs so that sums over many accounts cannot overflow.
+ *
+ * @author Burak Ufuktepe
+ */
+public class AccountBalances {
+
+    /**
+     * Class constant for the initial length of the balances array.
+     */
+    private static final int INIT_CAPACITY = 16;
+
+    /**
+     * Table that assigns indexes to account addresses.
+     */
+    private AccountTable accountTable;
+
+    /**
+     * Account balances indexed by account index.
+     */
+    private long[] balances;
+
+    /**
+     * Number of accounts covered by the balances.
+     */
+    private int size;
+
+    /**
+     * Class constructor that sets the account table and initializes empty balances.
+     *
+     * @param anAccountTable  Table that assigns indexes to account addresses
+     */
+    public AccountBalances(AccountTable anAccountTable) {
+        this.accountTable = anAccountTable;
+        this.balances = new long[INIT_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Copy constructor for deep copying AccountBalances objects. The account table is shared.
+     *
+     * @param anAccountBalances  AccountBalances object to be deep copied
+     */
+    public AccountBalances(AccountBalances anAccountBalances) {
+        this.accountTable = anAccountBalances.accountTable;
+        this.balances = Arrays.copyOf(anAccountBalances.balances, anAccountBalances.balances.length);
+        this.size = anAccountBalances.size;
+    }
+
+    /**
+     * Copy constructor that binds the copied balances to another account table. The first accounts of the other table
+     * must be the accounts of the copied balances, in the same order.
+     *
+     * @param anAccountBalances  AccountBalances object to be deep copied
+     * @param anAccountTable  Table that assigns indexes to account addresses
+     */
+    AccountBalances(AccountBalances anAccountBalances, AccountTable anAccountTable) {
+        this(anAccountBalances);
+        this.accountTable = anAccountTable;
+    }
+
+    /**
+     * Class constructor that sets the account table and the balances of the first accounts of the table.
+     *
+     * @param anAccountTable  Table that assigns indexes to account addresses
+     * @param aBalances  Balances in account index order
+     */
+    AccountBalances(AccountTable anAccountTable, long[] aBalances) {
+        this.accountTable = anAccountTable;
+        this.balances = Arrays.copyOf(aBalances, Math.max(aBalances.length, INIT_CAPACITY));
+        this.size = aBalances.length;
+    }
+
+    /**
+     * Adds an account with its initial balance. The account must be the next account in the account table.
+     *
+     * @param anAccount  Account to be added
+     */
+    public void addAccount(Account anAccount) {
+        int index = this.accountTable.indexOf(anAccount.getAddress());
+        if (index != this.size) {
+            throw new IllegalArgumentException(anAccount.getAddress() + " is not the next account in the table");
+        }
+        if (this.size == this.balances.length) {
+            this.balances = Arrays.copyOf(this.balances, this.balances.length * 2);
+        }
+        this.balances[this.size++] = anAccount.getBalance();
+    }
+
+    /**
+     * Retrieves the index of an account address.
+     *
+     * @param anAddress  Unique address of the account
+     * @return  Index of the account, -1 if the account is not covered by the balances
+     */
+    public int indexOf(String anAddress) {
+        int index = this.accountTable.indexOf(anAddress);
+        return index < this.size ? index : -1;
+    }
+
+    /**
+     * Determines whether an account is covered by the balances.
+     *
+     * @param anAddress  Unique address of the account
+     * @return  True if the account exists. Otherwise, returns false.
+     */
+    public boolean contains(String anAddress) {
+        return this.indexOf(anAddress) >= 0;
+    }
+
+    /**
+     * Retrieves the balance of an account.
+     *
+     * @param anIndex  Index of the account
+     * @return  Account balance
+     */
+    public long getBalance(int anIndex) {
+        return this.balances[anIndex];
+    }
+
+    /**
+     * Deposits funds into an account.
+     *
+     * @param anIndex  Index of the account
+     * @param amount  The value of funds to be deposited
+     */
+    public void deposit(int anIndex, long amount) {
+        this.balances[anIndex] += amount;
+    }
+
+    /**
+     * Withdraws funds from an account.
+     *
+     * @param anIndex  Index of the account
+     * @param amount  The value of funds to be withdrawn
+     */
+    public void withdraw(int anIndex, long amount) {
+        this.balances[anIndex] -= amount;
+    }
+
+    /**
+     * Retrieves the account address for an index.
+     *
+     * @param anIndex  Index of the account
+     * @return  Unique address of the account
+     */
+    public String getAddress(int anIndex) {
+        return this.accountTable.getAddress(anIndex);
+    }
+
+    /**
+     * Retrieves the number of accounts covered by the balances.
+     *
+     * @return  Number of accounts
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Computes the sum of all account balances. Runs as a single pass over the balances array with no lookups, which
+     * the JIT compiler can vectorize.
+     *
+     * @return  Sum of account balances
+     */
+    public long sum() {
+        long[] values = this.balances;
+        int length = this.size;
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            total += values[i];
+        }
+        return total;
+    }
+
+    /**
+     * Creates a map of account addresses and account balances.
+     *
+     * @return  Map of account addresses and account balances
+     */
+    public Map<String, Long> toMap() {
+        Map<String, Long> result = new HashMap<>();
+        for (int i = 0; i < this.size; i++) {
+            result.put(this.accountTable.getAddress(i), this.balances[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package com.cscie97.ledger;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns a dense index to every account address of a Ledger. Indexes are assigned in the order the accounts are
+ * created, starting from 0, and are never reassigned. The table is shared by all AccountBalances of the Ledger so that
+ * balances can be stored in primitive arrays indexed by the account index. Accounts are registered by one writer at a
+ * time, while lookups are safe from any thread without locking.
+ *
+ * @author Burak Ufuktepe
+ */
+public class AccountTable {
+
+    /**
+     * Class constant for the initial length of the addresses array.
+     */
+    private static final int INIT_CAPACITY = 16;
+
+    /**
+     * Maps account addresses to account indexes.
+     */
+    private Map<String, Integer> indexMap;
+
+    /**
+     * Account addresses ordered by account index. Replaced by a larger copy when full.
+     */
+    private volatile String[] addresses;
+
+    /**
+     * Number of registered accounts.
+     */
+    private volatile int size;
+
+    /**
+     * Class constructor that initializes an empty table.
+     */
+    public AccountTable() {
+        this.indexMap = new ConcurrentHashMap<>();
+        this.addresses = new String[INIT_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Copy constructor that creates an independent table with the same accounts, such as for verifying a block that
+     * registers new accounts before any of them are registered with the Ledger.
+     *
+     * @param anAccountTable  AccountTable object to be copied
+     */
+    AccountTable(AccountTable anAccountTable) {
+        this.indexMap = new ConcurrentHashMap<>(anAccountTable.indexMap);
+        this.addresses = Arrays.copyOf(anAccountTable.addresses, anAccountTable.addresses.length);
+        this.size = anAccountTable.size;
+    }
+
+    /**
+     * Assigns the next index to a new account address.
+     *
+     * @param anAddress  Unique address of the account
+     * @return  Index of the account
+     * @throws LedgerException  if the address already exists
+     */
+    public int register(String anAddress) throws LedgerException {
+        if (this.indexMap.containsKey(anAddress)) {
+            throw new LedgerException("create account", "account address already exists");
+        }
+        int index = this.size;
+        String[] currAddresses = this.addresses;
+        if (index == currAddresses.length) {
+            currAddresses = Arrays.copyOf(currAddresses, currAddresses.length * 2);
+        }
+        currAddresses[index] = anAddress;
+        this.addresses = currAddresses;
+        this.size = index + 1;
+        this.indexMap.put(anAddress, index);
+        return index;
+    }
+
+    /**
+     * Retrieves the index of an account address.
+     *
+     * @param anAddress  Unique address of the account
+     * @return  Index of the account, -1 if the address does not exist
+     */
+    public int indexOf(String anAddress) {
+        Integer index = this.indexMap.get(anAddress);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Retrieves the account address for an index.
+     *
+     * @param anIndex  Index of the account
+     * @return  Unique address of the account
+     */
+    public String getAddress(int anIndex) {
+        return this.addresses[anIndex];
+    }
+
+    /**
+     * Retrieves the number of accounts in the table.
+     *
+     * @return  Number of accounts
+     */
+    public int size() {
+        return this.size;
+    }
+}
@@ -3,14 +3,14 @@ package com.cscie97.ledger;
 import com.cscie97.Utility;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a block in the Ledger System.
- * Includes 10 transactions and has a map of account addresses to account objects that reflects the balance of all
- * accounts after all the transactions within the block have been applied.
+ * Includes 10 transactions and has the account balances that reflect the balance of all accounts after all the
+ * transactions within the block have been applied.
  * Each block contains the hash of itself and the hash of the previous block.
  * The SHA-256 algorithm and Merkle tree are used to compute hash strings.
  *
@@ -26,7 +26,7 @@ public class Block {
     /**
      * Class variable that keeps track of all transactions which maps transaction Ids to transaction objects.
      */
-    private static Map<String, Transaction> transactionMap = new HashMap<>();
+    private static Map<Long, Transaction> transactionMap = new ConcurrentHashMap<>();
 
     /**
      * Unique identifier of the block.
@@ -43,37 +43,51 @@ public class Block {
      */
     private String hash;
 
+    /**
+     * Merkle root of the transactions, set when the block is committed.
+     */
+    private String merkleRoot;
+
     /**
      * Ordered list of transactions.
      */
     private List<Transaction> transactionList;
 
     /**
-     * Maps account addresses to account objects.
+     * Balances of all accounts indexed by account index.
      */
-    private Map<String, Account> accountBalanceMap;
+    private AccountBalances accountBalances;
 
     /**
-     * Preceding block.
+     * Preceding block. Null once the preceding block has been pruned from the heap.
      */
     private Block previousBlock;
 
     /**
-     * Class constructor that sets the blockNumber, previousHash, previousBlock, and accountBalanceMap.
+     * Time in milliseconds when the block was committed, 0 if the block has not been committed yet.
+     */
+    private long commitTime;
+
+    /**
+     * Time in nanoseconds taken to compute the Merkle root and the hash when the block was committed.
+     */
+    private long hashTimeNanos;
+
+    /**
+     * Class constructor that sets the blockNumber, previousHash, previousBlock, and accountBalances.
      * Initializes the transactionList.
      *
      * @param aBlockNumber  Integer that identifies the block
      * @param aPreviousHash  Previous block's hash
      * @param aPreviousBlock  The preceding block
-     * @param anAccountBalanceMap  Account address and account object pairs
+     * @param anAccountBalances  Balances of all accounts
      */
-    public Block(int aBlockNumber, String aPreviousHash, Block aPreviousBlock,
-                 Map<String, Account> anAccountBalanceMap) {
+    public Block(int aBlockNumber, String aPreviousHash, Block aPreviousBlock, AccountBalances anAccountBalances) {
         this.blockNumber = aBlockNumber;
         this.previousHash = aPreviousHash;
         this.previousBlock = aPreviousBlock;
         this.transactionList = new ArrayList<>();
-        this.accountBalanceMap = anAccountBalanceMap;
+        this.accountBalances = anAccountBalances;
     }
 
     /**
@@ -87,8 +101,28 @@ public class Block {
         this.previousHash = aBlock.getPreviousHash();
         this.previousBlock = null;
         this.transactionList = aBlock.getCopyOfTransactionList();
-        this.accountBalanceMap = aBlock.getCopyOfAccountBalanceMap();
+        this.accountBalances = aBlock.getCopyOfAccountBalances();
         this.hash = aBlock.hash;
+        this.merkleRoot = aBlock.merkleRoot;
+        this.commitTime = aBlock.commitTime;
+    }
+
+    /**
+     * Creates a committed block from a block record that has already been verified, such as the record of a block
+     * that was pruned from the heap. The transactions are not added to the transactionMap.
+     *
+     * @param record  Decoded block record
+     * @param anAccountTable  Table that assigns indexes to account addresses
+     * @return  Committed block without a previousBlock
+     */
+    static Block fromRecord(BlockCodec.BlockRecord record, AccountTable anAccountTable) {
+        Block block = new Block(record.getBlockNumber(), record.getPreviousHash(), null,
+                new AccountBalances(anAccountTable, record.getBalances()));
+        block.transactionList.addAll(record.getTransactions());
+        block.merkleRoot = block.computeMerkleRoot();
+        block.hash = record.getHash();
+        block.commitTime = record.getCommitTime();
+        return block;
     }
 
     /**
@@ -100,6 +134,24 @@ public class Block {
         return this.hash;
     }
 
+    /**
+     * Retrieves the Merkle root of the block's transactions.
+     *
+     * @return  Merkle root, null if the block has not been committed yet
+     */
+    public String getMerkleRoot() {
+        return this.merkleRoot;
+    }
+
+    /**
+     * Creates the header of the committed block.
+     *
+     * @return  Header that holds the block number, previous hash, Merkle root and hash
+     */
+    public BlockHeader getHeader() {
+        return new BlockHeader(this.blockNumber, this.previousHash, this.merkleRoot, this.hash);
+    }
+
     /**
      * Retrieves the hash of the preceding block.
      *
@@ -118,6 +170,45 @@ public class Block {
         return this.previousBlock;
     }
 
+    /**
+     * Drops the reference to the preceding block so that it can be pruned from the heap.
+     */
+    void detachPreviousBlock() {
+        this.previousBlock = null;
+    }
+
+    /**
+     * Retrieves the time when the block was committed.
+     *
+     * @return  Commit time in milliseconds, 0 if the block has not been committed yet
+     */
+    public long getCommitTime() {
+        return this.commitTime;
+    }
+
+    /**
+     * Retrieves the time taken to compute the Merkle root and the hash when the block was committed.
+     *
+     * @return  Hash time in nanoseconds, 0 if the block has not been committed in this process
+     */
+    long getHashTimeNanos() {
+        return this.hashTimeNanos;
+    }
+
+    /**
+     * Estimates the heap size of the block's transactions and account balances. Strings are counted at two bytes per
+     * character and every object at a 16-byte header, so the estimate is only approximate.
+     *
+     * @return  Estimated size in bytes
+     */
+    public long estimateHeapSize() {
+        long size = 64 + 2L * (this.previousHash.length() + (this.hash == null ? 0 : this.hash.length()));
+        for (Transaction txn : this.transactionList) {
+            size += 64 + 2L * (txn.getNote().length() + txn.getPayer().length() + txn.getReceiver().length());
+        }
+        return size + 32 + (long) Long.BYTES * this.accountBalances.size();
+    }
+
     /**
      * Retrieves the block number.
      *
@@ -128,29 +219,22 @@ public class Block {
     }
 
     /**
-     * Retrieves the accountBalanceMap which reflects the balance of all accounts after all the transactions within
-     * the last committed block have been applied.
+     * Retrieves the accountBalances which reflect the balance of all accounts after all the transactions within
+     * the block have been applied.
      *
-     * @return  accountBalanceMap that maps account addresses to account objects
+     * @return  Balances of all accounts
      */
-    public Map<String, Account> getAccountBalanceMap() {
-        return this.accountBalanceMap;
+    public AccountBalances getAccountBalances() {
+        return this.accountBalances;
     }
 
     /**
-     * Deep copies the accountBalanceMap to ensure immutability of accountBalanceMap.
+     * Deep copies the accountBalances to ensure immutability of accountBalances.
      *
-     * @return  a copy of the accountBalanceMap
+     * @return  a copy of the accountBalances
      */
-    public Map<String, Account> getCopyOfAccountBalanceMap() {
-        Map<String, Account> copyOfAccountBalanceMap = new HashMap<>();
-
-        // Iterate over current block's accountBalanceMap and populate copyOfAccountBalanceMap by deep copying accounts
-        for (Map.Entry<String, Account> entry : this.accountBalanceMap.entrySet()) {
-            copyOfAccountBalanceMap.put(entry.getKey(), new Account(entry.getValue()));
-        }
-
-        return copyOfAccountBalanceMap;
+    public AccountBalances getCopyOfAccountBalances() {
+        return new AccountBalances(this.accountBalances);
     }
 
     /**
@@ -182,17 +266,17 @@ public class Block {
      *
      * @return  transactionMap that maps transaction IDs to transaction objects
      */
-    public static Map<String, Transaction> getTransactionMap() {
+    public static Map<Long, Transaction> getTransactionMap() {
         return transactionMap;
     }
 
     /**
-     * Adds a new account to accountBalanceMap.
+     * Adds a new account to accountBalances.
      *
-     * @param anAccount  Account to be added to accountBalanceMap
+     * @param anAccount  Account to be added to accountBalances
      */
-    public void addAccountBalanceMap(Account anAccount) {
-        this.accountBalanceMap.put(anAccount.getAddress(), anAccount);
+    public void addAccount(Account anAccount) {
+        this.accountBalances.addAccount(anAccount);
     }
 
     /**
@@ -213,7 +297,7 @@ public class Block {
 
         // Check if transactionId already exists in transactionList
         for (Transaction transaction : this.transactionList) {
-            if (transaction.getTransactionId().equals(txn.getTransactionId())) {
+            if (transaction.getTransactionId() == txn.getTransactionId()) {
                 throw new LedgerException("Transaction " + txn.getTransactionId() + " cannot be processed.",
                         "Transaction Id was already used.");
             }
@@ -223,26 +307,42 @@ public class Block {
     }
 
     /**
-     * Sets the accountBalanceMap, updates the transactionMap, and sets the hash. Takes a map of account address and
-     * account object pairs as an input which must be validated by the caller.
+     * Sets the accountBalances, updates the transactionMap, and sets the hash. Takes the account balances as an input
+     * which must be validated by the caller. The block is committed at the current time.
      *
-     * @param anAccountBalanceMap  a validated accountBalanceMap that maps account addresses to updated account objects
+     * @param anAccountBalances  validated balances of all accounts after the block's transactions have been applied
      * @throws LedgerException  if the block has already been committed to the ledger
      */
-    public void commitBlock(Map<String, Account> anAccountBalanceMap) throws LedgerException  {
+    public void commitBlock(AccountBalances anAccountBalances) throws LedgerException  {
+        this.commitBlock(anAccountBalances, System.currentTimeMillis());
+    }
+
+    /**
+     * Commits the block with a given commit time, such as the recorded commit time of a block that is reloaded from
+     * the block segment file.
+     *
+     * @param anAccountBalances  validated balances of all accounts after the block's transactions have been applied
+     * @param aCommitTime  Time in milliseconds when the block was committed
+     * @throws LedgerException  if the block has already been committed to the ledger
+     */
+    void commitBlock(AccountBalances anAccountBalances, long aCommitTime) throws LedgerException  {
         // Check if a hash has already been calculated for the block.
         this.validateBlock();
 
-        // Set the accountBalanceMap
-        this.accountBalanceMap = anAccountBalanceMap;
+        // Set the accountBalances
+        this.accountBalances = anAccountBalances;
 
         // Add transactions from transactionList to transactionMap
         for (Transaction txn : this.transactionList) {
             transactionMap.put(txn.getTransactionId(), txn);
         }
 
-        // Set the hash
-        this.hash = this.computeHash();
+        // Set the Merkle root and the hash
+        long startNanos = System.nanoTime();
+        this.merkleRoot = this.computeMerkleRoot();
+        this.hash = this.computeHash(this.merkleRoot);
+        this.hashTimeNanos = System.nanoTime() - startNanos;
+        this.commitTime = aCommitTime;
         System.out.println("Block " + this.blockNumber + " committed successfully.");
     }
 
@@ -252,6 +352,15 @@ public class Block {
      * @return  hash string for the block
      */
     public String computeHash() {
+        return this.computeHash(this.computeMerkleRoot());
+    }
+
+    /**
+     * Computes the Merkle root of the transactionList.
+     *
+     * @return  Merkle root of the transactions
+     */
+    private String computeMerkleRoot() {
         // Create an array of string representations of transactions
         ArrayList<String> transactions = new ArrayList<>();
         for (Transaction txn : this.transactionList) {
@@ -259,13 +368,22 @@ public class Block {
         }
 
         // Compute the Merkle Root of the transactions
-        String merkleRoot = MerkleTree.getRootHash(transactions);
+        return MerkleTree.getRootHash(transactions);
+    }
 
+    /**
+     * Computes the hash for the block using the Merkle root of the transactions, previous block's hash, and the block
+     * number.
+     *
+     * @param merkleRoot  Merkle root of the transactions
+     * @return  hash string for the block
+     */
+    private String computeHash(String merkleRoot) {
         // Compute the hash of the current block's number
         String blockNumHash = Utility.hashString(String.valueOf(this.blockNumber));
 
         // Return the hash of the concatenated string
-        return Utility.hashString(blockNumHash + this.previousHash + merkleRoot);
+        return Utility.hashStrings(blockNumHash, this.previousHash, merkleRoot);
     }
 
     /**
@@ -298,8 +416,9 @@ public class Block {
 
         // Add account addresses and their balances to the output string
         output.append(String.format("%n%-15s%-15s%n", "ACCOUNT", "BALANCE"));
-        for (Map.Entry<String, Account> entry : this.accountBalanceMap.entrySet()) {
-            output.append(String.format("%-15s%-15s%n", entry.getKey(), entry.getValue().getBalance()));
+        for (int i = 0; i < this.accountBalances.size(); i++) {
+            output.append(String.format("%-15s%-15s%n", this.accountBalances.getAddress(i),
+                    this.accountBalances.getBalance(i)));
         }
 
         return output.toString();
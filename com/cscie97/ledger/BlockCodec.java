@@ -0,0 +1,399 @@
+package com.cscie97.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes committed blocks as binary records and decodes them back. Each record is stored as its payload length, a
+ * CRC32 checksum of the payload, and the payload. The payload holds the block number, the previous hash, the hash, the
+ * commit time, the transactions, and the account balances in account index order. The same records are used by the
+ * block segment file and by block export and import, so a segment file can be streamed to another host as is.
+ *
+ * @author Burak Ufuktepe
+ */
+public class BlockCodec {
+
+    /**
+     * Class constant for the size of the length and checksum that precede each payload.
+     */
+    public static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    /**
+     * Class constant for the max payload size of a record. A block of 10 transactions with a few million accounts
+     * stays well below it, so a larger length can only come from a corrupt or hostile stream.
+     */
+    public static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Private constructor since the codec only has static members.
+     */
+    private BlockCodec() {
+    }
+
+    /**
+     * Encodes a committed block as a binary record.
+     *
+     * @param aBlock  Committed block to be encoded
+     * @return  Buffer that holds the record, ready to be written
+     * @throws IllegalStateException  if the record would exceed the max record size
+     */
+    public static ByteBuffer encode(Block aBlock) {
+        List<Transaction> txns = aBlock.getTransactionList();
+        AccountBalances balances = aBlock.getAccountBalances();
+
+        // Encode the strings first to size the buffer
+        byte[] previousHash = aBlock.getPreviousHash().getBytes(StandardCharsets.UTF_8);
+        byte[] hash = aBlock.getHash().getBytes(StandardCharsets.UTF_8);
+        List<byte[]> txnStrings = new ArrayList<>(txns.size() * 3);
+        int size = 3 * Integer.BYTES + previousHash.length + hash.length + Long.BYTES + Integer.BYTES;
+        for (Transaction txn : txns) {
+            txnStrings.add(txn.getNote().getBytes(StandardCharsets.UTF_8));
+            txnStrings.add(txn.getPayer().getBytes(StandardCharsets.UTF_8));
+            txnStrings.add(txn.getReceiver().getBytes(StandardCharsets.UTF_8));
+            size += Long.BYTES + 2 * Integer.BYTES;
+        }
+        for (byte[] bytes : txnStrings) {
+            size += Integer.BYTES + bytes.length;
+        }
+        List<byte[]> addresses = new ArrayList<>(balances.size());
+        size += Integer.BYTES;
+        for (int i = 0; i < balances.size(); i++) {
+            byte[] address = balances.getAddress(i).getBytes(StandardCharsets.UTF_8);
+            addresses.add(address);
+            size += Integer.BYTES + address.length + Long.BYTES;
+        }
+
+        if (size > MAX_RECORD_SIZE) {
+            throw new IllegalStateException("block record length " + size + " exceeds " + MAX_RECORD_SIZE);
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + size);
+        record.position(RECORD_HEADER_SIZE);
+
+        // Block number, hashes and commit time
+        record.putInt(aBlock.getBlockNumber());
+        putBytes(record, previousHash);
+        putBytes(record, hash);
+        record.putLong(aBlock.getCommitTime());
+
+        // Transactions
+        record.putInt(txns.size());
+        for (int i = 0; i < txns.size(); i++) {
+            Transaction txn = txns.get(i);
+            record.putLong(txn.getTransactionId());
+            record.putInt(txn.getAmount());
+            record.putInt(txn.getFee());
+            putBytes(record, txnStrings.get(3 * i));
+            putBytes(record, txnStrings.get(3 * i + 1));
+            putBytes(record, txnStrings.get(3 * i + 2));
+        }
+
+        // Account balances
+        record.putInt(balances.size());
+        for (int i = 0; i < balances.size(); i++) {
+            putBytes(record, addresses.get(i));
+            record.putLong(balances.getBalance(i));
+        }
+
+        // Fill in the length and checksum
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, size);
+        record.putInt(0, size);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Reads the next record from a channel and decodes it.
+     *
+     * @param aChannel  Channel to be read from
+     * @return  Decoded block record, null if the channel is at its end
+     * @throws IOException  if the channel cannot be read, or the record is truncated, corrupt or too large
+     */
+    public static BlockRecord read(ReadableByteChannel aChannel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (!readFully(aChannel, header)) {
+            if (header.position() == 0) {
+                return null;
+            }
+            throw new IOException("truncated block record");
+        }
+        header.flip();
+        int size = header.getInt();
+        int checksum = header.getInt();
+        if (size <= 0) {
+            throw new IOException("invalid block record length " + size);
+        }
+        if (size > MAX_RECORD_SIZE) {
+            throw new IOException("block record length " + size + " exceeds " + MAX_RECORD_SIZE);
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        if (!readFully(aChannel, payload)) {
+            throw new IOException("truncated block record");
+        }
+        payload.flip();
+
+        return decode(payload, checksum);
+    }
+
+    /**
+     * Decodes a record that has been read into a buffer.
+     *
+     * @param record  Buffer that holds a whole record, from its length to the end of its payload
+     * @return  Decoded block record
+     * @throws IOException  if the record is truncated, corrupt or too large
+     */
+    public static BlockRecord read(ByteBuffer record) throws IOException {
+        if (record.remaining() < RECORD_HEADER_SIZE) {
+            throw new IOException("truncated block record");
+        }
+        int size = record.getInt();
+        int checksum = record.getInt();
+        if (size <= 0 || size != record.remaining()) {
+            throw new IOException("invalid block record length " + size);
+        }
+        if (size > MAX_RECORD_SIZE) {
+            throw new IOException("block record length " + size + " exceeds " + MAX_RECORD_SIZE);
+        }
+
+        return decode(record.slice(), checksum);
+    }
+
+    /**
+     * Verifies the checksum of a record payload and decodes it.
+     *
+     * @param payload  Array-backed buffer that holds the payload of the record
+     * @param checksum  Recorded CRC32 checksum of the payload
+     * @return  Decoded block record
+     * @throws IOException  if the checksum does not match or the payload is malformed
+     */
+    private static BlockRecord decode(ByteBuffer payload, int checksum) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + payload.remaining();
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("block record checksum mismatch");
+        }
+
+        try {
+            int blockNumber = payload.getInt();
+            String previousHash = getString(payload);
+            String hash = getString(payload);
+            long commitTime = payload.getLong();
+
+            int numOfTxns = payload.getInt();
+            List<Transaction> txns = new ArrayList<>(numOfTxns);
+            for (int i = 0; i < numOfTxns; i++) {
+                long txnId = payload.getLong();
+                int amount = payload.getInt();
+                int fee = payload.getInt();
+                String note = getString(payload);
+                String payer = getString(payload);
+                String receiver = getString(payload);
+                txns.add(new Transaction(txnId, amount, fee, note, payer, receiver));
+            }
+
+            int numOfAccounts = payload.getInt();
+            List<String> addresses = new ArrayList<>(numOfAccounts);
+            long[] balances = new long[numOfAccounts];
+            for (int i = 0; i < numOfAccounts; i++) {
+                addresses.add(getString(payload));
+                balances[i] = payload.getLong();
+            }
+
+            return new BlockRecord(blockNumber, previousHash, hash, commitTime, txns, addresses, balances, recordSize);
+        } catch (RuntimeException e) {
+            throw new IOException("malformed block record");
+        }
+    }
+
+    /**
+     * Reads from a channel until the buffer is full or the channel is at its end.
+     *
+     * @param aChannel  Channel to be read from
+     * @param buffer  Buffer to be filled
+     * @return  True if the buffer was filled. Otherwise, returns false.
+     * @throws IOException  if the channel cannot be read
+     */
+    private static boolean readFully(ReadableByteChannel aChannel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (aChannel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a length-prefixed byte array to a buffer.
+     *
+     * @param buffer  Buffer to be written to
+     * @param bytes  Bytes to be written
+     */
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from a buffer.
+     *
+     * @param buffer  Buffer to be read from
+     * @return  Decoded string
+     */
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Represents a decoded block record. Holds the block's fields as they were recorded, before they are verified
+     * against the chain.
+     */
+    public static class BlockRecord {
+
+        /**
+         * Unique identifier of the block.
+         */
+        private final int blockNumber;
+
+        /**
+         * Recorded hash of the previous block.
+         */
+        private final String previousHash;
+
+        /**
+         * Recorded hash of the block.
+         */
+        private final String hash;
+
+        /**
+         * Time in milliseconds when the block was committed.
+         */
+        private final long commitTime;
+
+        /**
+         * Ordered list of transactions.
+         */
+        private final List<Transaction> transactions;
+
+        /**
+         * Account addresses in account index order.
+         */
+        private final List<String> addresses;
+
+        /**
+         * Account balances in account index order.
+         */
+        private final long[] balances;
+
+        /**
+         * Size of the encoded record including the header.
+         */
+        private final int recordSize;
+
+        /**
+         * Class constructor that sets the recorded fields of the block.
+         *
+         * @param aBlockNumber  Unique identifier of the block
+         * @param aPreviousHash  Recorded hash of the previous block
+         * @param aHash  Recorded hash of the block
+         * @param aCommitTime  Time in milliseconds when the block was committed
+         * @param aTransactions  Ordered list of transactions
+         * @param anAddresses  Account addresses in account index order
+         * @param aBalances  Account balances in account index order
+         * @param aRecordSize  Size of the encoded record including the header
+         */
+        private BlockRecord(int aBlockNumber, String aPreviousHash, String aHash, long aCommitTime,
+                            List<Transaction> aTransactions, List<String> anAddresses, long[] aBalances,
+                            int aRecordSize) {
+            this.blockNumber = aBlockNumber;
+            this.previousHash = aPreviousHash;
+            this.hash = aHash;
+            this.commitTime = aCommitTime;
+            this.transactions = aTransactions;
+            this.addresses = anAddresses;
+            this.balances = aBalances;
+            this.recordSize = aRecordSize;
+        }
+
+        /**
+         * Retrieves the block number.
+         *
+         * @return  Unique identifier of the block
+         */
+        public int getBlockNumber() {
+            return this.blockNumber;
+        }
+
+        /**
+         * Retrieves the recorded hash of the previous block.
+         *
+         * @return  Previous block's hash
+         */
+        public String getPreviousHash() {
+            return this.previousHash;
+        }
+
+        /**
+         * Retrieves the recorded hash of the block.
+         *
+         * @return  Block's hash
+         */
+        public String getHash() {
+            return this.hash;
+        }
+
+        /**
+         * Retrieves the time when the block was committed.
+         *
+         * @return  Commit time in milliseconds
+         */
+        public long getCommitTime() {
+            return this.commitTime;
+        }
+
+        /**
+         * Retrieves the transactions of the block.
+         *
+         * @return  Ordered list of transactions
+         */
+        public List<Transaction> getTransactions() {
+            return this.transactions;
+        }
+
+        /**
+         * Retrieves the account addresses.
+         *
+         * @return  Account addresses in account index order
+         */
+        public List<String> getAddresses() {
+            return this.addresses;
+        }
+
+        /**
+         * Retrieves the account balances.
+         *
+         * @return  Account balances in account index order
+         */
+        public long[] getBalances() {
+            return this.balances;
+        }
+
+        /**
+         * Retrieves the size of the encoded record.
+         *
+         * @return  Size of the record including the header
+         */
+        public int getRecordSize() {
+            return this.recordSize;
+        }
+    }
+}
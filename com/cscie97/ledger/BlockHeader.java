@@ -0,0 +1,146 @@
+package com.cscie97.ledger;
+
+import com.cscie97.Utility;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Represents the header of a committed block, which is all a verifier needs to check the hash chain. Holds the block
+ * number, the previous block's hash, the Merkle root of the transactions, and the block's hash. Hashes are stored as
+ * the 32 raw bytes of the SHA-256 digest, so a header is encoded in a fixed 100-byte record.
+ *
+ * @author Burak Ufuktepe
+ */
+public class BlockHeader {
+
+    /**
+     * Class constant for the size of a SHA-256 digest in bytes.
+     */
+    public static final int HASH_SIZE = 32;
+
+    /**
+     * Class constant for the size of an encoded header in bytes.
+     */
+    public static final int RECORD_SIZE = Integer.BYTES + 3 * HASH_SIZE;
+
+    /**
+     * Unique identifier of the block.
+     */
+    private int blockNumber;
+
+    /**
+     * Digest of the previous block's hash.
+     */
+    private byte[] previousHash;
+
+    /**
+     * Digest of the Merkle root of the block's transactions.
+     */
+    private byte[] merkleRoot;
+
+    /**
+     * Digest of the block's hash.
+     */
+    private byte[] hash;
+
+    /**
+     * Class constructor that sets the block number and the hashes from their Base64 representations.
+     *
+     * @param aBlockNumber  Unique identifier of the block
+     * @param aPreviousHash  Previous block's hash
+     * @param aMerkleRoot  Merkle root of the block's transactions
+     * @param aHash  Block's hash
+     */
+    public BlockHeader(int aBlockNumber, String aPreviousHash, String aMerkleRoot, String aHash) {
+        this.blockNumber = aBlockNumber;
+        this.previousHash = Base64.getDecoder().decode(aPreviousHash);
+        this.merkleRoot = Base64.getDecoder().decode(aMerkleRoot);
+        this.hash = Base64.getDecoder().decode(aHash);
+    }
+
+    /**
+     * Class constructor that decodes a header from its 100-byte record.
+     *
+     * @param buffer  Buffer positioned at the start of the record, advanced past the record
+     */
+    public BlockHeader(ByteBuffer buffer) {
+        this.blockNumber = buffer.getInt();
+        this.previousHash = new byte[HASH_SIZE];
+        buffer.get(this.previousHash);
+        this.merkleRoot = new byte[HASH_SIZE];
+        buffer.get(this.merkleRoot);
+        this.hash = new byte[HASH_SIZE];
+        buffer.get(this.hash);
+    }
+
+    /**
+     * Encodes the header as a 100-byte record.
+     *
+     * @param buffer  Buffer to be written to, advanced past the record
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(this.blockNumber);
+        buffer.put(this.previousHash);
+        buffer.put(this.merkleRoot);
+        buffer.put(this.hash);
+    }
+
+    /**
+     * Retrieves the block number.
+     *
+     * @return  Unique identifier of the block
+     */
+    public int getBlockNumber() {
+        return this.blockNumber;
+    }
+
+    /**
+     * Retrieves the hash of the previous block.
+     *
+     * @return  Previous block's hash
+     */
+    public String getPreviousHash() {
+        return Base64.getEncoder().encodeToString(this.previousHash);
+    }
+
+    /**
+     * Retrieves the Merkle root of the block's transactions.
+     *
+     * @return  Merkle root
+     */
+    public String getMerkleRoot() {
+        return Base64.getEncoder().encodeToString(this.merkleRoot);
+    }
+
+    /**
+     * Retrieves the hash of the block.
+     *
+     * @return  Block's hash
+     */
+    public String getHash() {
+        return Base64.getEncoder().encodeToString(this.hash);
+    }
+
+    /**
+     * Recomputes the block's hash from the block number, the previous hash and the Merkle root, the same way
+     * Block.computeHash does.
+     *
+     * @return  Recomputed hash of the block
+     */
+    public String computeHash() {
+        String blockNumHash = Utility.hashString(String.valueOf(this.blockNumber));
+        return Utility.hashStrings(blockNumHash, this.getPreviousHash(), this.getMerkleRoot());
+    }
+
+    /**
+     * Returns a string that includes the block number, hash, previous block's hash and Merkle root.
+     *
+     * @return  String representation of the header
+     */
+    public String toString() {
+        return String.format("%-22s: %s%n%-22s: %s%n%-22s: %s%n%-22s: %s", "Block", this.blockNumber,
+                "Hash", this.getHash(), "Previous Block's Hash", this.getPreviousHash(),
+                "Merkle Root", this.getMerkleRoot());
+    }
+}
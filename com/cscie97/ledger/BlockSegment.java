@@ -0,0 +1,218 @@
+package com.cscie97.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file of the committed blocks of a Ledger, stored as BlockCodec records in block number order. Keeps an
+ * in-memory index of the offset of each block in the file, so that a range of blocks can be streamed to a channel with
+ * FileChannel.transferTo without decoding them.
+ *
+ * @author Burak Ufuktepe
+ */
+public class BlockSegment {
+
+    /**
+     * Channel of the segment file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Offsets of the blocks in the segment file. The offset of block n is at index n - 1.
+     */
+    private List<Long> offsets;
+
+    /**
+     * Size of the intact part of the segment file.
+     */
+    private long size;
+
+    /**
+     * Class constructor that opens the segment file, creating it if it does not exist.
+     *
+     * @param aFile  Segment file
+     * @throws LedgerException  if the segment file cannot be opened
+     */
+    public BlockSegment(Path aFile) throws LedgerException {
+        try {
+            this.channel = FileChannel.open(aFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new LedgerException("open block segment", "cannot open " + aFile);
+        }
+        this.offsets = new ArrayList<>();
+        this.size = 0;
+    }
+
+    /**
+     * Reads every intact block record in the segment file and builds the offset index. A torn record at the end of the
+     * file, left by a crash during an append, is truncated. A corrupt record that is followed by more data is not a
+     * torn append, so the file is left as it is.
+     *
+     * @return  List of block records in block number order
+     * @throws LedgerException  if the segment file cannot be read or holds a corrupt record
+     */
+    public List<BlockCodec.BlockRecord> readRecords() throws LedgerException {
+        List<BlockCodec.BlockRecord> records = new ArrayList<>();
+        this.offsets.clear();
+        this.size = 0;
+        try {
+            this.channel.position(0);
+            while (true) {
+                BlockCodec.BlockRecord record;
+                try {
+                    record = BlockCodec.read(this.channel);
+                } catch (IOException e) {
+                    // Truncate a torn record at the end of the file, but never the blocks after a corrupt record
+                    if (this.isTornRecord(this.size)) {
+                        break;
+                    }
+                    throw new LedgerException("read block segment", "block record " + (records.size() + 1)
+                            + " at offset " + this.size + " is corrupt: " + e.getMessage());
+                }
+                if (record == null) {
+                    break;
+                }
+                records.add(record);
+                this.offsets.add(this.size);
+                this.size += record.getRecordSize();
+            }
+
+            if (this.size < this.channel.size()) {
+                this.channel.truncate(this.size);
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new LedgerException("read block segment", e.getMessage());
+        }
+        return records;
+    }
+
+    /**
+     * Checks whether the record at the given offset runs past the end of the file, as the last record does when a
+     * crash interrupts its append.
+     *
+     * @param offset  Offset of the record
+     * @return  True if the header or the payload of the record is cut off by the end of the file. Otherwise, false.
+     * @throws IOException  if the segment file cannot be read
+     */
+    private boolean isTornRecord(long offset) throws IOException {
+        long fileSize = this.channel.size();
+        if (fileSize - offset < BlockCodec.RECORD_HEADER_SIZE) {
+            return true;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        while (header.hasRemaining()) {
+            if (this.channel.read(header, offset + header.position()) < 0) {
+                return true;
+            }
+        }
+        header.flip();
+        int size = header.getInt();
+        return size > 0 && offset + BlockCodec.RECORD_HEADER_SIZE + size > fileSize;
+    }
+
+    /**
+     * Appends a committed block to the segment file and forces it to disk.
+     *
+     * @param aBlock  Committed block
+     * @throws LedgerException  if the block cannot be written
+     */
+    public void append(Block aBlock) throws LedgerException {
+        ByteBuffer record = BlockCodec.encode(aBlock);
+        long offset = this.size;
+        try {
+            long position = offset;
+            while (record.hasRemaining()) {
+                position += this.channel.write(record, position);
+            }
+            this.channel.force(false);
+            this.size = position;
+        } catch (IOException e) {
+            throw new LedgerException("append block " + aBlock.getBlockNumber(), e.getMessage());
+        }
+        this.offsets.add(offset);
+    }
+
+    /**
+     * Reads the record of a single block from the segment file.
+     *
+     * @param blockNumber  Number of the block to be read
+     * @return  Decoded block record
+     * @throws LedgerException  if the block number does not exist or the record cannot be read
+     */
+    public BlockCodec.BlockRecord read(int blockNumber) throws LedgerException {
+        if (blockNumber < 1 || blockNumber > this.offsets.size()) {
+            throw new LedgerException("read block", "block number " + blockNumber + " does not exist");
+        }
+
+        long offset = this.offsets.get(blockNumber - 1);
+        long end = blockNumber < this.offsets.size() ? this.offsets.get(blockNumber) : this.size;
+        ByteBuffer record = ByteBuffer.allocate((int) (end - offset));
+        try {
+            while (record.hasRemaining()) {
+                if (this.channel.read(record, offset + record.position()) < 0) {
+                    throw new IOException("truncated block record");
+                }
+            }
+            record.flip();
+            return BlockCodec.read(record);
+        } catch (IOException e) {
+            throw new LedgerException("read block " + blockNumber, e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the records of the blocks from the given block number to the last block to a channel. The bytes are
+     * transferred by the file system where supported, without being copied through the heap.
+     *
+     * @param fromBlock  Number of the first block to be streamed
+     * @param target  Channel to be written to
+     * @return  Number of bytes transferred
+     * @throws LedgerException  if the block number does not exist or the records cannot be transferred
+     */
+    public long transferTo(int fromBlock, WritableByteChannel target) throws LedgerException {
+        if (fromBlock < 1 || fromBlock > this.offsets.size()) {
+            throw new LedgerException("export blocks", "block number " + fromBlock + " does not exist");
+        }
+
+        long position = this.offsets.get(fromBlock - 1);
+        try {
+            while (position < this.size) {
+                position += this.channel.transferTo(position, this.size - position, target);
+            }
+        } catch (IOException e) {
+            throw new LedgerException("export blocks", e.getMessage());
+        }
+        return this.size - this.offsets.get(fromBlock - 1);
+    }
+
+    /**
+     * Retrieves the number of blocks in the segment file.
+     *
+     * @return  Number of blocks
+     */
+    public int getBlockCount() {
+        return this.offsets.size();
+    }
+
+    /**
+     * Closes the segment file.
+     *
+     * @throws LedgerException  if the segment file cannot be closed
+     */
+    public void close() throws LedgerException {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new LedgerException("close block segment", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.cscie97.ledger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact chain of block headers stored as consecutive 100-byte records in a single byte array. Headers are appended
+ * in block number order. Continuity can be verified by comparing the raw bytes of neighbouring records, without
+ * decoding any header, so millions of headers are verified in a few milliseconds.
+ *
+ * @author Burak Ufuktepe
+ */
+public class HeaderChain {
+
+    /**
+     * Class constant for the initial number of headers the chain has room for.
+     */
+    private static final int INIT_CAPACITY = 64;
+
+    /**
+     * Class constant for the offset of the previous hash in a record.
+     */
+    private static final int PREVIOUS_HASH_OFFSET = Integer.BYTES;
+
+    /**
+     * Class constant for the offset of the hash in a record.
+     */
+    private static final int HASH_OFFSET = Integer.BYTES + 2 * BlockHeader.HASH_SIZE;
+
+    /**
+     * Encoded header records.
+     */
+    private byte[] records;
+
+    /**
+     * Number of headers in the chain.
+     */
+    private int size;
+
+    /**
+     * Class constructor that initializes an empty chain.
+     */
+    public HeaderChain() {
+        this.records = new byte[INIT_CAPACITY * BlockHeader.RECORD_SIZE];
+        this.size = 0;
+    }
+
+    /**
+     * Class constructor that wraps encoded header records.
+     *
+     * @param aRecords  Encoded header records
+     * @param aSize  Number of headers in the records
+     */
+    private HeaderChain(byte[] aRecords, int aSize) {
+        this.records = aRecords;
+        this.size = aSize;
+    }
+
+    /**
+     * Appends a header to the chain.
+     *
+     * @param aHeader  Header of the next block
+     */
+    public void append(BlockHeader aHeader) {
+        int offset = this.size * BlockHeader.RECORD_SIZE;
+        if (offset == this.records.length) {
+            this.records = Arrays.copyOf(this.records, this.records.length * 2);
+        }
+        aHeader.writeTo(ByteBuffer.wrap(this.records, offset, BlockHeader.RECORD_SIZE));
+        this.size++;
+    }
+
+    /**
+     * Retrieves the number of headers in the chain.
+     *
+     * @return  Number of headers
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Retrieves a header by its position in the chain.
+     *
+     * @param anIndex  Position of the header, starting from 0
+     * @return  Decoded header
+     */
+    public BlockHeader get(int anIndex) {
+        if (anIndex < 0 || anIndex >= this.size) {
+            throw new IndexOutOfBoundsException("header " + anIndex + " does not exist");
+        }
+        return new BlockHeader(ByteBuffer.wrap(this.records, anIndex * BlockHeader.RECORD_SIZE,
+                BlockHeader.RECORD_SIZE));
+    }
+
+    /**
+     * Copies a range of headers into a new chain.
+     *
+     * @param fromIndex  Position of the first header, inclusive
+     * @param toIndex  Position of the last header, exclusive
+     * @return  Chain that holds the copied headers
+     */
+    public HeaderChain subChain(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > this.size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("headers " + fromIndex + " to " + toIndex + " do not exist");
+        }
+        return new HeaderChain(Arrays.copyOfRange(this.records, fromIndex * BlockHeader.RECORD_SIZE,
+                toIndex * BlockHeader.RECORD_SIZE), toIndex - fromIndex);
+    }
+
+    /**
+     * Retrieves the encoded header records, which can be written to a channel as is.
+     *
+     * @return  Read-only buffer over the records
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(this.records, 0, this.size * BlockHeader.RECORD_SIZE).asReadOnlyBuffer();
+    }
+
+    /**
+     * Verifies the continuity of the chain. Each header must have the next block number and hold the previous
+     * header's hash as its previous hash.
+     *
+     * @throws LedgerException  if a header does not follow the previous header
+     */
+    public void verify() throws LedgerException {
+        ByteBuffer buffer = ByteBuffer.wrap(this.records);
+        for (int i = 1; i < this.size; i++) {
+            int previousOffset = (i - 1) * BlockHeader.RECORD_SIZE;
+            int offset = i * BlockHeader.RECORD_SIZE;
+
+            if (buffer.getInt(offset) != buffer.getInt(previousOffset) + 1) {
+                throw new LedgerException("header chain verification", "block " + buffer.getInt(offset)
+                        + " does not follow block " + buffer.getInt(previousOffset));
+            }
+
+            if (!Arrays.equals(this.records, offset + PREVIOUS_HASH_OFFSET,
+                    offset + PREVIOUS_HASH_OFFSET + BlockHeader.HASH_SIZE, this.records,
+                    previousOffset + HASH_OFFSET, previousOffset + HASH_OFFSET + BlockHeader.HASH_SIZE)) {
+                throw new LedgerException("header chain verification", "hash values in blocks "
+                        + buffer.getInt(offset) + " & " + buffer.getInt(previousOffset) + " don't match");
+            }
+        }
+    }
+
+    /**
+     * Verifies the continuity of the chain and recomputes the hash of every header from its block number, previous
+     * hash and Merkle root. Much slower than verify since it hashes every header.
+     *
+     * @throws LedgerException  if a header does not follow the previous header or its hash is not correct
+     */
+    public void verifyHashes() throws LedgerException {
+        this.verify();
+        for (int i = 0; i < this.size; i++) {
+            BlockHeader header = this.get(i);
+            if (!header.computeHash().equals(header.getHash())) {
+                throw new LedgerException("header chain verification", "hash of block " + header.getBlockNumber()
+                        + " is not correct");
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.cscie97.ledger;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Remembers the idempotency keys of recently accepted transactions, so a retried submission is recognized without
+ * scanning the committed blocks. Keys are kept for a sliding time window and up to a maximum number of keys; older
+ * keys are forgotten. A Bloom filter in front of the exact key set answers most lookups of new keys without touching
+ * the set. The filter has two generations that are rotated once per window, so it forgets keys along with the set.
+ * Not thread-safe; the Ledger only accesses it while holding its lock.
+ *
+ * @author Burak Ufuktepe
+ */
+public class IdempotencyIndex {
+
+    /**
+     * Class constant for the default time window in milliseconds.
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Class constant for the default max number of keys.
+     */
+    public static final int DEFAULT_MAX_KEYS = 100000;
+
+    /**
+     * Class constant for the number of filter bits per key, which gives a false positive rate of about 1%.
+     */
+    private static final int BITS_PER_KEY = 10;
+
+    /**
+     * Class constant for the number of filter bits set per key.
+     */
+    private static final int NUM_OF_PROBES = 7;
+
+    /**
+     * Time in milliseconds a key is remembered.
+     */
+    private final long windowMillis;
+
+    /**
+     * Max number of keys remembered.
+     */
+    private final int maxKeys;
+
+    /**
+     * Number of bits in each filter generation.
+     */
+    private final int numOfBits;
+
+    /**
+     * Filter generation that receives new keys.
+     */
+    private long[] currentFilter;
+
+    /**
+     * Filter generation of the previous window.
+     */
+    private long[] previousFilter;
+
+    /**
+     * Time in milliseconds when the current filter generation was started.
+     */
+    private long filterStartTime;
+
+    /**
+     * Maps keys to their entries in the order the keys were added.
+     */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Class constructor that sets the window and the max number of keys.
+     *
+     * @param aWindowMillis  Time in milliseconds a key is remembered
+     * @param aMaxKeys  Max number of keys remembered
+     * @throws IllegalArgumentException  if the window or the max number of keys is not positive
+     */
+    public IdempotencyIndex(long aWindowMillis, int aMaxKeys) {
+        if (aWindowMillis <= 0 || aMaxKeys <= 0) {
+            throw new IllegalArgumentException("idempotency window and max keys must be positive");
+        }
+        this.windowMillis = aWindowMillis;
+        this.maxKeys = aMaxKeys;
+        this.numOfBits = (int) Math.min((long) aMaxKeys * BITS_PER_KEY, Integer.MAX_VALUE - Long.SIZE);
+        this.currentFilter = new long[(this.numOfBits + Long.SIZE - 1) / Long.SIZE];
+        this.previousFilter = new long[this.currentFilter.length];
+        this.filterStartTime = System.currentTimeMillis();
+        this.entries = new LinkedHashMap<>();
+    }
+
+    /**
+     * Finds the transaction that was accepted with the given key within the window.
+     *
+     * @param key  Idempotency key
+     * @return  ID of the transaction, null if the key is not remembered
+     */
+    public Long find(String key) {
+        this.expire(System.currentTimeMillis());
+        if (!this.mightContain(key)) {
+            return null;
+        }
+        Entry entry = this.entries.get(key);
+        return entry == null ? null : entry.transactionId;
+    }
+
+    /**
+     * Remembers the key of an accepted transaction. Forgets the oldest key if the max number of keys is reached.
+     *
+     * @param key  Idempotency key
+     * @param transactionId  ID of the accepted transaction
+     */
+    public void add(String key, long transactionId) {
+        long now = System.currentTimeMillis();
+        this.expire(now);
+        this.entries.put(key, new Entry(transactionId, now));
+        if (this.entries.size() > this.maxKeys) {
+            Iterator<Entry> oldest = this.entries.values().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+
+        // Set the key's bits in the current filter generation
+        int hash = key.hashCode();
+        int step = mix(hash);
+        for (int i = 0; i < NUM_OF_PROBES; i++) {
+            int bit = Math.floorMod(hash + i * step, this.numOfBits);
+            this.currentFilter[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Forgets a key, so a transaction submitted with it is processed again. Used when the transaction that was
+     * accepted with the key is dropped before it is committed. The key's filter bits are left set.
+     *
+     * @param key  Idempotency key
+     * @param transactionId  ID of the transaction that was accepted with the key
+     */
+    public void remove(String key, long transactionId) {
+        Entry entry = this.entries.get(key);
+        if (entry != null && entry.transactionId == transactionId) {
+            this.entries.remove(key);
+        }
+    }
+
+    /**
+     * Retrieves the number of remembered keys.
+     *
+     * @return  Number of keys
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Checks the filter generations for a key.
+     *
+     * @param key  Idempotency key
+     * @return  False if the key is definitely not remembered. Otherwise, returns true.
+     */
+    private boolean mightContain(String key) {
+        int hash = key.hashCode();
+        int step = mix(hash);
+        boolean inCurrent = true;
+        boolean inPrevious = true;
+        for (int i = 0; i < NUM_OF_PROBES && (inCurrent || inPrevious); i++) {
+            int bit = Math.floorMod(hash + i * step, this.numOfBits);
+            inCurrent &= (this.currentFilter[bit >>> 6] & (1L << bit)) != 0;
+            inPrevious &= (this.previousFilter[bit >>> 6] & (1L << bit)) != 0;
+        }
+        return inCurrent || inPrevious;
+    }
+
+    /**
+     * Forgets the keys that are older than the window and rotates the filter generations once per window.
+     *
+     * @param now  Current time in milliseconds
+     */
+    private void expire(long now) {
+        Iterator<Entry> oldest = this.entries.values().iterator();
+        while (oldest.hasNext() && now - oldest.next().addTime > this.windowMillis) {
+            oldest.remove();
+        }
+
+        if (now - this.filterStartTime > this.windowMillis) {
+            // The previous generation only holds keys older than the window
+            long[] filter = this.previousFilter;
+            Arrays.fill(filter, 0);
+            this.previousFilter = this.currentFilter;
+            this.currentFilter = filter;
+            this.filterStartTime = now;
+        }
+    }
+
+    /**
+     * Derives a second hash from a key's hash for the filter probes. The result is odd, so the probes of a key do not
+     * repeat early.
+     *
+     * @param hash  Hash code of the key
+     * @return  Step between the probes
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+
+    /**
+     * Transaction ID and time of a remembered key.
+     */
+    private static class Entry {
+
+        /**
+         * ID of the transaction accepted with the key.
+         */
+        private final long transactionId;
+
+        /**
+         * Time in milliseconds when the key was added.
+         */
+        private final long addTime;
+
+        /**
+         * Class constructor that sets the transaction ID and the time.
+         *
+         * @param aTransactionId  ID of the transaction accepted with the key
+         * @param anAddTime  Time in milliseconds when the key was added
+         */
+        Entry(long aTransactionId, long anAddTime) {
+            this.transactionId = aTransactionId;
+            this.addTime = anAddTime;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.cscie97.ledger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations with power-of-two microsecond buckets. Bucket i counts the durations of less than
+ * 2^i microseconds that do not fit a smaller bucket, so percentiles are reported as the upper bound of their bucket and
+ * are accurate to within a factor of two. Recording a duration never blocks, so the histogram can be updated inside
+ * the Ledger's lock.
+ *
+ * @author Burak Ufuktepe
+ */
+public class LatencyHistogram {
+
+    /**
+     * Class constant for the number of buckets. The last bucket holds every duration of 2^38 microseconds or more.
+     */
+    private static final int NUM_OF_BUCKETS = 40;
+
+    /**
+     * Number of durations recorded in each bucket.
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * Sum of the recorded durations in nanoseconds.
+     */
+    private final LongAdder totalNanos;
+
+    /**
+     * Longest recorded duration in nanoseconds.
+     */
+    private final AtomicLong maxNanos;
+
+    /**
+     * Class constructor that initializes an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(NUM_OF_BUCKETS);
+        this.totalNanos = new LongAdder();
+        this.maxNanos = new AtomicLong();
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos  Duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(nanos, 0) / 1000;
+        int bucket = Math.min(Long.SIZE - Long.numberOfLeadingZeros(micros), NUM_OF_BUCKETS - 1);
+        this.buckets.incrementAndGet(bucket);
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Captures the recorded durations. Durations recorded while the snapshot is taken may be partially included.
+     *
+     * @return  Summary of the recorded durations
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[NUM_OF_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            count += counts[i];
+        }
+        long maxMicros = this.maxNanos.get() / 1000;
+        long meanMicros = count == 0 ? 0 : this.totalNanos.sum() / count / 1000;
+        return new Snapshot(count, meanMicros, percentile(counts, count, 0.5, maxMicros),
+                percentile(counts, count, 0.9, maxMicros), percentile(counts, count, 0.99, maxMicros), maxMicros);
+    }
+
+    /**
+     * Finds the bucket that holds the given percentile.
+     *
+     * @param counts  Number of durations in each bucket
+     * @param count  Total number of durations
+     * @param fraction  Percentile as a fraction between 0 and 1
+     * @param maxMicros  Longest recorded duration in microseconds
+     * @return  Upper bound of the bucket in microseconds, capped by the longest duration
+     */
+    private static long percentile(long[] counts, long count, double fraction, long maxMicros) {
+        long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(1L << i, maxMicros);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Summary of the durations recorded in a histogram. Exposed through JMX as composite data.
+     */
+    public static class Snapshot {
+
+        /**
+         * Number of recorded durations.
+         */
+        private final long count;
+
+        /**
+         * Mean duration in microseconds.
+         */
+        private final long meanMicros;
+
+        /**
+         * Median duration in microseconds.
+         */
+        private final long p50Micros;
+
+        /**
+         * 90th percentile duration in microseconds.
+         */
+        private final long p90Micros;
+
+        /**
+         * 99th percentile duration in microseconds.
+         */
+        private final long p99Micros;
+
+        /**
+         * Longest duration in microseconds.
+         */
+        private final long maxMicros;
+
+        /**
+         * Class constructor that sets the summary values.
+         *
+         * @param aCount  Number of recorded durations
+         * @param aMeanMicros  Mean duration in microseconds
+         * @param aP50Micros  Median duration in microseconds
+         * @param aP90Micros  90th percentile duration in microseconds
+         * @param aP99Micros  99th percentile duration in microseconds
+         * @param aMaxMicros  Longest duration in microseconds
+         */
+        Snapshot(long aCount, long aMeanMicros, long aP50Micros, long aP90Micros, long aP99Micros, long aMaxMicros) {
+            this.count = aCount;
+            this.meanMicros = aMeanMicros;
+            this.p50Micros = aP50Micros;
+            this.p90Micros = aP90Micros;
+            this.p99Micros = aP99Micros;
+            this.maxMicros = aMaxMicros;
+        }
+
+        /**
+         * Retrieves the number of recorded durations.
+         *
+         * @return  Number of durations
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Retrieves the mean duration.
+         *
+         * @return  Mean duration in microseconds
+         */
+        public long getMeanMicros() {
+            return this.meanMicros;
+        }
+
+        /**
+         * Retrieves the median duration.
+         *
+         * @return  Median duration in microseconds
+         */
+        public long getP50Micros() {
+            return this.p50Micros;
+        }
+
+        /**
+         * Retrieves the 90th percentile duration.
+         *
+         * @return  90th percentile duration in microseconds
+         */
+        public long getP90Micros() {
+            return this.p90Micros;
+        }
+
+        /**
+         * Retrieves the 99th percentile duration.
+         *
+         * @return  99th percentile duration in microseconds
+         */
+        public long getP99Micros() {
+            return this.p99Micros;
+        }
+
+        /**
+         * Retrieves the longest duration.
+         *
+         * @return  Longest duration in microseconds
+         */
+        public long getMaxMicros() {
+            return this.maxMicros;
+        }
+    }
+}
@@ -2,7 +2,14 @@ package com.cscie97.ledger;
 
 import com.cscie97.Utility;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The Ledger manages the Blocks of the blockchain and provides the API used by clients of the Ledger.
@@ -12,6 +19,14 @@ import java.util.*;
  * Process queries
  * Validate the current state of the blockchain
  *
+ * Changes to the Ledger are serialized by the Ledger's lock. Queries of committed state do not take the lock: they read
+ * the LedgerSnapshot that is published each time a block is committed, and the committed blocks and transactions,
+ * which are never modified once committed.
+ *
+ * A transaction created with an idempotency key is processed at most once per key: a retry that carries the key of a
+ * recently accepted transaction returns the ID of that transaction instead of being processed again. Keys are kept
+ * in memory for IdempotencyIndex.DEFAULT_WINDOW_MILLIS and are not persisted.
+ *
  * @author Burak Ufuktepe
  */
 public class Ledger {
@@ -21,6 +36,26 @@ public class Ledger {
      */
     private static final Integer INIT_BLOCK_NUM = 1;
 
+    /**
+     * Name of the file in the data directory that holds the transaction ID high-water mark.
+     */
+    private static final String TXN_ID_FILE = "transaction-id.hwm";
+
+    /**
+     * Name of the file in the data directory that holds the write-ahead log.
+     */
+    private static final String WAL_FILE = "ledger.wal";
+
+    /**
+     * Name of the file in the data directory that holds the committed blocks.
+     */
+    private static final String SEGMENT_FILE = "blocks.seg";
+
+    /**
+     * Estimated heap size in bytes of an entry of the prunedTransactionMap.
+     */
+    private static final long PRUNED_TXN_ENTRY_SIZE = 80;
+
     /**
      * Name of the ledger.
      */
@@ -51,6 +86,81 @@ public class Ledger {
      */
     private Map<Integer, Block> blockMap;
 
+    /**
+     * Headers of the committed blocks in block number order.
+     */
+    private HeaderChain headerChain;
+
+    /**
+     * Transactions that have been accepted but not yet included in a block, ordered by fee and arrival. Normally
+     * holds fewer than a block's worth of transactions between submissions, since blocks are cut as soon as it fills
+     * one.
+     */
+    private TransactionPool transactionPool;
+
+    /**
+     * Assigns a dense index to every account of the ledger.
+     */
+    private AccountTable accountTable;
+
+    /**
+     * Pending balances of all accounts. Reflects the current block's account balances with every transaction in the
+     * transaction pool applied. Used for rejecting invalid transactions on submission.
+     */
+    private AccountBalances pendingBalances;
+
+    /**
+     * Directory where the ledger persists its state. Null if the ledger is not persisted.
+     */
+    private Path dataDirectory;
+
+    /**
+     * Log of the accepted account creations and transactions that are not in a committed block yet. Null if the
+     * ledger is not persisted.
+     */
+    private WriteAheadLog writeAheadLog;
+
+    /**
+     * File of the committed blocks. Null if the ledger is not persisted.
+     */
+    private BlockSegment blockSegment;
+
+    /**
+     * Committed state as of the last committed block. Replaced on every commit. Null if no block has been committed
+     * yet.
+     */
+    private volatile LedgerSnapshot snapshot;
+
+    /**
+     * Determines which committed blocks are kept on the heap.
+     */
+    private RetentionPolicy retentionPolicy;
+
+    /**
+     * Number of the oldest committed block that is kept on the heap. Older blocks have been pruned.
+     */
+    private volatile int firstResidentBlock;
+
+    /**
+     * Maps the IDs of the transactions in pruned blocks to the numbers of their blocks.
+     */
+    private Map<Long, Integer> prunedTransactionMap;
+
+    /**
+     * Idempotency keys of the recently accepted transactions.
+     */
+    private IdempotencyIndex idempotencyIndex;
+
+    /**
+     * Counters, histograms and gauges of the transaction processing, exposed through JMX.
+     */
+    private LedgerMetrics metrics;
+
+    /**
+     * Exposes the state of the ledger through JMX.
+     */
+    private LedgerMonitor monitor;
+
     /**
      * Class constructor. Sets the name, description, and seed of the ledger.
      * Creates the genesisBlock, sets the currentBlock, initializes the blockMap, and creates the master account.
@@ -61,49 +171,233 @@ public class Ledger {
      * @throws LedgerException  if a master account already exists
      */
     public Ledger(String aName, String aDescription, String aSeed) throws LedgerException {
+        this(aName, aDescription, aSeed, null);
+    }
+
+    /**
+     * Class constructor. Sets the name, description, seed, and data directory of the ledger. Uses the default sync
+     * window of the write-ahead log.
+     *
+     * @param aName  Name of the ledger
+     * @param aDescription  Ledger description
+     * @param aSeed  Placeholder for the previous block in genesisBlock
+     * @param aDataDirectory  Directory where the ledger persists its state, null if the ledger is not persisted
+     * @throws LedgerException  if the data directory cannot be accessed, if the write-ahead log cannot be replayed or
+     * if a master account already exists
+     */
+    public Ledger(String aName, String aDescription, String aSeed, Path aDataDirectory) throws LedgerException {
+        this(aName, aDescription, aSeed, aDataDirectory, WriteAheadLog.DEFAULT_SYNC_WINDOW_MILLIS);
+    }
+
+    /**
+     * Class constructor. Sets the name, description, seed, and data directory of the ledger.
+     * Restores the transaction ID high-water mark from the data directory so that transaction IDs are not reused
+     * after a restart. Creates the genesisBlock, sets the currentBlock, initializes the blockMap, and creates the
+     * master account. Then loads and verifies the committed blocks from the block segment file and replays the
+     * write-ahead log, which rebuilds the open block as it was before the restart.
+     *
+     * @param aName  Name of the ledger
+     * @param aDescription  Ledger description
+     * @param aSeed  Placeholder for the previous block in genesisBlock
+     * @param aDataDirectory  Directory where the ledger persists its state, null if the ledger is not persisted
+     * @param aSyncWindowMillis  Max time in milliseconds between accepting a change and syncing it to the write-ahead
+     * log, 0 to sync every change
+     * @throws LedgerException  if the data directory cannot be accessed, if the write-ahead log cannot be replayed or
+     * if a master account already exists
+     */
+    public Ledger(String aName, String aDescription, String aSeed, Path aDataDirectory, long aSyncWindowMillis)
+            throws LedgerException {
+        this(aName, aDescription, aSeed, aDataDirectory, aSyncWindowMillis, RetentionPolicy.KEEP_ALL);
+    }
+
+    /**
+     * Class constructor. Sets the name, description, seed, data directory, and retention policy of the ledger.
+     * Restores the transaction ID high-water mark from the data directory so that transaction IDs are not reused
+     * after a restart. Creates the genesisBlock, sets the currentBlock, initializes the blockMap, and creates the
+     * master account. Then loads and verifies the committed blocks from the block segment file and replays the
+     * write-ahead log, which rebuilds the open block as it was before the restart. Committed blocks that fall outside
+     * the retention policy are pruned from the heap as they are loaded. Finally registers the ledger's monitor with
+     * the platform MBean server.
+     *
+     * @param aName  Name of the ledger
+     * @param aDescription  Ledger description
+     * @param aSeed  Placeholder for the previous block in genesisBlock
+     * @param aDataDirectory  Directory where the ledger persists its state, null if the ledger is not persisted
+     * @param aSyncWindowMillis  Max time in milliseconds between accepting a change and syncing it to the write-ahead
+     * log, 0 to sync every change
+     * @param aRetentionPolicy  Determines which committed blocks are kept on the heap. Only applies to a persisted
+     * ledger, since pruned blocks are loaded from the block segment file.
+     * @throws LedgerException  if the data directory cannot be accessed, if the write-ahead log cannot be replayed,
+     * if a master account already exists or if the monitor cannot be registered
+     */
+    public Ledger(String aName, String aDescription, String aSeed, Path aDataDirectory, long aSyncWindowMillis,
+                  RetentionPolicy aRetentionPolicy) throws LedgerException {
         this.name = aName;
         this.description = aDescription;
         this.seed = aSeed;
+        this.dataDirectory = aDataDirectory;
+
+        // Restore the transaction ID high-water mark
+        if (this.dataDirectory != null) {
+            try {
+                Files.createDirectories(this.dataDirectory);
+            } catch (IOException e) {
+                throw new LedgerException("create ledger", "cannot create data directory " + this.dataDirectory);
+            }
+            TransactionIdAllocator.restore(this.dataDirectory.resolve(TXN_ID_FILE));
+        }
+
+        // Initialize the account table
+        this.accountTable = new AccountTable();
 
         // Create the genesisBlock
         this.genesisBlock = new Block(INIT_BLOCK_NUM, Utility.hashString(this.seed), null,
-                new HashMap<>());
+                new AccountBalances(this.accountTable));
 
         // Set the currentBlock to genesisBlock
         this.currentBlock = this.genesisBlock;
 
-        // Initialize the blockMap
-        this.blockMap = new HashMap<>();
+        // Initialize the blockMap and the headerChain
+        this.blockMap = new ConcurrentHashMap<>();
+        this.headerChain = new HeaderChain();
+
+        // Initialize the retention of committed blocks
+        this.retentionPolicy = aRetentionPolicy;
+        this.firstResidentBlock = INIT_BLOCK_NUM;
+        this.prunedTransactionMap = new ConcurrentHashMap<>();
+
+        // Initialize the metrics
+        this.metrics = new LedgerMetrics();
+
+        // Initialize the transaction pool, the pending balances and the idempotency keys
+        this.transactionPool = new TransactionPool(TransactionPool.DEFAULT_CAPACITY);
+        this.idempotencyIndex = new IdempotencyIndex(IdempotencyIndex.DEFAULT_WINDOW_MILLIS,
+                IdempotencyIndex.DEFAULT_MAX_KEYS);
+        this.pendingBalances = new AccountBalances(this.accountTable);
 
         // Create the master account
         this.createAccount(Account.MASTER);
 
+        // Load the committed blocks and replay the write-ahead log before persisting new changes
+        if (this.dataDirectory != null) {
+            long maxTxnId = 0;
+            this.blockSegment = new BlockSegment(this.dataDirectory.resolve(SEGMENT_FILE));
+            for (BlockCodec.BlockRecord record : this.blockSegment.readRecords()) {
+                this.installBlock(record);
+                for (Transaction txn : record.getTransactions()) {
+                    maxTxnId = Math.max(maxTxnId, txn.getTransactionId());
+                }
+            }
+
+            WriteAheadLog log = new WriteAheadLog(this.dataDirectory.resolve(WAL_FILE), aSyncWindowMillis);
+            List<WriteAheadLog.Record> records = log.readRecords();
+            this.replayLog(records);
+            for (WriteAheadLog.Record record : records) {
+                if (record.getTransaction() != null) {
+                    maxTxnId = Math.max(maxTxnId, record.getTransaction().getTransactionId());
+                }
+            }
+
+            // Never hand out a recovered ID again, even if the high-water mark file is behind the data
+            TransactionIdAllocator.reserveThrough(maxTxnId);
+            this.writeAheadLog = log;
+            this.compactLog();
+        }
+
+        // Register the monitor
+        this.monitor = new LedgerMonitor(this, this.name);
+        this.monitor.register();
+
         System.out.println("Ledger created successfully.");
     }
 
+    /**
+     * Replays the records of the write-ahead log. Account creations and transactions are applied in the order they
+     * were accepted, so the open block is rebuilt exactly as it was before the restart. Records that are already in a
+     * committed block, left behind by a crash between committing a block and compacting the log, are skipped.
+     *
+     * @param records  Records read from the write-ahead log
+     * @throws LedgerException  if a record can no longer be applied
+     */
+    private void replayLog(List<WriteAheadLog.Record> records) throws LedgerException {
+        for (WriteAheadLog.Record record : records) {
+            try {
+                if (record.getAddress() != null) {
+                    if (this.accountTable.indexOf(record.getAddress()) < 0) {
+                        this.createAccount(record.getAddress());
+                    }
+                } else if (!this.isCommitted(record.getTransaction().getTransactionId())) {
+                    Transaction txn = record.getTransaction();
+                    this.checkRequirements(txn.getAmount(), txn.getFee(), txn.getNote());
+                    this.processTransaction(txn);
+                }
+            } catch (LedgerException e) {
+                throw new LedgerException("replay write-ahead log", e.getReason());
+            }
+        }
+
+        if (!records.isEmpty()) {
+            System.out.println("Replayed " + records.size() + " records from the write-ahead log.");
+        }
+    }
+
     /**
      * Creates a new account. Takes an address as input and checks whether the address already exists.
-     * Adds the new account to current block's accountBalanceMap
+     * Assigns the next account index to the new account and adds it to current block's accountBalances and to the
+     * pending balances.
      *
      * @param anAddress unique address of the account
      * @return unique address of the account
      * @throws LedgerException  if address already exists
      */
-    public String createAccount(String anAddress) throws LedgerException {
+    public synchronized String createAccount(String anAddress) throws LedgerException {
         // Check if account address already exists
-        if (this.currentBlock.getAccountBalanceMap().containsKey(anAddress)) {
+        if (this.accountTable.indexOf(anAddress) >= 0) {
             throw new LedgerException("create account", "account address already exists");
         }
 
+        // Log the account creation
+        if (this.writeAheadLog != null) {
+            this.writeAheadLog.appendAccount(anAddress);
+        }
+
+        // Add the account
+        this.addAccount(anAddress);
+
+        System.out.println("Account created for " + anAddress + ".");
+
+        return anAddress;
+    }
+
+    /**
+     * Checks whether an account address exists, whether or not it has been committed to a block.
+     *
+     * @param anAddress  unique address of the account
+     * @return  True if the account exists. Otherwise, returns false.
+     */
+    public boolean hasAccount(String anAddress) {
+        return this.accountTable.indexOf(anAddress) >= 0;
+    }
+
+    /**
+     * Assigns the next account index to a new account and adds it to current block's accountBalances and to the
+     * pending balances.
+     *
+     * @param anAddress  unique address of the account
+     * @throws LedgerException  if address already exists
+     */
+    private void addAccount(String anAddress) throws LedgerException {
+        // Assign an index to the account
+        this.accountTable.register(anAddress);
+
         // Create the account
         Account account = new Account(anAddress);
 
-        // Add the account to current block's accountBalanceMap
-        this.currentBlock.addAccountBalanceMap(account);
-
-        System.out.println("Account created for " + account.getAddress() + ".");
+        // Add the account to current block's accountBalances
+        this.currentBlock.addAccount(account);
 
-        return account.getAddress();
+        // Add the account to the pending balances
+        this.pendingBalances.addAccount(account);
     }
 
     /**
@@ -128,14 +422,49 @@ public class Ledger {
         int amountInt = this.parseInteger(anAmount);
         int feeInt = this.parseInteger(aFee);
 
+        return this.createTransaction(amountInt, feeInt, aNote, aPayer, aReceiver);
+    }
+
+    /**
+     * Creates a new transaction from an amount and fee that are already integers.
+     * Checks if the following requirements are satisfied:
+     * - Minimum fee
+     * - Non-negative amount
+     * - Maximum note length
+     *
+     * @param anAmount  Amount deducted from the payer's account & added to the receiver's account
+     * @param aFee  Transaction fee transferred from the payer's account to the master account
+     * @param aNote  Note for the transaction
+     * @param aPayer  Payer's unique address
+     * @param aReceiver  Receiver's unique address
+     * @return  a new transaction
+     * @throws LedgerException  if any of the above requirements are not satisfied
+     */
+    public Transaction createTransaction(int anAmount, int aFee, String aNote,
+                                         String aPayer, String aReceiver) throws LedgerException {
+        this.checkRequirements(anAmount, aFee, aNote);
+        return new Transaction(anAmount, aFee, aNote, aPayer, aReceiver);
+    }
+
+    /**
+     * Checks the requirements of a transaction that do not depend on the accounts: the minimum fee, a non-negative
+     * amount and the maximum note length. Applied when a transaction is created, and to the transactions of imported
+     * blocks and of the write-ahead log, which are decoded without going through createTransaction.
+     *
+     * @param anAmount  Amount deducted from the payer's account & added to the receiver's account
+     * @param aFee  Transaction fee transferred from the payer's account to the master account
+     * @param aNote  Note for the transaction
+     * @throws LedgerException  if any of the requirements are not satisfied
+     */
+    private void checkRequirements(int anAmount, int aFee, String aNote) throws LedgerException {
         // Check if the min fee requirement is satisfied
-        if (feeInt < Transaction.MIN_FEE) {
+        if (aFee < Transaction.MIN_FEE) {
             throw new LedgerException("create transaction ", "the fee must be at least " + Transaction.MIN_FEE + " "
                     + "units");
         }
 
         // Check if the amount is non-negative
-        if (amountInt < 0) {
+        if (anAmount < 0) {
             throw new LedgerException("create transaction ", "amount must be non-negative");
         }
 
@@ -144,8 +473,37 @@ public class Ledger {
             throw new LedgerException("create transaction ", "note length exceeds " + Transaction.MAX_NOTE_LEN + " "
                     + "characters");
         }
+    }
 
-        return new Transaction(amountInt, feeInt, aNote, aPayer, aReceiver);
+    /**
+     * Creates a new transaction that carries an idempotency key. Submitting another transaction with the same key
+     * while the key is remembered returns the ID of the first accepted transaction instead of processing it again, so
+     * a client can safely retry a submission whose outcome it did not receive.
+     *
+     * @param anAmount  Amount deducted from the payer's account & added to the receiver's account
+     * @param aFee  Transaction fee transferred from the payer's account to the master account
+     * @param aNote  Note for the transaction
+     * @param aPayer  Payer's unique address
+     * @param aReceiver  Receiver's unique address
+     * @param anIdempotencyKey  Key chosen by the client that is the same for every retry of the transaction
+     * @return  a new transaction
+     * @throws LedgerException  if the key is empty or longer than the allowed key length, or if any of the
+     * requirements of a transaction are not satisfied
+     */
+    public Transaction createTransaction(int anAmount, int aFee, String aNote, String aPayer, String aReceiver,
+                                         String anIdempotencyKey) throws LedgerException {
+        // Check if the key is valid
+        if (anIdempotencyKey == null || anIdempotencyKey.isEmpty()) {
+            throw new LedgerException("create transaction ", "idempotency key must not be empty");
+        }
+        if (anIdempotencyKey.length() > Transaction.MAX_IDEMPOTENCY_KEY_LEN) {
+            throw new LedgerException("create transaction ", "idempotency key length exceeds "
+                    + Transaction.MAX_IDEMPOTENCY_KEY_LEN + " characters");
+        }
+
+        Transaction txn = this.createTransaction(anAmount, aFee, aNote, aPayer, aReceiver);
+        txn.setIdempotencyKey(anIdempotencyKey);
+        return txn;
     }
 
     /**
@@ -164,74 +522,654 @@ public class Ledger {
     }
 
     /**
-     * Adds the transaction to the current block. If the current block contains 10 transactions, validates each
-     * transaction. If all transactions are valid, commits the current block and creates a new block.
+     * Validates the transaction against the pending balances and adds it to the transaction pool. Since the pending
+     * balances reflect every pooled transaction, overdrafts and unknown accounts are rejected immediately. Whenever the
+     * pool holds 10 transactions, the highest priority transactions are committed as a new block. If the ledger is
+     * persisted, the transaction is only reported as received once it is durable in the write-ahead log. A retry of
+     * a recently accepted transaction with the same idempotency key is not processed again.
+     *
      * @param txn  Transaction to be processed
-     * @return  Transaction ID
-     * @throws LedgerException  if the current block already has a hash value
+     * @return  Transaction ID, or the ID of the accepted transaction if the given transaction is a retry
+     * @throws LedgerException  if the payer or receiver account does not exist, if the payer account does not have
+     * enough funds, if the transaction ID was already used, if the pool is full and the fee is too low to evict
+     * another transaction, if the transaction cannot be logged or if the current block already has a hash value
      */
-    public String processTransaction(Transaction txn) throws LedgerException {
+    public long processTransaction(Transaction txn) throws LedgerException {
+        this.metrics.recordReceived();
+
+        // Admit the transaction to the transaction pool
+        long logPosition;
+        synchronized (this) {
+            // Return the accepted transaction if this is a retry
+            Long acceptedId = this.findAcceptedTransaction(txn);
+            if (acceptedId != null) {
+                return acceptedId;
+            }
+            logPosition = this.admitTransaction(txn);
+        }
 
-        // Add transaction to current block
-        this.currentBlock.addTransaction(txn);
+        // Wait until the transaction is durable without holding the lock, so concurrent submissions share a sync
+        if (this.writeAheadLog != null) {
+            try {
+                this.writeAheadLog.sync(logPosition);
+            } catch (LedgerException e) {
+                this.abandonTransaction(txn, e);
+            }
+        }
         System.out.printf("Received Transaction %s%n", txn.getTransactionId());
 
-        // Check if block is full
-        if (this.currentBlock.getTransactionList().size() == Block.MAX_NUM_OF_TXNS) {
+        // Commit blocks while the pool holds enough transactions
+        synchronized (this) {
+            this.commitBlocks();
+        }
+
+        return txn.getTransactionId();
+    }
+
+    /**
+     * Processes a batch of transactions in a single pass. Each transaction is validated against the pending balances
+     * and admitted to the transaction pool in list order. Once the whole batch is pooled, blocks are built from the
+     * highest priority transactions, so a batch may span several blocks. An invalid transaction is rejected without
+     * affecting the rest of the batch. If the ledger is persisted, the whole batch is made durable by a single sync
+     * of the write-ahead log. If the sync fails, each accepted transaction that is not in a committed block yet is
+     * abandoned and reported as rejected, as processTransaction does for a single transaction.
+     *
+     * @param txns  List of transactions to be processed
+     * @return  List of outcomes in the same order as the given transactions. The outcome of a retry holds the ID of
+     * the accepted transaction.
+     * @throws LedgerException  if the current block already has a hash value
+     */
+    public List<TransactionResult> processTransactions(List<Transaction> txns) throws LedgerException {
+        List<TransactionResult> results = new ArrayList<>(txns.size());
+        List<Integer> acceptedIndexes = new ArrayList<>();
+        long logPosition = 0;
+
+        synchronized (this) {
+            for (Transaction txn : txns) {
+                this.metrics.recordReceived();
+
+                // Report the accepted transaction if this is a retry
+                Long acceptedId = this.findAcceptedTransaction(txn);
+                if (acceptedId != null) {
+                    results.add(new TransactionResult(acceptedId, null));
+                    continue;
+                }
+
+                // Admit the transaction and record the outcome
+                try {
+                    logPosition = Math.max(logPosition, this.admitTransaction(txn));
+                    acceptedIndexes.add(results.size());
+                    results.add(new TransactionResult(txn.getTransactionId(), null));
+                } catch (LedgerException e) {
+                    results.add(new TransactionResult(txn.getTransactionId(), e.getReason()));
+                }
+            }
+        }
+
+        // Wait until the accepted transactions are durable without holding the lock
+        int numAccepted = acceptedIndexes.size();
+        if (this.writeAheadLog != null && numAccepted > 0) {
+            try {
+                this.writeAheadLog.sync(logPosition);
+            } catch (LedgerException syncError) {
+                // Report the transactions that could not be made durable as rejected
+                for (int index : acceptedIndexes) {
+                    Transaction txn = txns.get(index);
+                    try {
+                        this.abandonTransaction(txn, syncError);
+                    } catch (LedgerException e) {
+                        results.set(index, new TransactionResult(txn.getTransactionId(), e.getReason()));
+                        numAccepted--;
+                    }
+                }
+            }
+        }
+
+        System.out.println("Received " + numAccepted + " of " + txns.size() + " transactions in batch.");
 
-            // Get a copy of the account balance map
-            Map<String, Account> accountBalanceMap = this.currentBlock.getCopyOfAccountBalanceMap();
+        // Commit blocks while the pool holds enough transactions
+        synchronized (this) {
+            this.commitBlocks();
+        }
 
-            // Get current block's transactions
-            List<Transaction> txns = this.currentBlock.getTransactionList();
+        return results;
+    }
 
-            // Check if all transactions are valid
-            if (this.validateTransactions(txns, accountBalanceMap)) {
-                // Commit current block
-                this.currentBlock.commitBlock(accountBalanceMap);
+    /**
+     * Finds the transaction that was accepted with the idempotency key of the given transaction.
+     *
+     * @param txn  Submitted transaction
+     * @return  ID of the accepted transaction, null if the given transaction has no key or its key is not remembered
+     */
+    private Long findAcceptedTransaction(Transaction txn) {
+        if (txn.getIdempotencyKey() == null) {
+            return null;
+        }
+        Long acceptedId = this.idempotencyIndex.find(txn.getIdempotencyKey());
+        if (acceptedId != null) {
+            System.out.println("Transaction " + txn.getTransactionId() + " is a retry of Transaction " + acceptedId
+                    + ".");
+        }
+        return acceptedId;
+    }
 
-                // Add current block to blockMap
-                this.blockMap.put(this.currentBlock.getBlockNumber(), this.currentBlock);
+    /**
+     * Validates the transaction against the pending balances, adds it to the transaction pool and applies it to the
+     * pending balances. If the pool is full, evicts the lowest priority transaction provided that the given
+     * transaction pays a higher fee and is still valid once the evicted transaction and its dependents are removed
+     * from the pending balances. Nothing is evicted if the given transaction is rejected. If the ledger is persisted,
+     * writes the transaction to the write-ahead log without waiting for it to become durable. An eviction instead
+     * rewrites the log without the evicted transactions and with the given one, which is durable once it returns.
+     *
+     * @param txn  Transaction to be admitted
+     * @return  Position in the write-ahead log after the transaction, 0 if the ledger is not persisted
+     * @throws LedgerException  if the payer or receiver account does not exist, if the payer account does not have
+     * enough funds, if the transaction ID was already used, if the pool is full and the fee is too low or if the
+     * transaction cannot be written to the write-ahead log
+     */
+    private long admitTransaction(Transaction txn) throws LedgerException {
+        // Check if the transaction ID was already used
+        if (this.isCommitted(txn.getTransactionId()) || this.transactionPool.contains(txn.getTransactionId())) {
+            throw this.reject(txn, LedgerMetrics.RejectionReason.DUPLICATE_ID);
+        }
 
-                // Create a new currentBlock
-                this.currentBlock = new Block(this.blockMap.size() + 1, this.currentBlock.getHash(),
-                        this.currentBlock, this.currentBlock.getCopyOfAccountBalanceMap());
+        // Validate the transaction against the pending balances
+        LedgerMetrics.RejectionReason reason = this.checkTransaction(txn, this.pendingBalances);
+        if (reason != null) {
+            throw this.reject(txn, reason);
+        }
+
+        // Make room in the pool by evicting the lowest priority transaction
+        List<Transaction> evictedTxns = null;
+        AccountBalances balancesAfterEviction = null;
+        if (this.transactionPool.isFull()) {
+            if (!this.transactionPool.outranksLowest(txn)) {
+                throw this.reject(txn, LedgerMetrics.RejectionReason.POOL_FULL);
+            }
+
+            // The evicted transaction may have funded the payer, so validate against the balances without it before
+            // evicting anything
+            balancesAfterEviction = this.currentBlock.getCopyOfAccountBalances();
+            evictedTxns = this.planEviction(this.transactionPool.getLowest(), balancesAfterEviction);
+            reason = this.checkTransaction(txn, balancesAfterEviction);
+            if (reason != null) {
+                throw this.reject(txn, reason);
             }
         }
 
-        return txn.getTransactionId();
+        // Log the transaction, evicting the transactions in the same rewrite of the log once the given transaction is
+        // certain to be admitted
+        long logPosition = 0;
+        try {
+            if (evictedTxns != null) {
+                this.removeEvicted(evictedTxns, balancesAfterEviction, txn);
+            } else if (this.writeAheadLog != null) {
+                logPosition = this.writeAheadLog.writeTransaction(txn);
+            }
+        } catch (LedgerException e) {
+            this.metrics.recordRejection(LedgerMetrics.RejectionReason.LOG_FAILURE);
+            throw e;
+        }
+
+        // Add the transaction to the pool and apply it to the pending balances
+        this.transactionPool.add(txn);
+        this.adjustBalances(txn, this.pendingBalances);
+        if (txn.getIdempotencyKey() != null) {
+            this.idempotencyIndex.add(txn.getIdempotencyKey(), txn.getTransactionId());
+        }
+        this.metrics.setPendingTransactions(this.transactionPool.size());
+
+        return logPosition;
     }
 
     /**
-     * Validates a list of transactions based on an accountBalanceMap. Adjusts balances in accountBalanceMap for each
-     * valid transaction. Removes invalid transactions from the transactions list.
+     * Handles a transaction that could not be made durable. The transaction is evicted if it is still in the pool, and
+     * the write-ahead log is rewritten without it so that a restart does not replay it. If the log cannot be rewritten
+     * either, the transaction stays in the pool since a restart would replay it anyway, and a retry with the same
+     * idempotency key reports it as accepted instead of charging the payer twice. A transaction that another thread
+     * has already committed to a block while the sync was pending is durable in the block segment file, so it is not
+     * reported as failed.
      *
-     * @param txns  List of transactions to be validated
-     * @param accountBalanceMap  Map of account addresses and account objects
-     * @return  True if all transactions are valid. Otherwise, returns false.
+     * @param txn  Transaction that could not be synced to the write-ahead log
+     * @param cause  Failure of the sync
+     * @throws LedgerException  if the transaction is not in a committed block
      */
-    public boolean validateTransactions(List<Transaction> txns, Map<String, Account> accountBalanceMap) {
+    private synchronized void abandonTransaction(Transaction txn, LedgerException cause) throws LedgerException {
+        if (this.transactionPool.contains(txn.getTransactionId())) {
+            try {
+                this.evictTransaction(txn);
+            } catch (LedgerException e) {
+                // The log still holds the transaction, so keep it pooled with its idempotency key
+            }
+        } else if (this.isCommitted(txn.getTransactionId())) {
+            return;
+        }
+        this.metrics.recordRejection(LedgerMetrics.RejectionReason.LOG_FAILURE);
+        throw new LedgerException("Transaction " + txn.getTransactionId() + " cannot be processed.",
+                cause.getReason());
+    }
 
-        // Create an iterator to safely remove invalid transactions
-        Iterator<Transaction> iter = txns.iterator();
+    /**
+     * Removes a transaction from the transaction pool and recomputes the pending balances from the remaining pooled
+     * transactions. Pooled transactions that depended on the evicted transaction are evicted as well. The idempotency
+     * keys of evicted transactions are forgotten, so their retries are processed again.
+     *
+     * @param txn  Transaction to be evicted
+     * @throws LedgerException  if the write-ahead log cannot be rewritten, in which case nothing is evicted
+     */
+    private void evictTransaction(Transaction txn) throws LedgerException {
+        AccountBalances balances = this.currentBlock.getCopyOfAccountBalances();
+        this.removeEvicted(this.planEviction(txn, balances), balances, null);
+    }
+
+    /**
+     * Determines which transactions an eviction would remove without changing the pool: the given transaction and the
+     * pooled transactions that are no longer valid without it.
+     *
+     * @param txn  Transaction to be evicted
+     * @param accountBalances  Copy of the current block's balances, adjusted to the pending balances after the eviction
+     * @return  List of transactions to be evicted, starting with the given transaction
+     */
+    private List<Transaction> planEviction(Transaction txn, AccountBalances accountBalances) {
+        List<Transaction> pooledTxns = this.transactionPool.getByArrival();
+        pooledTxns.remove(txn);
+        List<Transaction> applied = this.applyTransactions(pooledTxns, accountBalances, pooledTxns.size());
+
+        List<Transaction> evictedTxns = new ArrayList<>();
+        evictedTxns.add(txn);
+        if (applied.size() < pooledTxns.size()) {
+            pooledTxns.removeAll(applied);
+            evictedTxns.addAll(pooledTxns);
+        }
+        return evictedTxns;
+    }
 
-        // Iterate over each transaction
-        while (iter.hasNext()) {
-            Transaction txn = iter.next();
+    /**
+     * Removes planned evictions from the transaction pool and installs the pending balances computed for them. The
+     * write-ahead log is rewritten without the evicted transactions first, so a restart never replays a transaction
+     * whose idempotency key has been forgotten.
+     *
+     * @param evictedTxns  Transactions to be evicted
+     * @param accountBalances  Pending balances after the eviction
+     * @param admittedTxn  Transaction that is admitted in place of the evicted ones and is logged in the same rewrite,
+     * null if there is none
+     * @throws LedgerException  if the write-ahead log cannot be rewritten, in which case nothing is evicted
+     */
+    private void removeEvicted(List<Transaction> evictedTxns, AccountBalances accountBalances,
+                               Transaction admittedTxn) throws LedgerException {
+        // Drop the evicted transactions from the write-ahead log before changing the pool
+        List<Transaction> pooledTxns = this.transactionPool.getByArrival();
+        pooledTxns.removeAll(evictedTxns);
+        if (admittedTxn != null) {
+            pooledTxns.add(admittedTxn);
+        }
+        this.compactLog(pooledTxns);
+
+        for (Transaction evictedTxn : evictedTxns) {
+            this.transactionPool.remove(evictedTxn);
+            this.forgetIdempotencyKey(evictedTxn);
+            System.out.println("Evicted Transaction " + evictedTxn.getTransactionId() + " from the transaction pool.");
+        }
+        this.pendingBalances = accountBalances;
+        this.metrics.setPendingTransactions(this.transactionPool.size());
+    }
+
+    /**
+     * Forgets the idempotency key of a transaction that will not be committed.
+     *
+     * @param txn  Transaction that was removed from the pool
+     */
+    private void forgetIdempotencyKey(Transaction txn) {
+        if (txn.getIdempotencyKey() != null) {
+            this.idempotencyIndex.remove(txn.getIdempotencyKey(), txn.getTransactionId());
+        }
+    }
+
+    /**
+     * Commits blocks while the transaction pool holds at least 10 transactions. Each block takes the 10 highest
+     * priority transactions that are valid against the current block's balances, which become the final balances of
+     * the block. A new block is created after each commit. The pending balances already include every pooled
+     * transaction, so they are not affected by moving transactions from the pool to a block. If the ledger is
+     * persisted, each block is appended to the block segment file and the write-ahead log is compacted afterwards.
+     * Since this runs after every submission, the pool is normally left with fewer than 10 transactions.
+     *
+     * @throws LedgerException  if the current block already has a hash value or if a block cannot be persisted
+     */
+    private void commitBlocks() throws LedgerException {
+        boolean committed = false;
+        while (this.transactionPool.size() >= Block.MAX_NUM_OF_TXNS) {
+            // Select the highest priority transactions
+            AccountBalances accountBalances = this.currentBlock.getCopyOfAccountBalances();
+            List<Transaction> txns = this.applyTransactions(this.transactionPool.getByPriority(), accountBalances,
+                    Block.MAX_NUM_OF_TXNS);
+            if (txns.size() < Block.MAX_NUM_OF_TXNS) {
+                break;
+            }
+
+            // Move the transactions from the pool to the current block
+            for (Transaction txn : txns) {
+                this.currentBlock.addTransaction(txn);
+                this.transactionPool.remove(txn);
+            }
+
+            // Commit current block
+            this.completeBlock(accountBalances);
+            committed = true;
+        }
+        this.metrics.setPendingTransactions(this.transactionPool.size());
+
+        // Drop the committed transactions from the write-ahead log
+        if (committed) {
+            this.compactLog();
+        }
+    }
+
+    /**
+     * Commits the current block with the given final balances, adds it to the blockMap and its header to the
+     * headerChain, appends it to the block segment file if the ledger is persisted and the block is not in the file
+     * yet, publishes a new snapshot, creates a new currentBlock, and prunes the blocks that fall outside the
+     * retention policy. The block is committed at the current time.
+     *
+     * @param accountBalances  validated balances of all accounts after the block's transactions have been applied
+     * @throws LedgerException  if the current block already has a hash value or if the block cannot be persisted
+     */
+    private void completeBlock(AccountBalances accountBalances) throws LedgerException {
+        this.completeBlock(accountBalances, System.currentTimeMillis());
+    }
+
+    /**
+     * Completes the current block with a given commit time, such as the recorded commit time of a block that is
+     * reloaded or imported, so that the retention policy ages the block from its original commit.
+     *
+     * @param accountBalances  validated balances of all accounts after the block's transactions have been applied
+     * @param commitTime  Time in milliseconds when the block was committed
+     * @throws LedgerException  if the current block already has a hash value or if the block cannot be persisted
+     */
+    private void completeBlock(AccountBalances accountBalances, long commitTime) throws LedgerException {
+        long startNanos = System.nanoTime();
+
+        // Commit current block
+        this.currentBlock.commitBlock(accountBalances, commitTime);
+
+        // Add current block to blockMap and its header to the headerChain
+        this.blockMap.put(this.currentBlock.getBlockNumber(), this.currentBlock);
+        this.headerChain.append(this.currentBlock.getHeader());
+
+        // Persist current block unless it was loaded from the block segment file
+        if (this.blockSegment != null && this.blockSegment.getBlockCount() < this.currentBlock.getBlockNumber()) {
+            this.blockSegment.append(this.currentBlock);
+        }
+
+        // Publish the committed state to the readers
+        this.snapshot = new LedgerSnapshot(this.currentBlock);
+        this.metrics.recordCommit(System.nanoTime() - startNanos, this.currentBlock.getHashTimeNanos());
+
+        // Create a new currentBlock
+        this.currentBlock = new Block(this.currentBlock.getBlockNumber() + 1, this.currentBlock.getHash(),
+                this.currentBlock, this.currentBlock.getCopyOfAccountBalances());
+
+        // Drop the blocks that fall outside the retention policy
+        this.pruneBlocks();
+    }
+
+    /**
+     * Prunes the oldest committed blocks from the heap while they fall outside the retention policy. A pruned block
+     * keeps its header in the headerChain and its record in the block segment file. Its transactions are moved from
+     * the transactionMap to the prunedTransactionMap, which only keeps the block number of each transaction. Does
+     * nothing if the ledger is not persisted.
+     */
+    private void pruneBlocks() {
+        if (this.blockSegment == null || this.retentionPolicy.keepsAll()) {
+            return;
+        }
+
+        int lastBlockNumber = this.currentBlock.getBlockNumber() - 1;
+        long now = System.currentTimeMillis();
+        while (this.firstResidentBlock < lastBlockNumber) {
+            Block block = this.blockMap.get(this.firstResidentBlock);
+            if (!this.retentionPolicy.isExpired(block, lastBlockNumber, now)) {
+                break;
+            }
+
+            // Index the transactions before they leave the transactionMap, so readers always find them
+            for (Transaction txn : block.getTransactionList()) {
+                this.prunedTransactionMap.put(txn.getTransactionId(), block.getBlockNumber());
+                Block.getTransactionMap().remove(txn.getTransactionId());
+            }
+
+            // Unlink the block from its successor and drop it
+            this.blockMap.get(this.firstResidentBlock + 1).detachPreviousBlock();
+            this.firstResidentBlock++;
+            this.blockMap.remove(block.getBlockNumber());
+        }
+    }
+
+    /**
+     * Rewrites the write-ahead log with the account creations and transactions that are not in a committed block
+     * yet. Does nothing if the ledger is not persisted.
+     *
+     * @throws LedgerException  if the write-ahead log cannot be rewritten
+     */
+    private void compactLog() throws LedgerException {
+        this.compactLog(this.transactionPool.getByArrival());
+    }
+
+    /**
+     * Rewrites the write-ahead log with the account creations that are not in a committed block yet and the given
+     * pooled transactions. The rewritten log is durable once this returns. Does nothing if the ledger is not
+     * persisted.
+     *
+     * @param pooledTxns  Transactions that are not in a committed block yet, in arrival order
+     * @throws LedgerException  if the write-ahead log cannot be rewritten, in which case the old log is kept
+     */
+    private void compactLog(List<Transaction> pooledTxns) throws LedgerException {
+        if (this.writeAheadLog == null) {
+            return;
+        }
+
+        // Accounts created after the last committed block, skipping the master account which is always created
+        Block previousBlock = this.currentBlock.getPreviousBlock();
+        int numOfCommittedAccounts = previousBlock == null ? 1 : previousBlock.getAccountBalances().size();
+        List<String> addresses = new ArrayList<>();
+        for (int i = Math.max(numOfCommittedAccounts, 1); i < this.accountTable.size(); i++) {
+            addresses.add(this.accountTable.getAddress(i));
+        }
+
+        this.writeAheadLog.reset(addresses, pooledTxns);
+    }
+
+    /**
+     * Streams the committed blocks from the given block number to the last committed block to a channel as binary
+     * block records. If the ledger is persisted, the records are transferred directly from the block segment file.
+     * Otherwise, each block is encoded and written to the channel.
+     *
+     * @param fromBlock  Number of the first block to be exported
+     * @param target  Channel to be written to
+     * @return  Number of exported blocks
+     * @throws LedgerException  if the block number does not exist or the blocks cannot be written
+     */
+    public synchronized int exportBlocks(int fromBlock, WritableByteChannel target) throws LedgerException {
+        // Check if the block number exists
+        int lastBlockNumber = this.getCommittedBlockCount();
+        if (fromBlock < INIT_BLOCK_NUM || fromBlock > lastBlockNumber) {
+            throw new LedgerException("export blocks", "block number " + fromBlock + " does not exist");
+        }
+
+        if (this.blockSegment != null) {
+            this.blockSegment.transferTo(fromBlock, target);
+        } else {
             try {
-                // Validate transaction
-                this.validateTransaction(txn, accountBalanceMap);
+                for (int blockNumber = fromBlock; blockNumber <= lastBlockNumber; blockNumber++) {
+                    ByteBuffer record = BlockCodec.encode(this.blockMap.get(blockNumber));
+                    while (record.hasRemaining()) {
+                        target.write(record);
+                    }
+                }
+            } catch (IOException e) {
+                throw new LedgerException("export blocks", e.getMessage());
+            }
+        }
+
+        return lastBlockNumber - fromBlock + 1;
+    }
 
-                // Adjust account balances
-                accountBalanceMap = this.adjustBalances(txn, accountBalanceMap);
+    /**
+     * Reads binary block records from a channel and appends them to the ledger. Each block is verified before it is
+     * appended: the block number and previous hash must continue the chain, the transactions must be valid against
+     * the preceding balances and produce the recorded balances, and the recomputed hash must match the recorded hash.
+     * Blocks that were verified before a failure remain in the ledger. The ledger must not have any committed blocks,
+     * accounts other than the master account, or pending transactions.
+     *
+     * @param source  Channel to be read from
+     * @return  Number of imported blocks
+     * @throws LedgerException  if the ledger is not empty, if a record cannot be read or if a block fails verification
+     */
+    public synchronized int importBlocks(ReadableByteChannel source) throws LedgerException {
+        // Check if the ledger is empty
+        if (!this.blockMap.isEmpty() || this.accountTable.size() > 1 || this.transactionPool.size() > 0) {
+            throw new LedgerException("import blocks", "ledger must not have any blocks, accounts or pending "
+                    + "transactions");
+        }
+
+        int numOfBlocks = 0;
+        try {
+            while (true) {
+                BlockCodec.BlockRecord record;
+                try {
+                    record = BlockCodec.read(source);
+                } catch (IOException e) {
+                    throw new LedgerException("import blocks", e.getMessage());
+                }
+                if (record == null) {
+                    break;
+                }
+                this.installBlock(record);
+                numOfBlocks++;
+            }
+        } finally {
+            this.compactLog();
+        }
+
+        System.out.println("Imported " + numOfBlocks + " blocks.");
+        return numOfBlocks;
+    }
+
+    /**
+     * Verifies a block record against the chain and commits it as the next block. The pool must be empty. The new
+     * accounts of the record are registered in a copy of the account table during verification, so the Ledger is
+     * changed only once the whole block has been verified.
+     *
+     * @param record  Decoded block record
+     * @throws LedgerException  if the block does not continue the chain, if a transaction is not valid, if the
+     * balances or the hash do not match the recorded ones or if the block cannot be persisted
+     */
+    private void installBlock(BlockCodec.BlockRecord record) throws LedgerException {
+        String action = "verify block " + record.getBlockNumber();
+
+        // Check the block number and the previous hash
+        if (record.getBlockNumber() != this.currentBlock.getBlockNumber()) {
+            throw new LedgerException(action, "expected block number " + this.currentBlock.getBlockNumber());
+        }
+        if (!record.getPreviousHash().equals(this.currentBlock.getPreviousHash())) {
+            throw new LedgerException(action, "previous hash does not match");
+        }
+        if (record.getTransactions().size() != Block.MAX_NUM_OF_TXNS) {
+            throw new LedgerException(action, "number of transactions is not " + Block.MAX_NUM_OF_TXNS);
+        }
+
+        // Check the known accounts and add the new ones to a copy of the account table
+        List<String> addresses = record.getAddresses();
+        if (addresses.size() < this.accountTable.size()) {
+            throw new LedgerException(action, "accounts are missing");
+        }
+        AccountTable candidateTable = new AccountTable(this.accountTable);
+        AccountBalances accountBalances = new AccountBalances(this.currentBlock.getAccountBalances(), candidateTable);
+        for (int i = 0; i < addresses.size(); i++) {
+            if (i < this.accountTable.size()) {
+                if (!addresses.get(i).equals(this.accountTable.getAddress(i))) {
+                    throw new LedgerException(action, "account " + addresses.get(i) + " is out of order");
+                }
+            } else {
+                try {
+                    candidateTable.register(addresses.get(i));
+                } catch (LedgerException e) {
+                    throw new LedgerException(action, "account " + addresses.get(i) + " is listed twice");
+                }
+                accountBalances.addAccount(new Account(addresses.get(i)));
+            }
+        }
+
+        // Apply the transactions to a candidate block
+        Block candidate = new Block(this.currentBlock.getBlockNumber(), this.currentBlock.getPreviousHash(),
+                this.currentBlock.getPreviousBlock(), new AccountBalances(accountBalances));
+        for (Transaction txn : record.getTransactions()) {
+            try {
+                this.checkRequirements(txn.getAmount(), txn.getFee(), txn.getNote());
             } catch (LedgerException e) {
-                // Remove invalid transaction
+                throw new LedgerException(action, "transaction " + txn.getTransactionId() + ": " + e.getReason());
+            }
+            this.validateTransaction(txn, accountBalances);
+            this.adjustBalances(txn, accountBalances);
+            candidate.addTransaction(txn);
+        }
+
+        // Check the balances and the hash
+        for (int i = 0; i < accountBalances.size(); i++) {
+            if (accountBalances.getBalance(i) != record.getBalances()[i]) {
+                throw new LedgerException(action, "balance of " + addresses.get(i) + " does not match");
+            }
+        }
+        if (!candidate.computeHash().equals(record.getHash())) {
+            throw new LedgerException(action, "hash does not match");
+        }
+
+        // Register the new accounts with the Ledger
+        for (int i = this.accountTable.size(); i < addresses.size(); i++) {
+            this.addAccount(addresses.get(i));
+        }
+
+        // Commit the candidate block
+        if (candidate.getBlockNumber() == INIT_BLOCK_NUM) {
+            this.genesisBlock = candidate;
+        }
+        this.currentBlock = candidate;
+        this.completeBlock(new AccountBalances(accountBalances, this.accountTable), record.getCommitTime());
+        this.pendingBalances = this.currentBlock.getCopyOfAccountBalances();
+    }
+
+    /**
+     * Applies transactions to account balances in the given order, skipping transactions that are not valid yet.
+     * Skipped transactions are retried in further passes since a later transaction may fund the payer. Stops when the
+     * limit is reached or a pass applies no transactions.
+     *
+     * @param txns  List of candidate transactions in the preferred order
+     * @param accountBalances  Balances of all accounts to be adjusted
+     * @param limit  Max number of transactions to be applied
+     * @return  List of applied transactions in the order they were applied
+     */
+    private List<Transaction> applyTransactions(List<Transaction> txns, AccountBalances accountBalances, int limit) {
+        List<Transaction> applied = new ArrayList<>();
+        List<Transaction> remaining = new ArrayList<>(txns);
+        boolean progress = true;
+
+        while (progress && applied.size() < limit) {
+            progress = false;
+            Iterator<Transaction> iter = remaining.iterator();
+            while (iter.hasNext() && applied.size() < limit) {
+                Transaction txn = iter.next();
+                try {
+                    this.validateTransaction(txn, accountBalances);
+                } catch (LedgerException e) {
+                    continue;
+                }
+                this.adjustBalances(txn, accountBalances);
+                applied.add(txn);
                 iter.remove();
-                System.out.println(e);
+                progress = true;
             }
         }
 
-        return txns.size() == Block.MAX_NUM_OF_TXNS;
+        return applied;
     }
 
     /**
@@ -239,45 +1177,98 @@ public class Ledger {
      * Checks if the payer and receiver accounts exist and the payer has enough funds to cover the amount and the fee.
      *
      * @param txn  Transaction to be validated
-     * @param accountBalanceMap  Map of account addresses and account objects
+     * @param accountBalances  Balances of all accounts
      * @throws LedgerException
      */
-    public void validateTransaction(Transaction txn, Map<String, Account> accountBalanceMap) throws LedgerException {
+    public void validateTransaction(Transaction txn, AccountBalances accountBalances) throws LedgerException {
+        LedgerMetrics.RejectionReason reason = this.checkTransaction(txn, accountBalances);
+        if (reason != null) {
+            throw this.rejectionOf(txn, reason);
+        }
+    }
 
+    /**
+     * Checks the accounts of a transaction and the funds of its payer against the given account balances.
+     *
+     * @param txn  Transaction to be checked
+     * @param accountBalances  Account balances that the transaction is checked against
+     * @return  Reason the transaction is not valid, null if it is valid
+     */
+    private LedgerMetrics.RejectionReason checkTransaction(Transaction txn, AccountBalances accountBalances) {
         // Check if the payer account exists
-        if (!(accountBalanceMap.containsKey(txn.getPayer()))) {
-            throw new LedgerException("validate transaction", "payer does not exist");
+        int payerIndex = accountBalances.indexOf(txn.getPayer());
+        if (payerIndex < 0) {
+            return LedgerMetrics.RejectionReason.UNKNOWN_PAYER;
         }
 
         // Check if the receiver account exists
-        if (!(accountBalanceMap.containsKey(txn.getReceiver()))) {
-            throw new LedgerException("validate transaction", "receiver does not exist");
+        if (!(accountBalances.contains(txn.getReceiver()))) {
+            return LedgerMetrics.RejectionReason.UNKNOWN_RECEIVER;
         }
 
         // Check if the payer account has enough funds
-        if (accountBalanceMap.get(txn.getPayer()).getBalance() < txn.getAmount() + txn.getFee()) {
-            throw new LedgerException("validate transaction", txn.getPayer() + " does not have enough funds");
+        if (accountBalances.getBalance(payerIndex) < (long) txn.getAmount() + txn.getFee()) {
+            return LedgerMetrics.RejectionReason.INSUFFICIENT_FUNDS;
         }
+        return null;
+    }
+
+    /**
+     * Creates the exception that reports why a transaction was rejected.
+     *
+     * @param txn  Rejected transaction
+     * @param reason  Reason for the rejection
+     * @return  Exception to be thrown
+     */
+    private LedgerException rejectionOf(Transaction txn, LedgerMetrics.RejectionReason reason) {
+        String action = "Transaction " + txn.getTransactionId() + " cannot be processed.";
+        switch (reason) {
+            case DUPLICATE_ID:
+                return new LedgerException(action, "Transaction Id was already used.");
+            case UNKNOWN_PAYER:
+                return new LedgerException("validate transaction", "payer does not exist");
+            case UNKNOWN_RECEIVER:
+                return new LedgerException("validate transaction", "receiver does not exist");
+            case INSUFFICIENT_FUNDS:
+                return new LedgerException("validate transaction", txn.getPayer() + " does not have enough funds");
+            case POOL_FULL:
+                return new LedgerException(action, "transaction pool is full and the fee must exceed "
+                        + this.transactionPool.getLowest().getFee() + " units");
+            default:
+                return new LedgerException(action, reason.name());
+        }
+    }
+
+    /**
+     * Counts a rejected transaction and creates the exception that reports the rejection.
+     *
+     * @param txn  Rejected transaction
+     * @param reason  Reason for the rejection
+     * @return  Exception to be thrown
+     */
+    private LedgerException reject(Transaction txn, LedgerMetrics.RejectionReason reason) {
+        this.metrics.recordRejection(reason);
+        return this.rejectionOf(txn, reason);
     }
 
     /**
      * Adjusts account balances of the payer, the receiver, and the master account based on a transaction.
      *
      * @param txn  Transaction to be processed
-     * @param accountBalanceMap  Map of account addresses and account objects
-     * @return  updated accountBalanceMap
+     * @param accountBalances  Balances of all accounts
+     * @return  updated accountBalances
      */
-    public Map<String, Account> adjustBalances(Transaction txn, Map<String, Account> accountBalanceMap) {
+    public AccountBalances adjustBalances(Transaction txn, AccountBalances accountBalances) {
         // Adjust the payer's account balance
-        accountBalanceMap.get(txn.getPayer()).withdraw(txn.getAmount() + txn.getFee());
+        accountBalances.withdraw(accountBalances.indexOf(txn.getPayer()), (long) txn.getAmount() + txn.getFee());
 
         // Adjust the receiver's account balance
-        accountBalanceMap.get(txn.getReceiver()).deposit(txn.getAmount());
+        accountBalances.deposit(accountBalances.indexOf(txn.getReceiver()), txn.getAmount());
 
         // Adjust the master account's balance
-        accountBalanceMap.get(Account.MASTER).deposit(txn.getFee());
+        accountBalances.deposit(accountBalances.indexOf(Account.MASTER), txn.getFee());
 
-        return accountBalanceMap;
+        return accountBalances;
     }
 
     /**
@@ -289,12 +1280,53 @@ public class Ledger {
      * @throws LedgerException  if transaction ID does not exist
      */
     public Transaction getTransaction(String txnId) throws LedgerException {
-        // Check if the transaction ID exists
-        if (!Block.getTransactionMap().containsKey(txnId)) {
+        // Parse the transaction ID
+        long id;
+        try {
+            id = Long.parseLong(txnId);
+        } catch (NumberFormatException e) {
             throw new LedgerException("get transaction", "transaction " + txnId + " does not exist");
         }
 
-        return Block.getTransactionMap().get(txnId);
+        return this.getTransaction(id);
+    }
+
+    /**
+     * Retrieves a transaction based on a transaction ID. The transaction must be contained in a block that is
+     * committed to the ledger.
+     *
+     * @param txnId  Unique identifier of the transaction to be retrieved
+     * @return  Transaction object
+     * @throws LedgerException  if transaction ID does not exist
+     */
+    public Transaction getTransaction(long txnId) throws LedgerException {
+        // Check if the transaction ID exists in a resident block
+        Transaction txn = Block.getTransactionMap().get(txnId);
+        if (txn != null) {
+            return txn;
+        }
+
+        // Check if the transaction ID exists in a pruned block
+        Integer blockNumber = this.prunedTransactionMap.get(txnId);
+        if (blockNumber != null) {
+            for (Transaction prunedTxn : this.loadBlock(blockNumber).getTransactionList()) {
+                if (prunedTxn.getTransactionId() == txnId) {
+                    return prunedTxn;
+                }
+            }
+        }
+
+        throw new LedgerException("get transaction", "transaction " + txnId + " does not exist");
+    }
+
+    /**
+     * Checks whether a transaction ID is contained in a committed block, including the pruned blocks.
+     *
+     * @param txnId  Unique identifier of the transaction
+     * @return  True if the transaction has been committed. Otherwise, returns false.
+     */
+    boolean isCommitted(long txnId) {
+        return Block.getTransactionMap().containsKey(txnId) || this.prunedTransactionMap.containsKey(txnId);
     }
 
     /**
@@ -305,21 +1337,16 @@ public class Ledger {
      * @return  balance of the given account
      * @throws LedgerException  if no block has been committed yet or if the given account address does not exist
      */
-    public int getAccountBalance(String address) throws LedgerException {
-        // Get the previous block
-        Block previousBlock = this.currentBlock.getPreviousBlock();
+    public long getAccountBalance(String address) throws LedgerException {
+        // Get the committed state
+        LedgerSnapshot committedState = this.snapshot;
 
         // Check if any block has been committed yet
-        if (previousBlock == null) {
+        if (committedState == null) {
             throw new LedgerException("get account balance", "no block has been committed yet");
         }
 
-        // Check if the given account address exists
-        if (!previousBlock.getAccountBalanceMap().containsKey(address)) {
-            throw new LedgerException("get account balance", "account has not been committed to a block");
-        }
-
-        return previousBlock.getAccountBalanceMap().get(address).getBalance();
+        return committedState.getAccountBalance(address);
     }
 
     /**
@@ -328,23 +1355,33 @@ public class Ledger {
      * @return  Map of account addresses and account balances
      * @throws LedgerException  if no block has been committed yet
      */
-    public Map<String, Integer> getAccountBalances() throws LedgerException {
+    public Map<String, Long> getAccountBalances() throws LedgerException {
 
-        // Get the previous block
-        Block previousBlock = this.currentBlock.getPreviousBlock();
+        // Get the committed state
+        LedgerSnapshot committedState = this.snapshot;
 
         // Check if any block has been committed yet
-        if (previousBlock == null) {
+        if (committedState == null) {
             throw new LedgerException("get account balances", "no block has been committed yet");
         }
 
         // Create a map of account addresses and account balances
-        Map<String, Integer> result = new HashMap<>();
-        for (Map.Entry<String, Account> entry : previousBlock.getCopyOfAccountBalanceMap().entrySet()) {
-            result.put(entry.getKey(), entry.getValue().getBalance());
-        }
+        return committedState.getAccountBalances();
+    }
 
-        return result;
+    /**
+     * Retrieves the committed state as of the most recently completed block. Several balances read from the same
+     * snapshot are consistent with each other.
+     *
+     * @return  Snapshot of the committed state
+     * @throws LedgerException  if no block has been committed yet
+     */
+    public LedgerSnapshot getSnapshot() throws LedgerException {
+        LedgerSnapshot committedState = this.snapshot;
+        if (committedState == null) {
+            throw new LedgerException("get snapshot", "no block has been committed yet");
+        }
+        return committedState;
     }
 
     /**
@@ -356,59 +1393,205 @@ public class Ledger {
      */
     public Block getBlock(int blockNumber) throws LedgerException {
         // Check if the block number exists
-        if (!this.blockMap.containsKey(blockNumber)) {
+        LedgerSnapshot committedState = this.snapshot;
+        if (blockNumber < INIT_BLOCK_NUM || committedState == null || blockNumber > committedState.getBlockNumber()) {
             throw new LedgerException("get block", "block number " + blockNumber + " does not exist");
         }
 
         // Return a copy of the block
-        return new Block(this.blockMap.get(blockNumber));
+        return new Block(this.loadBlock(blockNumber));
+    }
+
+    /**
+     * Retrieves a committed block from the heap, or from the block segment file if it has been pruned. A block that
+     * is loaded from the file is not kept on the heap.
+     *
+     * @param blockNumber  Unique identifier of a committed block
+     * @return  Committed block, which must not be modified
+     * @throws LedgerException  if the block cannot be read from the block segment file
+     */
+    private Block loadBlock(int blockNumber) throws LedgerException {
+        Block block = this.blockMap.get(blockNumber);
+        if (block != null) {
+            return block;
+        }
+
+        synchronized (this) {
+            return Block.fromRecord(this.blockSegment.read(blockNumber), this.accountTable);
+        }
+    }
+
+    /**
+     * Retrieves the name of the ledger.
+     *
+     * @return  Name of the ledger
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Retrieves the metrics of the transaction processing.
+     *
+     * @return  Metrics of the ledger
+     */
+    LedgerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Retrieves the directory that holds the persisted state of the ledger.
+     *
+     * @return  Data directory, null if the ledger is kept in memory only
+     */
+    Path getDataDirectory() {
+        return this.dataDirectory;
+    }
+
+    /**
+     * Retrieves the addresses of all accounts, whether or not they have been committed to a block.
+     *
+     * @return  List of account addresses in account index order
+     */
+    synchronized List<String> getAccountAddresses() {
+        List<String> addresses = new ArrayList<>(this.accountTable.size());
+        for (int i = 0; i < this.accountTable.size(); i++) {
+            addresses.add(this.accountTable.getAddress(i));
+        }
+        return addresses;
+    }
+
+    /**
+     * Checks whether a transaction has been accepted and is waiting in the transaction pool for a block.
+     *
+     * @param txnId  Unique identifier of the transaction
+     * @return  True if the transaction is pooled. Otherwise, returns false.
+     */
+    synchronized boolean isPooled(long txnId) {
+        return this.transactionPool.contains(txnId);
+    }
+
+    /**
+     * Retrieves the number of committed blocks.
+     *
+     * @return  Number of committed blocks
+     */
+    int getCommittedBlockCount() {
+        LedgerSnapshot committedState = this.snapshot;
+        return committedState == null ? 0 : committedState.getBlockNumber();
+    }
+
+    /**
+     * Retrieves the number of committed blocks that are kept on the heap.
+     *
+     * @return  Number of resident blocks
+     */
+    int getResidentBlockCount() {
+        return this.getCommittedBlockCount() - this.firstResidentBlock + INIT_BLOCK_NUM;
+    }
+
+    /**
+     * Estimates the heap used by the committed state: the resident blocks, the header chain, and the index of the
+     * pruned transactions. Does not take the lock, so the estimate may miss a block that is being committed.
+     *
+     * @return  Estimated size in bytes
+     */
+    long estimateHeapFootprint() {
+        long size = 0;
+        for (Block block : this.blockMap.values()) {
+            size += block.estimateHeapSize();
+        }
+        size += (long) this.getCommittedBlockCount() * BlockHeader.RECORD_SIZE;
+        return size + PRUNED_TXN_ENTRY_SIZE * this.prunedTransactionMap.size();
+    }
+
+    /**
+     * Retrieves the headers of a range of committed blocks. The headers are copied into a compact HeaderChain that can
+     * be verified without materializing any block.
+     *
+     * @param fromBlock  Number of the first block, inclusive
+     * @param toBlock  Number of the last block, inclusive
+     * @return  Headers of the blocks in block number order
+     * @throws LedgerException  if a block number does not exist
+     */
+    public synchronized HeaderChain getHeaders(int fromBlock, int toBlock) throws LedgerException {
+        // Check if the block numbers exist
+        int lastBlockNumber = this.getCommittedBlockCount();
+        if (fromBlock < INIT_BLOCK_NUM || fromBlock > lastBlockNumber) {
+            throw new LedgerException("get headers", "block number " + fromBlock + " does not exist");
+        }
+        if (toBlock > lastBlockNumber || toBlock < fromBlock) {
+            throw new LedgerException("get headers", "block number " + toBlock + " does not exist");
+        }
+
+        return this.headerChain.subChain(fromBlock - INIT_BLOCK_NUM, toBlock - INIT_BLOCK_NUM + 1);
     }
 
     /**
      * Validates the current state of the blockchain.
      * For each block checks if the preceding block's hash is correct, the account balances total to
-     * Integer.MAX_VALUE, the number of transactions is equal to 10.
+     * the master account's initial balance, the number of transactions is equal to 10. Validates the blocks that were
+     * committed when the validation started, without blocking changes to the ledger.
      *
      * @throws LedgerException  if any of the above requirements are not satisfied
      */
     public void validate() throws LedgerException {
-        // Iterate over each committed block
-        for (Map.Entry<Integer, Block> entry : this.blockMap.entrySet()) {
-            Block currBlock = entry.getValue();
+        // Iterate over each block committed as of the current snapshot
+        LedgerSnapshot committedState = this.snapshot;
+        int lastBlockNumber = committedState == null ? 0 : committedState.getBlockNumber();
+        Block previousBlock = null;
+        for (int blockNumber = INIT_BLOCK_NUM; blockNumber <= lastBlockNumber; blockNumber++) {
+            Block currBlock = this.loadBlock(blockNumber);
 
             // Check the hash of the previous block
-            if (entry.getKey() != 1) {
-                Block previousBlock = this.blockMap.get(entry.getKey() - 1);
+            if (blockNumber != 1) {
                 String previousBlockHash = previousBlock.computeHash();
                 if (!previousBlockHash.equals(currBlock.getPreviousHash())) {
                     throw new LedgerException("blockchain validation",
-                            "hash values in blocks " + entry.getKey() + " & " + (entry.getKey() - 1) +  " don't match");
+                            "hash values in blocks " + blockNumber + " & " + (blockNumber - 1) +  " don't match");
                 } else {
-                    System.out.println("Successfully validated previous hash of block " + entry.getKey());
+                    System.out.println("Successfully validated previous hash of block " + blockNumber);
                 }
             }
 
-            // Check that the account balances total to the max value
-            Map<String, Account> currAccountBalanceMap = currBlock.getAccountBalanceMap();
-            int total = 0;
-            for (Account account : currAccountBalanceMap.values()) {
-                total += account.getBalance();
-            }
-            if (total != Integer.MAX_VALUE) {
+            // Check that the account balances total to the master account's initial balance
+            long total = currBlock.getAccountBalances().sum();
+            if (total != Account.MASTER_BALANCE) {
                 throw new LedgerException("blockchain validation", "sum of account balances is " + total);
             }
-            System.out.println("Successfully validated sum of account balances for block " + entry.getKey());
+            System.out.println("Successfully validated sum of account balances for block " + blockNumber);
 
             // Check if num of transactions is correct
             if (currBlock.getTransactionList().size() != Block.MAX_NUM_OF_TXNS) {
                 throw new LedgerException("blockchain validation", "number of transactions is not "
                         + Block.MAX_NUM_OF_TXNS);
             }
+            previousBlock = currBlock;
         }
 
         System.out.println("Validation of the current state of the blockchain completed successfully.");
     }
 
+    /**
+     * Unregisters the ledger's monitor, and closes the write-ahead log, syncing the remaining records to disk, and the
+     * block segment file if the ledger is persisted. The transaction ID high-water mark is no longer persisted to the
+     * ledger's data directory.
+     *
+     * @throws LedgerException  if the write-ahead log cannot be closed
+     */
+    public synchronized void close() throws LedgerException {
+        this.monitor.unregister();
+        if (this.dataDirectory != null) {
+            TransactionIdAllocator.unregister(this.dataDirectory.resolve(TXN_ID_FILE));
+        }
+        if (this.writeAheadLog != null) {
+            this.writeAheadLog.close();
+        }
+        if (this.blockSegment != null) {
+            this.blockSegment.close();
+        }
+    }
+
 
 
 
@@ -0,0 +1,107 @@
+package com.cscie97.ledger;
+
+import java.util.Map;
+
+/**
+ * Management interface of a Ledger, registered with the platform MBean server under
+ * com.cscie97.ledger:type=Ledger,name=&lt;ledger name&gt;.
+ *
+ * @author Burak Ufuktepe
+ */
+public interface LedgerMXBean {
+
+    /**
+     * Retrieves the name of the ledger.
+     *
+     * @return  Name of the ledger
+     */
+    String getLedgerName();
+
+    /**
+     * Retrieves the number of committed blocks.
+     *
+     * @return  Number of committed blocks
+     */
+    int getCommittedBlockCount();
+
+    /**
+     * Retrieves the number of committed blocks that are kept on the heap.
+     *
+     * @return  Number of resident blocks
+     */
+    int getResidentBlockCount();
+
+    /**
+     * Retrieves the number of committed blocks that have been pruned from the heap and are loaded from the block
+     * segment file on demand.
+     *
+     * @return  Number of pruned blocks
+     */
+    int getPrunedBlockCount();
+
+    /**
+     * Retrieves an estimate of the heap used by the committed state of the ledger: the resident blocks, the header
+     * chain, and the index of the pruned transactions.
+     *
+     * @return  Estimated heap footprint in bytes
+     */
+    long getHeapFootprintBytes();
+
+    /**
+     * Retrieves the number of transactions submitted to the ledger, including the rejected ones.
+     *
+     * @return  Number of received transactions
+     */
+    long getTransactionsReceived();
+
+    /**
+     * Retrieves the number of submitted transactions that were rejected.
+     *
+     * @return  Number of rejected transactions
+     */
+    long getTransactionsRejected();
+
+    /**
+     * Retrieves the number of rejected transactions per reason: duplicate ID, unknown payer or receiver, insufficient
+     * funds, full transaction pool, or a failure of the write-ahead log.
+     *
+     * @return  Map of reason names and numbers of rejected transactions
+     */
+    Map<String, Long> getRejectionsByReason();
+
+    /**
+     * Retrieves the number of blocks committed since the ledger was created or loaded.
+     *
+     * @return  Number of committed blocks
+     */
+    long getBlocksCommitted();
+
+    /**
+     * Retrieves the distribution of the time taken to commit a block, including persisting it.
+     *
+     * @return  Summary of the commit latency
+     */
+    LatencyHistogram.Snapshot getCommitLatency();
+
+    /**
+     * Retrieves the distribution of the time taken to compute the Merkle root and the hash of a block.
+     *
+     * @return  Summary of the hash time
+     */
+    LatencyHistogram.Snapshot getHashTime();
+
+    /**
+     * Retrieves the number of accepted transactions waiting in the transaction pool.
+     *
+     * @return  Number of pooled transactions
+     */
+    int getPendingTransactionCount();
+
+    /**
+     * Retrieves how full the open block is, as the share of a block's transactions that are waiting in the pool.
+     * Stays at 100 while the pool holds transactions that cannot be committed yet.
+     *
+     * @return  Fill of the open block in percent
+     */
+    int getOpenBlockFillPercent();
+}
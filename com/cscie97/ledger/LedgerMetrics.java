@@ -0,0 +1,174 @@
+package com.cscie97.ledger;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, histograms and gauges of a Ledger's transaction processing. Updated by the Ledger as transactions are
+ * received and blocks are committed, and read by the LedgerMonitor without taking the Ledger's lock.
+ *
+ * @author Burak Ufuktepe
+ */
+public class LedgerMetrics {
+
+    /**
+     * Reasons for rejecting a submitted transaction.
+     */
+    public enum RejectionReason {
+        DUPLICATE_ID, UNKNOWN_PAYER, UNKNOWN_RECEIVER, INSUFFICIENT_FUNDS, POOL_FULL, LOG_FAILURE
+    }
+
+    /**
+     * Number of submitted transactions.
+     */
+    private final LongAdder transactionsReceived;
+
+    /**
+     * Number of rejected transactions per reason.
+     */
+    private final Map<RejectionReason, LongAdder> rejections;
+
+    /**
+     * Number of committed blocks.
+     */
+    private final LongAdder blocksCommitted;
+
+    /**
+     * Time taken to commit a block, including persisting it and publishing the snapshot.
+     */
+    private final LatencyHistogram commitLatency;
+
+    /**
+     * Time taken to compute the Merkle root and the hash of a block.
+     */
+    private final LatencyHistogram hashTime;
+
+    /**
+     * Number of transactions in the transaction pool.
+     */
+    private volatile int pendingTransactions;
+
+    /**
+     * Class constructor that initializes the metrics to zero.
+     */
+    public LedgerMetrics() {
+        this.transactionsReceived = new LongAdder();
+        this.rejections = new EnumMap<>(RejectionReason.class);
+        for (RejectionReason reason : RejectionReason.values()) {
+            this.rejections.put(reason, new LongAdder());
+        }
+        this.blocksCommitted = new LongAdder();
+        this.commitLatency = new LatencyHistogram();
+        this.hashTime = new LatencyHistogram();
+    }
+
+    /**
+     * Counts a submitted transaction.
+     */
+    void recordReceived() {
+        this.transactionsReceived.increment();
+    }
+
+    /**
+     * Counts a rejected transaction.
+     *
+     * @param reason  Reason for the rejection
+     */
+    void recordRejection(RejectionReason reason) {
+        this.rejections.get(reason).increment();
+    }
+
+    /**
+     * Counts a committed block and records how long committing and hashing it took.
+     *
+     * @param commitNanos  Time taken to commit the block in nanoseconds
+     * @param hashNanos  Time taken to hash the block in nanoseconds
+     */
+    void recordCommit(long commitNanos, long hashNanos) {
+        this.blocksCommitted.increment();
+        this.commitLatency.record(commitNanos);
+        this.hashTime.record(hashNanos);
+    }
+
+    /**
+     * Updates the number of transactions in the transaction pool.
+     *
+     * @param aPendingTransactions  Number of pooled transactions
+     */
+    void setPendingTransactions(int aPendingTransactions) {
+        this.pendingTransactions = aPendingTransactions;
+    }
+
+    /**
+     * Retrieves the number of submitted transactions.
+     *
+     * @return  Number of submitted transactions
+     */
+    public long getTransactionsReceived() {
+        return this.transactionsReceived.sum();
+    }
+
+    /**
+     * Retrieves the number of rejected transactions.
+     *
+     * @return  Number of rejected transactions
+     */
+    public long getTransactionsRejected() {
+        long total = 0;
+        for (LongAdder count : this.rejections.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Retrieves the number of rejected transactions per reason.
+     *
+     * @return  Map of reason names and numbers of rejected transactions
+     */
+    public Map<String, Long> getRejectionsByReason() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<RejectionReason, LongAdder> entry : this.rejections.entrySet()) {
+            counts.put(entry.getKey().name(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Retrieves the number of committed blocks.
+     *
+     * @return  Number of committed blocks
+     */
+    public long getBlocksCommitted() {
+        return this.blocksCommitted.sum();
+    }
+
+    /**
+     * Retrieves the histogram of block commit times.
+     *
+     * @return  Commit latency histogram
+     */
+    public LatencyHistogram getCommitLatency() {
+        return this.commitLatency;
+    }
+
+    /**
+     * Retrieves the histogram of block hash times.
+     *
+     * @return  Hash time histogram
+     */
+    public LatencyHistogram getHashTime() {
+        return this.hashTime;
+    }
+
+    /**
+     * Retrieves the number of transactions in the transaction pool.
+     *
+     * @return  Number of pooled transactions
+     */
+    public int getPendingTransactions() {
+        return this.pendingTransactions;
+    }
+}
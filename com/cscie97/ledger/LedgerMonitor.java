@@ -0,0 +1,207 @@
+package com.cscie97.ledger;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exposes the state of a Ledger through JMX. Reads the Ledger's committed state without taking its lock, so the
+ * attributes may lag behind a commit that is in progress.
+ *
+ * @author Burak Ufuktepe
+ */
+public class LedgerMonitor implements LedgerMXBean {
+
+    /**
+     * Class variable that maps object names to the monitors registered under them.
+     */
+    private static final Map<ObjectName, LedgerMonitor> registeredMonitors = new ConcurrentHashMap<>();
+
+    /**
+     * Monitored ledger.
+     */
+    private final Ledger ledger;
+
+    /**
+     * Name under which the monitor is registered.
+     */
+    private final ObjectName objectName;
+
+    /**
+     * Class constructor that sets the monitored ledger and its object name.
+     *
+     * @param aLedger  Monitored ledger
+     * @param aName  Name of the ledger
+     * @throws LedgerException  if the ledger name cannot be used in an object name
+     */
+    LedgerMonitor(Ledger aLedger, String aName) throws LedgerException {
+        this.ledger = aLedger;
+        try {
+            this.objectName = new ObjectName("com.cscie97.ledger:type=Ledger,name=" + ObjectName.quote(aName));
+        } catch (JMException e) {
+            throw new LedgerException("register ledger monitor", e.getMessage());
+        }
+    }
+
+    /**
+     * Registers the monitor with the platform MBean server, replacing the monitor of a previous ledger with the same
+     * name.
+     *
+     * @throws LedgerException  if the monitor cannot be registered
+     */
+    void register() throws LedgerException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registeredMonitors) {
+            try {
+                if (server.isRegistered(this.objectName)) {
+                    server.unregisterMBean(this.objectName);
+                }
+                server.registerMBean(this, this.objectName);
+            } catch (JMException e) {
+                throw new LedgerException("register ledger monitor", e.getMessage());
+            }
+            registeredMonitors.put(this.objectName, this);
+        }
+    }
+
+    /**
+     * Unregisters the monitor from the platform MBean server. Does nothing if the name has since been taken by the
+     * monitor of another ledger.
+     *
+     * @throws LedgerException  if the monitor cannot be unregistered
+     */
+    void unregister() throws LedgerException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registeredMonitors) {
+            if (!registeredMonitors.remove(this.objectName, this)) {
+                return;
+            }
+            try {
+                server.unregisterMBean(this.objectName);
+            } catch (JMException e) {
+                throw new LedgerException("unregister ledger monitor", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Retrieves the name of the ledger.
+     *
+     * @return  Name of the ledger
+     */
+    public String getLedgerName() {
+        return this.ledger.getName();
+    }
+
+    /**
+     * Retrieves the number of committed blocks.
+     *
+     * @return  Number of committed blocks
+     */
+    public int getCommittedBlockCount() {
+        return this.ledger.getCommittedBlockCount();
+    }
+
+    /**
+     * Retrieves the number of committed blocks that are kept on the heap.
+     *
+     * @return  Number of resident blocks
+     */
+    public int getResidentBlockCount() {
+        return this.ledger.getResidentBlockCount();
+    }
+
+    /**
+     * Retrieves the number of committed blocks that have been pruned from the heap.
+     *
+     * @return  Number of pruned blocks
+     */
+    public int getPrunedBlockCount() {
+        return this.ledger.getCommittedBlockCount() - this.ledger.getResidentBlockCount();
+    }
+
+    /**
+     * Retrieves an estimate of the heap used by the committed state of the ledger.
+     *
+     * @return  Estimated heap footprint in bytes
+     */
+    public long getHeapFootprintBytes() {
+        return this.ledger.estimateHeapFootprint();
+    }
+
+    /**
+     * Retrieves the number of transactions submitted to the ledger.
+     *
+     * @return  Number of received transactions
+     */
+    public long getTransactionsReceived() {
+        return this.ledger.getMetrics().getTransactionsReceived();
+    }
+
+    /**
+     * Retrieves the number of submitted transactions that were rejected.
+     *
+     * @return  Number of rejected transactions
+     */
+    public long getTransactionsRejected() {
+        return this.ledger.getMetrics().getTransactionsRejected();
+    }
+
+    /**
+     * Retrieves the number of rejected transactions per reason.
+     *
+     * @return  Map of reason names and numbers of rejected transactions
+     */
+    public Map<String, Long> getRejectionsByReason() {
+        return this.ledger.getMetrics().getRejectionsByReason();
+    }
+
+    /**
+     * Retrieves the number of blocks committed since the ledger was created or loaded.
+     *
+     * @return  Number of committed blocks
+     */
+    public long getBlocksCommitted() {
+        return this.ledger.getMetrics().getBlocksCommitted();
+    }
+
+    /**
+     * Retrieves the distribution of the time taken to commit a block.
+     *
+     * @return  Summary of the commit latency
+     */
+    public LatencyHistogram.Snapshot getCommitLatency() {
+        return this.ledger.getMetrics().getCommitLatency().snapshot();
+    }
+
+    /**
+     * Retrieves the distribution of the time taken to hash a block.
+     *
+     * @return  Summary of the hash time
+     */
+    public LatencyHistogram.Snapshot getHashTime() {
+        return this.ledger.getMetrics().getHashTime().snapshot();
+    }
+
+    /**
+     * Retrieves the number of accepted transactions waiting in the transaction pool.
+     *
+     * @return  Number of pooled transactions
+     */
+    public int getPendingTransactionCount() {
+        return this.ledger.getMetrics().getPendingTransactions();
+    }
+
+    /**
+     * Retrieves how full the open block is.
+     *
+     * @return  Fill of the open block in percent
+     */
+    public int getOpenBlockFillPercent() {
+        int pending = Math.min(this.ledger.getMetrics().getPendingTransactions(), Block.MAX_NUM_OF_TXNS);
+        return pending * 100 / Block.MAX_NUM_OF_TXNS;
+    }
+}
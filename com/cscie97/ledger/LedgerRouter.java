@@ -0,0 +1,733 @@
+package com.cscie97.ledger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Partitions accounts across a root Ledger and per-region Ledger shards, each with its own transaction pool and block
+ * builder, so transactions of different regions are processed in parallel. Every account has a home region, the root
+ * region unless it was created in a shard, and a transaction is processed by the ledger of the payer's home region.
+ *
+ * A transaction whose receiver lives in another region pays the amount into the clearing account of the payer's
+ * ledger. Settlement then credits the receivers from the master account of their ledger and nets the flows between
+ * each pair of regions into a single transaction between the regions' settlement accounts in the root ledger. The
+ * settlement accounts are funded with a float from the root ledger's master account when a shard is added.
+ *
+ * A cross-region transaction is only owed to its receiver once the clearing transaction is in a committed block, so a
+ * clearing transaction that is evicted from the pool or abandoned is never credited. Likewise, a settlement is only
+ * deducted from the owed amounts once its transaction is committed. If the root ledger is persisted, the owed amounts
+ * and the transactions they wait for are kept in a SettlementJournal in its data directory, and a router that is
+ * rebuilt from the reloaded root ledger and shards picks up the settlement where it left off.
+ *
+ * @author Burak Ufuktepe
+ */
+public class LedgerRouter {
+
+    /**
+     * Class constant for the region of the root ledger.
+     */
+    public static final String ROOT_REGION = "root";
+
+    /**
+     * Class constant for the address of the clearing account of each ledger.
+     */
+    public static final String CLEARING_ACCOUNT = "settlement-clearing";
+
+    /**
+     * Class constant for the prefix of the settlement accounts of the regions in the root ledger.
+     */
+    public static final String SETTLEMENT_ACCOUNT_PREFIX = "settlement-";
+
+    /**
+     * Class constant for the float each settlement account is funded with.
+     */
+    public static final int SETTLEMENT_FLOAT = 100000000;
+
+    /**
+     * Name of the file in the root ledger's data directory that holds the settlement journal.
+     */
+    private static final String JOURNAL_FILE = "settlement.journal";
+
+    /**
+     * Root ledger.
+     */
+    private final Ledger root;
+
+    /**
+     * Maps regions to their ledgers, including the root region.
+     */
+    private final Map<String, Ledger> ledgers;
+
+    /**
+     * Maps the addresses of the accounts created in a shard to their home regions.
+     */
+    private final Map<String, String> homeRegions;
+
+    /**
+     * Amounts owed to receivers by committed cross-region transactions, by receiver region and receiver address.
+     * Settlement credits are deducted once they are committed. Guarded by the router.
+     */
+    private final Map<String, Map<String, Long>> pendingCredits;
+
+    /**
+     * Net amounts owed between regions by committed cross-region transactions, by payer region and receiver region.
+     * Only one direction of each pair of regions holds an amount. Net settlements are deducted once they are
+     * committed. Guarded by the router.
+     */
+    private final Map<String, Map<String, Long>> pendingFlows;
+
+    /**
+     * Journal entries of accepted transactions that have not been found in a committed block yet, by transaction ID.
+     * Guarded by the router.
+     */
+    private final Map<Long, SettlementJournal.Entry> uncommittedEntries;
+
+    /**
+     * Journal entries of transactions that are being processed. They are kept when the journal is rewritten but are
+     * not checked against their ledgers until the ledger has accepted or rejected the transaction. Guarded by the
+     * router.
+     */
+    private final Map<Long, SettlementJournal.Entry> submittingEntries;
+
+    /**
+     * Journal of the owed amounts in the root ledger's data directory. Null if the root ledger is not persisted.
+     */
+    private final SettlementJournal journal;
+
+    /**
+     * Lock that allows a single settlement at a time.
+     */
+    private final Object settlementLock;
+
+    /**
+     * Runs the periodic settlement. Null if settlement is not scheduled.
+     */
+    private ScheduledExecutorService settlementScheduler;
+
+    /**
+     * Class constructor that sets the root ledger. The root ledger is not modified until the first shard is added. If
+     * the root ledger is persisted, the owed amounts are restored from the settlement journal in its data directory.
+     *
+     * @param aRoot  Root ledger
+     * @throws LedgerException  if the settlement journal cannot be opened or read
+     */
+    public LedgerRouter(Ledger aRoot) throws LedgerException {
+        this.root = aRoot;
+        this.ledgers = new ConcurrentHashMap<>();
+        this.ledgers.put(ROOT_REGION, aRoot);
+        this.homeRegions = new ConcurrentHashMap<>();
+        this.pendingCredits = new HashMap<>();
+        this.pendingFlows = new HashMap<>();
+        this.uncommittedEntries = new HashMap<>();
+        this.submittingEntries = new HashMap<>();
+        this.settlementLock = new Object();
+
+        // Restore the owed amounts and the transactions they wait for
+        if (aRoot.getDataDirectory() == null) {
+            this.journal = null;
+        } else {
+            this.journal = new SettlementJournal(aRoot.getDataDirectory().resolve(JOURNAL_FILE));
+            for (SettlementJournal.Entry entry : this.journal.readEntries()) {
+                if (entry.getTransactionId() == 0) {
+                    this.applyEntry(entry);
+                } else {
+                    this.uncommittedEntries.put(entry.getTransactionId(), entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the ledger of a region. Creates the clearing account in the shard and a funded settlement account for the
+     * region in the root ledger. The root ledger gets its own clearing and settlement accounts with the first shard.
+     * A shard that was reloaded from its data directory keeps its accounts, which are routed to the region again.
+     *
+     * @param region  Unique name of the region
+     * @param shard  New ledger of the region
+     * @throws LedgerException  if the region already exists or the settlement accounts cannot be created
+     */
+    public synchronized void addShard(String region, Ledger shard) throws LedgerException {
+        if (this.ledgers.containsKey(region)) {
+            throw new LedgerException("add ledger shard", "region " + region + " already exists");
+        }
+
+        // Set up the root region with the first shard
+        if (this.ledgers.size() == 1) {
+            this.addSettlementAccounts(ROOT_REGION, this.root);
+        }
+
+        this.addSettlementAccounts(region, shard);
+
+        // Route the accounts of a reloaded shard to the region
+        for (String address : shard.getAccountAddresses()) {
+            if (!address.equals(Account.MASTER) && !address.equals(CLEARING_ACCOUNT)) {
+                this.homeRegions.put(address, region);
+            }
+        }
+        this.ledgers.put(region, shard);
+    }
+
+    /**
+     * Creates the clearing account of a region's ledger and the region's funded settlement account in the root
+     * ledger, unless the ledgers already hold them from before a restart.
+     *
+     * @param region  Unique name of the region
+     * @param aLedger  Ledger of the region
+     * @throws LedgerException  if an account cannot be created or funded
+     */
+    private void addSettlementAccounts(String region, Ledger aLedger) throws LedgerException {
+        if (!aLedger.hasAccount(CLEARING_ACCOUNT)) {
+            aLedger.createAccount(CLEARING_ACCOUNT);
+        }
+        String settlementAccount = SETTLEMENT_ACCOUNT_PREFIX + region;
+        if (!this.root.hasAccount(settlementAccount)) {
+            this.root.createAccount(settlementAccount);
+            this.root.processTransaction(this.root.createTransaction(SETTLEMENT_FLOAT, Transaction.MIN_FEE,
+                    "Settlement float for " + region, Account.MASTER, settlementAccount));
+        }
+    }
+
+    /**
+     * Retrieves the ledger of a region.
+     *
+     * @param region  Name of the region
+     * @return  Ledger of the region
+     * @throws LedgerException  if the region does not exist
+     */
+    public Ledger getShard(String region) throws LedgerException {
+        Ledger shard = this.ledgers.get(region);
+        if (shard == null) {
+            throw new LedgerException("get ledger shard", "region " + region + " does not exist");
+        }
+        return shard;
+    }
+
+    /**
+     * Retrieves the home region of an account. Accounts that were not created in a shard live in the root region.
+     *
+     * @param address  Unique address of the account
+     * @return  Home region of the account
+     */
+    public String getRegion(String address) {
+        return this.homeRegions.getOrDefault(address, ROOT_REGION);
+    }
+
+    /**
+     * Retrieves the ledger of an account's home region.
+     *
+     * @param address  Unique address of the account
+     * @return  Ledger that holds the account
+     */
+    public Ledger getLedger(String address) {
+        return this.ledgers.get(this.getRegion(address));
+    }
+
+    /**
+     * Creates an account in the ledger of a region. Account addresses are unique across all regions.
+     *
+     * @param address  Unique address of the account
+     * @param region  Home region of the account
+     * @return  Unique address of the account
+     * @throws LedgerException  if the region does not exist or the address already exists in any region
+     */
+    public synchronized String createAccount(String address, String region) throws LedgerException {
+        Ledger home = this.getShard(region);
+        if (this.homeRegions.containsKey(address) || this.root.hasAccount(address)
+                || (!region.equals(ROOT_REGION) && home.hasAccount(address))) {
+            throw new LedgerException("create account", "account address already exists");
+        }
+
+        home.createAccount(address);
+        if (!region.equals(ROOT_REGION)) {
+            this.homeRegions.put(address, region);
+        }
+        return address;
+    }
+
+    /**
+     * Creates a new transaction. Transactions are not bound to a ledger until they are processed.
+     *
+     * @param anAmount  Amount deducted from the payer's account & added to the receiver's account
+     * @param aFee  Transaction fee transferred from the payer's account to the master account
+     * @param aNote  Note for the transaction
+     * @param aPayer  Payer's unique address
+     * @param aReceiver  Receiver's unique address
+     * @return  a new transaction
+     * @throws LedgerException  if the fee, amount or note does not satisfy the requirements
+     */
+    public Transaction createTransaction(String anAmount, String aFee, String aNote, String aPayer, String aReceiver)
+            throws LedgerException {
+        return this.root.createTransaction(anAmount, aFee, aNote, aPayer, aReceiver);
+    }
+
+    /**
+     * Creates a new transaction. Transactions are not bound to a ledger until they are processed.
+     *
+     * @param anAmount  Amount deducted from the payer's account & added to the receiver's account
+     * @param aFee  Transaction fee transferred from the payer's account to the master account
+     * @param aNote  Note for the transaction
+     * @param aPayer  Payer's unique address
+     * @param aReceiver  Receiver's unique address
+     * @return  a new transaction
+     * @throws LedgerException  if the fee, amount or note does not satisfy the requirements
+     */
+    public Transaction createTransaction(int anAmount, int aFee, String aNote, String aPayer, String aReceiver)
+            throws LedgerException {
+        return this.root.createTransaction(anAmount, aFee, aNote, aPayer, aReceiver);
+    }
+
+    /**
+     * Creates a new transaction that carries an idempotency key. Retries with the same key are recognized by the
+     * ledger of the payer's home region.
+     *
+     * @param anAmount  Amount deducted from the payer's account & added to the receiver's account
+     * @param aFee  Transaction fee transferred from the payer's account to the master account
+     * @param aNote  Note for the transaction
+     * @param aPayer  Payer's unique address
+     * @param aReceiver  Receiver's unique address
+     * @param anIdempotencyKey  Key chosen by the client that is the same for every retry of the transaction
+     * @return  a new transaction
+     * @throws LedgerException  if the key, fee, amount or note does not satisfy the requirements
+     */
+    public Transaction createTransaction(int anAmount, int aFee, String aNote, String aPayer, String aReceiver,
+                                         String anIdempotencyKey) throws LedgerException {
+        return this.root.createTransaction(anAmount, aFee, aNote, aPayer, aReceiver, anIdempotencyKey);
+    }
+
+    /**
+     * Processes a transaction in the ledger of the payer's home region. If the receiver lives in another region, the
+     * amount is paid into the clearing account of the payer's ledger under the same transaction ID, and the receiver
+     * is credited by the first settlement after the payment is committed. A retry of a cross-region transaction is
+     * recognized by the payer's ledger and is not credited again.
+     *
+     * @param txn  Transaction to be processed
+     * @return  Transaction ID, or the ID of the accepted transaction if the given transaction is a retry
+     * @throws LedgerException  if the payer's ledger rejects the transaction
+     */
+    public long processTransaction(Transaction txn) throws LedgerException {
+        String payerRegion = this.getRegion(txn.getPayer());
+        String receiverRegion = this.getRegion(txn.getReceiver());
+        Ledger payerLedger = this.ledgers.get(payerRegion);
+
+        if (payerRegion.equals(receiverRegion) || !this.isKnown(txn.getReceiver(), receiverRegion)) {
+            return payerLedger.processTransaction(txn);
+        }
+
+        // Pay the amount into the clearing account, which is owed to the receiver once it is committed
+        SettlementJournal.Entry entry = new SettlementJournal.Entry(SettlementJournal.CROSS_REGION_ENTRY,
+                txn.getTransactionId(), txn.getAmount(), payerRegion, receiverRegion, txn.getReceiver());
+        return this.submit(payerLedger, this.toClearing(txn), entry);
+    }
+
+    /**
+     * Processes a batch of transactions. Transactions within a single region are handed to that region's ledger as a
+     * batch. Cross-region transactions are processed one at a time.
+     *
+     * @param txns  List of transactions to be processed
+     * @return  List of outcomes in the same order as the given transactions
+     * @throws LedgerException  if a ledger cannot sync its accepted transactions
+     */
+    public List<TransactionResult> processTransactions(List<Transaction> txns) throws LedgerException {
+        TransactionResult[] results = new TransactionResult[txns.size()];
+        Map<String, List<Integer>> batches = new HashMap<>();
+
+        for (int i = 0; i < txns.size(); i++) {
+            Transaction txn = txns.get(i);
+            String payerRegion = this.getRegion(txn.getPayer());
+            String receiverRegion = this.getRegion(txn.getReceiver());
+            if (payerRegion.equals(receiverRegion) || !this.isKnown(txn.getReceiver(), receiverRegion)) {
+                batches.computeIfAbsent(payerRegion, k -> new ArrayList<>()).add(i);
+                continue;
+            }
+
+            // Process the cross-region transaction on its own
+            try {
+                results[i] = new TransactionResult(this.processTransaction(txn), null);
+            } catch (LedgerException e) {
+                results[i] = new TransactionResult(txn.getTransactionId(), e.getReason());
+            }
+        }
+
+        // Process the batch of each region
+        for (Map.Entry<String, List<Integer>> batch : batches.entrySet()) {
+            List<Transaction> regionTxns = new ArrayList<>(batch.getValue().size());
+            for (int index : batch.getValue()) {
+                regionTxns.add(txns.get(index));
+            }
+            List<TransactionResult> regionResults = this.ledgers.get(batch.getKey()).processTransactions(regionTxns);
+            for (int i = 0; i < regionResults.size(); i++) {
+                results[batch.getValue().get(i)] = regionResults.get(i);
+            }
+        }
+
+        return List.of(results);
+    }
+
+    /**
+     * Checks whether an account exists in its home region.
+     *
+     * @param address  Unique address of the account
+     * @param region  Home region of the account
+     * @return  True if the account exists. Otherwise, returns false.
+     */
+    private boolean isKnown(String address, String region) {
+        return !region.equals(ROOT_REGION) || this.root.hasAccount(address);
+    }
+
+    /**
+     * Creates the transaction that pays the amount of a cross-region transaction into the clearing account of the
+     * payer's ledger. The transaction keeps the ID, fee, note, and idempotency key of the original transaction.
+     *
+     * @param txn  Cross-region transaction
+     * @return  Transaction to the clearing account
+     */
+    private Transaction toClearing(Transaction txn) {
+        Transaction clearingTxn = new Transaction(txn.getTransactionId(), txn.getAmount(), txn.getFee(), txn.getNote(),
+                txn.getPayer(), CLEARING_ACCOUNT);
+        clearingTxn.setIdempotencyKey(txn.getIdempotencyKey());
+        return clearingTxn;
+    }
+
+    /**
+     * Processes a transaction whose effect on the owed amounts is described by a journal entry. The entry is
+     * journaled before the ledger processes the transaction, so a restart cannot lose the entry of an accepted
+     * transaction, and only takes effect once the transaction is committed. A transaction that is rejected, or that
+     * the ledger already holds, leaves the owed amounts unchanged.
+     *
+     * @param aLedger  Ledger that processes the transaction
+     * @param txn  Transaction to be processed
+     * @param entry  Journal entry of the transaction
+     * @return  Transaction ID, or the ID of the accepted transaction if the given transaction is a retry
+     * @throws LedgerException  if the entry cannot be journaled or the ledger rejects the transaction
+     */
+    private long submit(Ledger aLedger, Transaction txn, SettlementJournal.Entry entry) throws LedgerException {
+        long txnId = txn.getTransactionId();
+        boolean resubmitted;
+        synchronized (this) {
+            // A transaction that the ledger already holds is a resubmission and has its entry already
+            resubmitted = aLedger.isPooled(txnId) || aLedger.isCommitted(txnId);
+            if (!resubmitted) {
+                if (this.journal != null) {
+                    this.journal.append(entry);
+                }
+                this.submittingEntries.put(txnId, entry);
+            }
+        }
+        if (resubmitted) {
+            return aLedger.processTransaction(txn);
+        }
+
+        long acceptedId = 0;
+        try {
+            acceptedId = aLedger.processTransaction(txn);
+        } finally {
+            synchronized (this) {
+                this.submittingEntries.remove(txnId);
+                if (acceptedId == txnId) {
+                    this.uncommittedEntries.put(txnId, entry);
+                }
+            }
+        }
+        return acceptedId;
+    }
+
+    /**
+     * Settles the amounts owed by committed cross-region transactions. Each receiver is credited with the total it is
+     * owed, from the master account of its ledger. The net flow between each pair of regions is transferred between
+     * their settlement accounts in the root ledger. Amounts that are being settled by transactions that are not
+     * committed yet are left out. Credits and transfers that fail are retried by the next settlement.
+     *
+     * @return  Number of settlement transactions
+     * @throws LedgerException  if the settlement journal cannot be written or a credit or transfer fails
+     */
+    public int settle() throws LedgerException {
+        synchronized (this.settlementLock) {
+            // Take the owed amounts less the settlements that are not committed yet
+            Map<String, Map<String, Long>> credits = new HashMap<>();
+            Map<String, Map<String, Long>> flows = new HashMap<>();
+            synchronized (this) {
+                this.reconcile();
+                this.compactJournal();
+                for (Map.Entry<String, Map<String, Long>> regionCredits : this.pendingCredits.entrySet()) {
+                    credits.put(regionCredits.getKey(), new HashMap<>(regionCredits.getValue()));
+                }
+                for (Map.Entry<String, Map<String, Long>> payerFlows : this.pendingFlows.entrySet()) {
+                    flows.put(payerFlows.getKey(), new HashMap<>(payerFlows.getValue()));
+                }
+                for (SettlementJournal.Entry entry : this.uncommittedEntries.values()) {
+                    if (entry.getKind().equals(SettlementJournal.CREDIT_ENTRY)) {
+                        addAmount(credits, entry.getReceiverRegion(), entry.getReceiver(), entry.getAmount());
+                    } else if (entry.getKind().equals(SettlementJournal.FLOW_ENTRY)) {
+                        addAmount(flows, entry.getPayerRegion(), entry.getReceiverRegion(), entry.getAmount());
+                    }
+                }
+            }
+
+            int numOfTxns = 0;
+
+            // Credit the receivers in their ledgers
+            for (Map.Entry<String, Map<String, Long>> regionCredits : credits.entrySet()) {
+                Ledger receiverLedger = this.ledgers.get(regionCredits.getKey());
+                if (receiverLedger == null) {
+                    continue;
+                }
+                for (Map.Entry<String, Long> credit : regionCredits.getValue().entrySet()) {
+                    if (credit.getValue() > 0) {
+                        this.transfer(receiverLedger, Account.MASTER, credit.getKey(), "Settlement credit",
+                                new SettlementJournal.Entry(SettlementJournal.CREDIT_ENTRY, 0, credit.getValue(), null,
+                                        regionCredits.getKey(), credit.getKey()));
+                        numOfTxns++;
+                    }
+                }
+            }
+
+            // Transfer the net flows between the regions in the root ledger
+            for (Map.Entry<String, Map<String, Long>> payerFlows : flows.entrySet()) {
+                for (Map.Entry<String, Long> flow : payerFlows.getValue().entrySet()) {
+                    if (flow.getValue() > 0) {
+                        String payerRegion = payerFlows.getKey();
+                        String receiverRegion = flow.getKey();
+                        this.transfer(this.root, SETTLEMENT_ACCOUNT_PREFIX + payerRegion,
+                                SETTLEMENT_ACCOUNT_PREFIX + receiverRegion,
+                                "Net settlement from " + payerRegion + " to " + receiverRegion,
+                                new SettlementJournal.Entry(SettlementJournal.FLOW_ENTRY, 0, flow.getValue(),
+                                        payerRegion, receiverRegion, null));
+                        numOfTxns++;
+                    }
+                }
+            }
+
+            System.out.println("Settled cross-region transactions with " + numOfTxns + " transactions.");
+            return numOfTxns;
+        }
+    }
+
+    /**
+     * Transfers an owed amount between two accounts of a ledger, split into several transactions if it does not fit
+     * into a single transaction. Each transaction is journaled with a negative entry for its part, so the owed amount
+     * is reduced once the transaction is committed and a rejected part leaves only the remainder to be settled again.
+     *
+     * @param aLedger  Ledger of the accounts
+     * @param payer  Payer's unique address
+     * @param receiver  Receiver's unique address
+     * @param note  Note for the transactions
+     * @param owed  Entry of the owed amount to be transferred
+     * @throws LedgerException  if a transaction is rejected or cannot be journaled
+     */
+    private void transfer(Ledger aLedger, String payer, String receiver, String note, SettlementJournal.Entry owed)
+            throws LedgerException {
+        long remaining = owed.getAmount();
+        while (remaining > 0) {
+            int part = (int) Math.min(remaining, Integer.MAX_VALUE - Transaction.MIN_FEE);
+            Transaction txn = aLedger.createTransaction(part, Transaction.MIN_FEE, note, payer, receiver);
+            this.submit(aLedger, txn, new SettlementJournal.Entry(owed.getKind(), txn.getTransactionId(), -part,
+                    owed.getPayerRegion(), owed.getReceiverRegion(), owed.getReceiver()));
+            remaining -= part;
+        }
+    }
+
+    /**
+     * Checks the entries of the accepted transactions against their ledgers. An entry takes effect once its
+     * transaction is in a committed block, and is dropped if the ledger no longer holds the transaction because it
+     * was evicted from the pool or abandoned. Entries of a region that has not been added yet are kept.
+     */
+    private synchronized void reconcile() {
+        Iterator<SettlementJournal.Entry> iterator = this.uncommittedEntries.values().iterator();
+        while (iterator.hasNext()) {
+            SettlementJournal.Entry entry = iterator.next();
+            Ledger aLedger = this.ledgers.get(getLedgerRegion(entry));
+
+            // Check the pool before the blocks, since a pooled transaction may be committed in between
+            if (aLedger == null || aLedger.isPooled(entry.getTransactionId())) {
+                continue;
+            }
+            if (aLedger.isCommitted(entry.getTransactionId())) {
+                this.applyEntry(entry);
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Adds the amount of a journal entry to the owed credits, the owed flows, or both.
+     *
+     * @param entry  Entry that takes effect
+     */
+    private synchronized void applyEntry(SettlementJournal.Entry entry) {
+        if (!entry.getKind().equals(SettlementJournal.FLOW_ENTRY)) {
+            addAmount(this.pendingCredits, entry.getReceiverRegion(), entry.getReceiver(), entry.getAmount());
+        }
+        if (!entry.getKind().equals(SettlementJournal.CREDIT_ENTRY)) {
+            // Net the flow against the flow in the opposite direction
+            String payerRegion = entry.getPayerRegion();
+            String receiverRegion = entry.getReceiverRegion();
+            long forward = getAmount(this.pendingFlows, payerRegion, receiverRegion);
+            long reverse = getAmount(this.pendingFlows, receiverRegion, payerRegion);
+            long net = forward - reverse + entry.getAmount();
+            addAmount(this.pendingFlows, payerRegion, receiverRegion, Math.max(net, 0) - forward);
+            addAmount(this.pendingFlows, receiverRegion, payerRegion, Math.max(-net, 0) - reverse);
+        }
+    }
+
+    /**
+     * Rewrites the settlement journal with the owed amounts and the entries of the transactions that are not
+     * committed yet. Does nothing if the root ledger is not persisted.
+     *
+     * @throws LedgerException  if the journal cannot be rewritten, in which case the old journal is kept
+     */
+    private synchronized void compactJournal() throws LedgerException {
+        if (this.journal == null) {
+            return;
+        }
+
+        List<SettlementJournal.Entry> entries = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Long>> regionCredits : this.pendingCredits.entrySet()) {
+            for (Map.Entry<String, Long> credit : regionCredits.getValue().entrySet()) {
+                entries.add(new SettlementJournal.Entry(SettlementJournal.CREDIT_ENTRY, 0, credit.getValue(), null,
+                        regionCredits.getKey(), credit.getKey()));
+            }
+        }
+        for (Map.Entry<String, Map<String, Long>> payerFlows : this.pendingFlows.entrySet()) {
+            for (Map.Entry<String, Long> flow : payerFlows.getValue().entrySet()) {
+                entries.add(new SettlementJournal.Entry(SettlementJournal.FLOW_ENTRY, 0, flow.getValue(),
+                        payerFlows.getKey(), flow.getKey(), null));
+            }
+        }
+        entries.addAll(this.uncommittedEntries.values());
+        entries.addAll(this.submittingEntries.values());
+        this.journal.rewrite(entries);
+    }
+
+    /**
+     * Determines the region of the ledger that processes the transaction of a journal entry.
+     *
+     * @param entry  Journal entry
+     * @return  Payer region of a cross-region transaction, receiver region of a credit, or the root region
+     */
+    private static String getLedgerRegion(SettlementJournal.Entry entry) {
+        switch (entry.getKind()) {
+            case SettlementJournal.CROSS_REGION_ENTRY:
+                return entry.getPayerRegion();
+            case SettlementJournal.CREDIT_ENTRY:
+                return entry.getReceiverRegion();
+            default:
+                return ROOT_REGION;
+        }
+    }
+
+    /**
+     * Retrieves an amount from a map of amounts by two keys.
+     *
+     * @param amounts  Amounts by outer and inner key
+     * @param outerKey  Region the amount is kept under
+     * @param innerKey  Address or region the amount is kept under
+     * @return  Amount, 0 if there is none
+     */
+    private static long getAmount(Map<String, Map<String, Long>> amounts, String outerKey, String innerKey) {
+        return amounts.getOrDefault(outerKey, Map.of()).getOrDefault(innerKey, 0L);
+    }
+
+    /**
+     * Adds a signed amount to a map of amounts by two keys. Amounts that reach 0 are removed.
+     *
+     * @param amounts  Amounts by outer and inner key
+     * @param outerKey  Region the amount is kept under
+     * @param innerKey  Address or region the amount is kept under
+     * @param amount  Signed amount to be added
+     */
+    private static void addAmount(Map<String, Map<String, Long>> amounts, String outerKey, String innerKey,
+                                  long amount) {
+        Map<String, Long> innerAmounts = amounts.computeIfAbsent(outerKey, k -> new HashMap<>());
+        if (innerAmounts.merge(innerKey, amount, Long::sum) == 0) {
+            innerAmounts.remove(innerKey);
+        }
+        if (innerAmounts.isEmpty()) {
+            amounts.remove(outerKey);
+        }
+    }
+
+    /**
+     * Runs the settlement periodically on a background thread, replacing any previous schedule. Failures are printed
+     * and the unsettled amounts are retried by the next run.
+     *
+     * @param periodMillis  Time in milliseconds between settlements
+     */
+    public synchronized void startSettlement(long periodMillis) {
+        this.stopSettlement();
+        this.settlementScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-settlement");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.settlementScheduler.scheduleAtFixedRate(() -> {
+            try {
+                this.settle();
+            } catch (LedgerException e) {
+                System.out.println("Settlement failed: " + e.getReason());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic settlement. Does nothing if settlement is not scheduled.
+     */
+    public synchronized void stopSettlement() {
+        if (this.settlementScheduler != null) {
+            this.settlementScheduler.shutdown();
+            this.settlementScheduler = null;
+        }
+    }
+
+    /**
+     * Retrieves the committed balance of an account from the ledger of its home region.
+     *
+     * @param address  unique identifier of the given account
+     * @return  balance of the given account
+     * @throws LedgerException  if no block has been committed yet or if the given account address does not exist
+     */
+    public long getAccountBalance(String address) throws LedgerException {
+        return this.getLedger(address).getAccountBalance(address);
+    }
+
+    /**
+     * Validates the root ledger and the ledger of each region.
+     *
+     * @throws LedgerException  if a ledger is not valid
+     */
+    public void validate() throws LedgerException {
+        this.root.validate();
+        for (Map.Entry<String, Ledger> entry : this.ledgers.entrySet()) {
+            if (!entry.getKey().equals(ROOT_REGION)) {
+                entry.getValue().validate();
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic settlement and closes the settlement journal and the ledgers of the regions. The root ledger
+     * is left open.
+     *
+     * @throws LedgerException  if the journal or a ledger cannot be closed
+     */
+    public void close() throws LedgerException {
+        this.stopSettlement();
+        if (this.journal != null) {
+            // Wait for a running settlement
+            synchronized (this.settlementLock) {
+                this.journal.close();
+            }
+        }
+        for (Map.Entry<String, Ledger> entry : this.ledgers.entrySet()) {
+            if (!entry.getKey().equals(ROOT_REGION)) {
+                entry.getValue().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.cscie97.ledger;
+
+import java.util.Map;
+
+/**
+ * Immutable view of the committed state of a Ledger. The Ledger publishes a new snapshot each time a block is
+ * committed, so balance queries read the snapshot without taking the Ledger's lock and never see a partially
+ * committed block. All balances of a snapshot belong to the same block.
+ *
+ * @author Burak Ufuktepe
+ */
+public class LedgerSnapshot {
+
+    /**
+     * Number of the last committed block.
+     */
+    private final int blockNumber;
+
+    /**
+     * Final balances of the last committed block. Never modified once the block is committed.
+     */
+    private final AccountBalances accountBalances;
+
+    /**
+     * Class constructor that captures the state of a committed block.
+     *
+     * @param aBlock  Last committed block
+     */
+    LedgerSnapshot(Block aBlock) {
+        this.blockNumber = aBlock.getBlockNumber();
+        this.accountBalances = aBlock.getAccountBalances();
+    }
+
+    /**
+     * Retrieves the number of the last committed block.
+     *
+     * @return  Block number
+     */
+    public int getBlockNumber() {
+        return this.blockNumber;
+    }
+
+    /**
+     * Retrieves the committed balance of an account address.
+     *
+     * @param address  unique identifier of the given account
+     * @return  balance of the given account
+     * @throws LedgerException  if the given account address has not been committed to a block
+     */
+    public long getAccountBalance(String address) throws LedgerException {
+        int index = this.accountBalances.indexOf(address);
+        if (index < 0) {
+            throw new LedgerException("get account balance", "account has not been committed to a block");
+        }
+        return this.accountBalances.getBalance(index);
+    }
+
+    /**
+     * Retrieves the committed balances of all accounts.
+     *
+     * @return  Map of account addresses and account balances
+     */
+    public Map<String, Long> getAccountBalances() {
+        return this.accountBalances.toMap();
+    }
+}
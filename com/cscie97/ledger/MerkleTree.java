@@ -2,10 +2,7 @@ package com.cscie97.ledger;
 
 import com.cscie97.Utility;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Base64;
 
 /**
  * Helper class for computing root hash of a Merkle tree and hashing a string.
@@ -32,14 +29,8 @@ public class MerkleTree {
      * @return  Hashed list
      */
     private static ArrayList<String> hashNodes(ArrayList<String> nodes) {
-        ArrayList<String> hashedNodes = new ArrayList<>();
-
-        // Hash each element and add it to hashedNodes
-        for (String leaf : nodes) {
-            hashedNodes.add(Utility.hashString(leaf));
-        }
-
-        return hashedNodes;
+        // Hash every element through the same digest
+        return Utility.hashAll(nodes);
     }
 
     /**
@@ -64,7 +55,7 @@ public class MerkleTree {
             // Compute the parent node
             if (i + 1 < hashedNodes.size()) {
                 // Concatenate two consecutive child nodes and hash it
-                hashedString = Utility.hashString(hashedNodes.get(i).concat(hashedNodes.get(i + 1)));
+                hashedString = Utility.hashStrings(hashedNodes.get(i), hashedNodes.get(i + 1));
             } else {
                 // Hash the last child node
                 hashedString = Utility.hashString(hashedNodes.get(i));
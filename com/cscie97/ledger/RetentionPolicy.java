@@ -0,0 +1,87 @@
+package com.cscie97.ledger;
+
+/**
+ * Determines which committed blocks a persisted Ledger keeps on the heap. A block is pruned once more than the
+ * maximum number of newer blocks have been committed after it, or once it was committed longer ago than the maximum
+ * age. A pruned block keeps only its header in the header chain and its record in the block segment file, and is
+ * loaded from the file when it is requested. The most recently committed block is never pruned.
+ *
+ * @author Burak Ufuktepe
+ */
+public class RetentionPolicy {
+
+    /**
+     * Class constant for the policy that keeps every block on the heap.
+     */
+    public static final RetentionPolicy KEEP_ALL = new RetentionPolicy(0, 0);
+
+    /**
+     * Max number of committed blocks kept on the heap, 0 for no limit.
+     */
+    private final int maxResidentBlocks;
+
+    /**
+     * Max time in milliseconds a committed block is kept on the heap, 0 for no limit.
+     */
+    private final long maxAgeMillis;
+
+    /**
+     * Class constructor that sets the limits of the policy.
+     *
+     * @param aMaxResidentBlocks  Max number of committed blocks kept on the heap, 0 for no limit
+     * @param aMaxAgeMillis  Max time in milliseconds a committed block is kept on the heap, 0 for no limit
+     * @throws IllegalArgumentException  if a limit is negative
+     */
+    public RetentionPolicy(int aMaxResidentBlocks, long aMaxAgeMillis) {
+        if (aMaxResidentBlocks < 0 || aMaxAgeMillis < 0) {
+            throw new IllegalArgumentException("retention limits must not be negative");
+        }
+        this.maxResidentBlocks = aMaxResidentBlocks;
+        this.maxAgeMillis = aMaxAgeMillis;
+    }
+
+    /**
+     * Retrieves the max number of committed blocks kept on the heap.
+     *
+     * @return  Max number of blocks, 0 for no limit
+     */
+    public int getMaxResidentBlocks() {
+        return this.maxResidentBlocks;
+    }
+
+    /**
+     * Retrieves the max time a committed block is kept on the heap.
+     *
+     * @return  Max time in milliseconds, 0 for no limit
+     */
+    public long getMaxAgeMillis() {
+        return this.maxAgeMillis;
+    }
+
+    /**
+     * Checks whether the policy keeps every block on the heap.
+     *
+     * @return  True if neither limit is set. Otherwise, returns false.
+     */
+    public boolean keepsAll() {
+        return this.maxResidentBlocks == 0 && this.maxAgeMillis == 0;
+    }
+
+    /**
+     * Checks whether a committed block should be pruned from the heap.
+     *
+     * @param aBlock  Committed block
+     * @param lastBlockNumber  Number of the most recently committed block
+     * @param now  Current time in milliseconds
+     * @return  True if the block should be pruned. Otherwise, returns false.
+     */
+    public boolean isExpired(Block aBlock, int lastBlockNumber, long now) {
+        if (aBlock.getBlockNumber() >= lastBlockNumber) {
+            return false;
+        }
+        if (this.maxResidentBlocks > 0 && lastBlockNumber - aBlock.getBlockNumber() >= this.maxResidentBlocks) {
+            return true;
+        }
+        return this.maxAgeMillis > 0 && now - aBlock.getCommitTime() > this.maxAgeMillis;
+    }
+}
@@ -0,0 +1,339 @@
+package com.cscie97.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only journal of the amounts a LedgerRouter has not settled yet, kept next to the root ledger. Every entry is
+ * a signed change to a receiver's credit, to the flow between two regions, or to both. An entry that carries a
+ * transaction ID only takes effect once that transaction is found in a committed block of its ledger, and is dropped
+ * if the ledger no longer holds the transaction. Entries are appended and forced to disk one at a time, and the
+ * journal is rewritten with the remaining amounts after each settlement.
+ *
+ * Each entry is stored as a line of tab-separated fields. A torn line at the end of the journal is discarded.
+ *
+ * @author Burak Ufuktepe
+ */
+public class SettlementJournal {
+
+    /**
+     * Class constant for the kind of entry that credits the receiver and adds to the flow between the regions. Used
+     * for cross-region transactions, which are processed by the payer's ledger.
+     */
+    public static final String CROSS_REGION_ENTRY = "cross-region";
+
+    /**
+     * Class constant for the kind of entry that changes the credit of a receiver. Used for settlement credits, which
+     * are processed by the receiver's ledger.
+     */
+    public static final String CREDIT_ENTRY = "credit";
+
+    /**
+     * Class constant for the kind of entry that changes the flow between two regions. Used for net settlements, which
+     * are processed by the root ledger.
+     */
+    public static final String FLOW_ENTRY = "flow";
+
+    /**
+     * Class constant for the number of fields in each line.
+     */
+    private static final int NUM_OF_FIELDS = 6;
+
+    /**
+     * Journal file.
+     */
+    private Path file;
+
+    /**
+     * Channel of the journal file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Class constructor that opens the journal file, creating it if it does not exist.
+     *
+     * @param aFile  Journal file
+     * @throws LedgerException  if the journal file cannot be opened
+     */
+    public SettlementJournal(Path aFile) throws LedgerException {
+        try {
+            this.channel = FileChannel.open(aFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new LedgerException("open settlement journal", "cannot open " + aFile);
+        }
+        this.file = aFile;
+    }
+
+    /**
+     * Reads every entry in the journal. A torn line ends the journal, and the file is truncated to the last complete
+     * line so that new entries are appended after it.
+     *
+     * @return  List of entries in the order they were appended
+     * @throws LedgerException  if the journal file cannot be read or holds a malformed entry
+     */
+    public synchronized List<Entry> readEntries() throws LedgerException {
+        List<Entry> entries = new ArrayList<>();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) this.channel.size());
+            while (buffer.hasRemaining() && this.channel.read(buffer, buffer.position()) >= 0) {
+                // Keep reading until the buffer is full
+            }
+            String content = new String(buffer.array(), StandardCharsets.UTF_8);
+
+            // Parse the complete lines
+            int end = content.lastIndexOf('\n') + 1;
+            for (String line : content.substring(0, end).split("\n")) {
+                if (!line.isEmpty()) {
+                    entries.add(decode(line, entries.size() + 1));
+                }
+            }
+
+            // Discard a torn line
+            if (end < content.length()) {
+                this.channel.truncate(content.substring(0, end).getBytes(StandardCharsets.UTF_8).length);
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new LedgerException("read settlement journal", "cannot read " + this.file);
+        }
+        return entries;
+    }
+
+    /**
+     * Appends an entry to the journal and forces it to disk.
+     *
+     * @param anEntry  Entry to be appended
+     * @throws LedgerException  if the entry cannot be written or synced
+     */
+    public synchronized void append(Entry anEntry) throws LedgerException {
+        try {
+            this.channel.position(this.channel.size());
+            write(this.channel, anEntry);
+            this.channel.force(false);
+        } catch (IOException e) {
+            throw new LedgerException("append settlement journal", e.getMessage());
+        }
+    }
+
+    /**
+     * Truncates the journal and rewrites it with the given entries. The new journal is written to a temporary file
+     * and moved over the journal, so a crash never leaves a partially rewritten journal behind.
+     *
+     * @param entries  Entries that make up the unsettled amounts
+     * @throws LedgerException  if the journal cannot be written, synced or replaced
+     */
+    public synchronized void rewrite(List<Entry> entries) throws LedgerException {
+        Path tempFile = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        FileChannel newChannel = null;
+        try {
+            newChannel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            for (Entry entry : entries) {
+                write(newChannel, entry);
+            }
+            newChannel.force(false);
+
+            // Replace the journal
+            Files.move(tempFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Keep appending to the old journal
+            if (newChannel != null) {
+                try {
+                    newChannel.close();
+                } catch (IOException closeError) {
+                    // The old journal is still intact
+                }
+            }
+            throw new LedgerException("rewrite settlement journal", e.getMessage());
+        }
+
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // The old journal has already been replaced
+        }
+        this.channel = newChannel;
+    }
+
+    /**
+     * Closes the channel. Every entry has already been forced to disk.
+     *
+     * @throws LedgerException  if the channel cannot be closed
+     */
+    public synchronized void close() throws LedgerException {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new LedgerException("close settlement journal", e.getMessage());
+        }
+    }
+
+    /**
+     * Writes an entry as a single line at the position of a channel.
+     *
+     * @param aChannel  Channel of the journal file
+     * @param anEntry  Entry to be written
+     * @throws IOException  if the line cannot be written
+     */
+    private static void write(FileChannel aChannel, Entry anEntry) throws IOException {
+        String line = String.join("\t", anEntry.kind, String.valueOf(anEntry.transactionId),
+                String.valueOf(anEntry.amount), nullToEmpty(anEntry.payerRegion), anEntry.receiverRegion,
+                nullToEmpty(anEntry.receiver)) + "\n";
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            aChannel.write(buffer);
+        }
+    }
+
+    /**
+     * Decodes an entry from a line of the journal.
+     *
+     * @param line  Line without the line break
+     * @param lineNumber  Number of the line, used in the error message
+     * @return  Decoded entry
+     * @throws LedgerException  if the line is not a valid entry
+     */
+    private static Entry decode(String line, int lineNumber) throws LedgerException {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != NUM_OF_FIELDS || !(fields[0].equals(CROSS_REGION_ENTRY)
+                || fields[0].equals(CREDIT_ENTRY) || fields[0].equals(FLOW_ENTRY))) {
+            throw new LedgerException("read settlement journal", "entry " + lineNumber + " is malformed");
+        }
+
+        try {
+            return new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                    fields[3].isEmpty() ? null : fields[3], fields[4], fields[5].isEmpty() ? null : fields[5]);
+        } catch (NumberFormatException e) {
+            throw new LedgerException("read settlement journal", "entry " + lineNumber + " is malformed");
+        }
+    }
+
+    /**
+     * Replaces a missing field with an empty string.
+     *
+     * @param aField  Field of an entry, may be null
+     * @return  Field, or an empty string if it is null
+     */
+    private static String nullToEmpty(String aField) {
+        return aField == null ? "" : aField;
+    }
+
+    /**
+     * Represents a signed change to the unsettled amounts, which may depend on a transaction being committed.
+     */
+    public static class Entry {
+
+        /**
+         * Kind of the entry, which determines the amounts it changes and the ledger of its transaction.
+         */
+        private final String kind;
+
+        /**
+         * ID of the transaction the entry depends on, 0 if the entry takes effect right away.
+         */
+        private final long transactionId;
+
+        /**
+         * Signed amount added to the credit, the flow, or both.
+         */
+        private final long amount;
+
+        /**
+         * Home region of the payer. Null for a credit entry.
+         */
+        private final String payerRegion;
+
+        /**
+         * Home region of the receiver.
+         */
+        private final String receiverRegion;
+
+        /**
+         * Receiver's unique address. Null for a flow entry.
+         */
+        private final String receiver;
+
+        /**
+         * Class constructor that sets the fields of the entry.
+         *
+         * @param aKind  Kind of the entry
+         * @param aTransactionId  ID of the transaction the entry depends on, 0 if it takes effect right away
+         * @param anAmount  Signed amount added to the credit, the flow, or both
+         * @param aPayerRegion  Home region of the payer, null for a credit entry
+         * @param aReceiverRegion  Home region of the receiver
+         * @param aReceiver  Receiver's unique address, null for a flow entry
+         */
+        public Entry(String aKind, long aTransactionId, long anAmount, String aPayerRegion, String aReceiverRegion,
+                     String aReceiver) {
+            this.kind = aKind;
+            this.transactionId = aTransactionId;
+            this.amount = anAmount;
+            this.payerRegion = aPayerRegion;
+            this.receiverRegion = aReceiverRegion;
+            this.receiver = aReceiver;
+        }
+
+        /**
+         * Retrieves the kind of the entry.
+         *
+         * @return  CROSS_REGION_ENTRY, CREDIT_ENTRY or FLOW_ENTRY
+         */
+        public String getKind() {
+            return this.kind;
+        }
+
+        /**
+         * Retrieves the ID of the transaction the entry depends on.
+         *
+         * @return  Transaction ID, 0 if the entry takes effect right away
+         */
+        public long getTransactionId() {
+            return this.transactionId;
+        }
+
+        /**
+         * Retrieves the signed amount of the entry.
+         *
+         * @return  Amount added to the credit, the flow, or both
+         */
+        public long getAmount() {
+            return this.amount;
+        }
+
+        /**
+         * Retrieves the home region of the payer.
+         *
+         * @return  Payer region, null for a credit entry
+         */
+        public String getPayerRegion() {
+            return this.payerRegion;
+        }
+
+        /**
+         * Retrieves the home region of the receiver.
+         *
+         * @return  Receiver region
+         */
+        public String getReceiverRegion() {
+            return this.receiverRegion;
+        }
+
+        /**
+         * Retrieves the receiver's address.
+         *
+         * @return  Receiver's unique address, null for a flow entry
+         */
+        public String getReceiver() {
+            return this.receiver;
+        }
+    }
+}
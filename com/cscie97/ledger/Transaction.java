@@ -21,14 +21,14 @@ public class Transaction {
     public static final Integer MAX_NOTE_LEN = 1024;
 
     /**
-     * Class variable for determining the next transaction ID.
+     * Class constant for maximum idempotency key length.
      */
-    private static int nextTransactionId = 1;
+    public static final Integer MAX_IDEMPOTENCY_KEY_LEN = 128;
 
     /**
      * Unique identifier for the transaction.
      */
-    private String transactionId;
+    private long transactionId;
 
     /**
      * Note for the transaction.
@@ -55,6 +55,12 @@ public class Transaction {
      */
     private String receiver;
 
+    /**
+     * Key chosen by the client that identifies retries of the same transaction. Null if the transaction has no key.
+     * Only used while processing, so it is neither persisted nor part of the transaction's hash.
+     */
+    private String idempotencyKey;
+
     /**
      * Class constructor.
      * Sets the transaction ID, amount, fee, note, payer and receiver addresses for the transaction.
@@ -66,7 +72,22 @@ public class Transaction {
      * @param aReceiver  Receiver's unique address
      */
     public Transaction(int anAmount, int aFee, String aNote, String aPayer, String aReceiver) {
-        this.transactionId = getNextTransactionId();
+        this(getNextTransactionId(), anAmount, aFee, aNote, aPayer, aReceiver);
+    }
+
+    /**
+     * Class constructor for restoring a transaction with a previously allocated transaction ID.
+     * Sets the transaction ID, amount, fee, note, payer and receiver addresses for the transaction.
+     *
+     * @param aTransactionId  Previously allocated transaction ID
+     * @param anAmount  Amount deducted from the payer's account & added to the receiver's account
+     * @param aFee  Transaction fee transferred from the payer's account to the master account
+     * @param aNote  Note for the transaction
+     * @param aPayer  Payer's unique address
+     * @param aReceiver  Receiver's unique address
+     */
+    Transaction(long aTransactionId, int anAmount, int aFee, String aNote, String aPayer, String aReceiver) {
+        this.transactionId = aTransactionId;
         this.amount = anAmount;
         this.fee = aFee;
         this.note = aNote;
@@ -86,6 +107,7 @@ public class Transaction {
         this.note = aTransaction.getNote();
         this.payer = aTransaction.getPayer();
         this.receiver = aTransaction.getReceiver();
+        this.idempotencyKey = aTransaction.getIdempotencyKey();
     }
 
     /**
@@ -93,7 +115,7 @@ public class Transaction {
      *
      * @return  Transaction's identifier
      */
-    public String getTransactionId() {
+    public long getTransactionId() {
         return this.transactionId;
     }
 
@@ -143,14 +165,31 @@ public class Transaction {
     }
 
     /**
-     * Returns a transaction ID for the next transaction.
+     * Retrieves the idempotency key of the transaction.
+     *
+     * @return  Idempotency key, null if the transaction has no key
+     */
+    public String getIdempotencyKey() {
+        return this.idempotencyKey;
+    }
+
+    /**
+     * Sets the idempotency key of the transaction.
+     *
+     * @param anIdempotencyKey  Idempotency key
+     */
+    void setIdempotencyKey(String anIdempotencyKey) {
+        this.idempotencyKey = anIdempotencyKey;
+    }
+
+    /**
+     * Returns a transaction ID for the next transaction. IDs are allocated by the TransactionIdAllocator, which is
+     * safe to call from multiple threads.
      *
      * @return  Next transaction ID
      */
-    public static String getNextTransactionId() {
-        String nextId = String.valueOf(nextTransactionId);
-        nextTransactionId += 1;
-        return nextId;
+    public static long getNextTransactionId() {
+        return TransactionIdAllocator.nextId();
     }
 
     /**
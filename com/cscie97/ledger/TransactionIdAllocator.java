@@ -0,0 +1,184 @@
+package com.cscie97.ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates unique transaction IDs. Each thread leases a range of IDs from a shared high-water mark and hands them out
+ * without synchronization until the range is exhausted, so concurrent transaction creation does not contend on a
+ * single counter. The high-water mark can be persisted to the files of several ledgers so that IDs are not reused
+ * after a restart of any of them. IDs that were leased but not handed out before a restart are skipped.
+ *
+ * @author Burak Ufuktepe
+ */
+public class TransactionIdAllocator {
+
+    /**
+     * Class constant for the number of IDs leased by a thread at a time.
+     */
+    public static final int LEASE_SIZE = 1000;
+
+    /**
+     * Class constant for the first transaction ID.
+     */
+    private static final long FIRST_ID = 1;
+
+    /**
+     * Next ID that has not been leased by any thread.
+     */
+    private static final AtomicLong highWaterMark = new AtomicLong(FIRST_ID);
+
+    /**
+     * Range leased by the current thread. Holds the next ID to hand out, the end of the range (exclusive) and the
+     * generation in which the range was leased.
+     */
+    private static final ThreadLocal<long[]> leasedRange = ThreadLocal.withInitial(() -> new long[] {0, 0, 0});
+
+    /**
+     * Incremented on every restore. Ranges leased in an earlier generation are discarded.
+     */
+    private static volatile long generation = 0;
+
+    /**
+     * Files that the high-water mark is persisted to, one per open ledger with a data directory. Guarded by the class.
+     */
+    private static final Set<Path> highWaterMarkFiles = new LinkedHashSet<>();
+
+    /**
+     * Private constructor since the allocator only has static members.
+     */
+    private TransactionIdAllocator() {
+    }
+
+    /**
+     * Returns the next transaction ID. Leases a new range if the current thread's range is exhausted.
+     *
+     * @return  Next transaction ID
+     */
+    public static long nextId() {
+        long[] range = leasedRange.get();
+        if (range[0] >= range[1] || range[2] != generation) {
+            range[2] = generation;
+            range[0] = lease();
+            range[1] = range[0] + LEASE_SIZE;
+        }
+        return range[0]++;
+    }
+
+    /**
+     * Leases a new range from the high-water mark and persists the new high-water mark to every file.
+     *
+     * @return  First ID of the leased range
+     */
+    private static synchronized long lease() {
+        long start = highWaterMark.getAndAdd(LEASE_SIZE);
+        for (Path file : highWaterMarkFiles) {
+            writeHighWaterMark(file, start + LEASE_SIZE);
+        }
+        return start;
+    }
+
+    /**
+     * Restores the high-water mark from a file and persists every further lease to the file as well as to the files
+     * that were restored before. If the file does not exist, it is created with the current high-water mark. Ranges
+     * that were leased before the restore are discarded by every thread so that no ID below the restored high-water
+     * mark is handed out.
+     *
+     * @param aFile  File that holds the high-water mark
+     * @throws LedgerException  if the file cannot be read or written or does not hold a valid high-water mark
+     */
+    public static synchronized void restore(Path aFile) throws LedgerException {
+        try {
+            if (Files.exists(aFile)) {
+                String content = Files.readString(aFile, StandardCharsets.UTF_8).trim();
+                long persisted = Long.parseLong(content);
+                highWaterMark.accumulateAndGet(persisted, Math::max);
+            }
+            writeHighWaterMark(aFile, highWaterMark.get());
+        } catch (IOException | UncheckedIOException e) {
+            throw new LedgerException("restore transaction IDs", "cannot access " + aFile);
+        } catch (NumberFormatException e) {
+            throw new LedgerException("restore transaction IDs", aFile + " does not hold a valid transaction ID");
+        }
+
+        highWaterMarkFiles.add(aFile);
+        generation++;
+    }
+
+    /**
+     * Stops persisting the high-water mark to a file, such as when its ledger is closed. The file keeps the last
+     * persisted high-water mark, so restoring from it again never hands out an ID that was leased before.
+     *
+     * @param aFile  File that holds the high-water mark
+     */
+    public static synchronized void unregister(Path aFile) {
+        highWaterMarkFiles.remove(aFile);
+    }
+
+    /**
+     * Raises the high-water mark above an ID that is already in use, such as the highest ID recovered from a ledger's
+     * committed blocks and write-ahead log, and persists it to every file. Ranges that were leased before are
+     * discarded by every thread if the high-water mark is raised.
+     *
+     * @param anId  Transaction ID that is already in use
+     * @throws LedgerException  if the high-water mark cannot be persisted
+     */
+    public static synchronized void reserveThrough(long anId) throws LedgerException {
+        if (anId < highWaterMark.get()) {
+            return;
+        }
+
+        highWaterMark.set(anId + 1);
+        for (Path file : highWaterMarkFiles) {
+            try {
+                writeHighWaterMark(file, highWaterMark.get());
+            } catch (UncheckedIOException e) {
+                throw new LedgerException("reserve transaction IDs", "cannot access " + file);
+            }
+        }
+        generation++;
+    }
+
+    /**
+     * Retrieves the next ID that has not been leased by any thread.
+     *
+     * @return  High-water mark
+     */
+    public static long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * Writes the high-water mark to a temporary file, forces it to disk and moves it over the given file, so a crash
+     * never leaves a partially written or lost high-water mark behind.
+     *
+     * @param aFile  File that holds the high-water mark
+     * @param aHighWaterMark  High-water mark to be written
+     */
+    private static void writeHighWaterMark(Path aFile, long aHighWaterMark) {
+        Path tempFile = aFile.resolveSibling(aFile.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer content = ByteBuffer.wrap(String.valueOf(aHighWaterMark).getBytes(StandardCharsets.UTF_8));
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                channel.force(false);
+            }
+            Files.move(tempFile, aFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.cscie97.ledger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Holds the transactions that have been accepted by the Ledger but not yet included in a block. Transactions are
+ * ordered by fee (highest first) and then by arrival (earliest first). The pool has a bounded size; when it is full
+ * a new transaction is only accepted if it pays a higher fee than the lowest priority transaction, which is evicted.
+ * <p>
+ * The Ledger cuts a block as soon as the pool holds a block's worth of transactions, so between submissions the pool
+ * normally holds fewer than {@link Block#MAX_NUM_OF_TXNS} transactions. It only grows beyond that while a batch is
+ * being admitted, while concurrent submissions wait for their sync, or when the pooled transactions cannot fill a
+ * valid block yet. As a result, fee ordering only picks among the transactions pooled when a block is cut, and the
+ * capacity, and with it eviction, is only reached by a batch or a burst of concurrent submissions of that size.
+ *
+ * @author Burak Ufuktepe
+ */
+public class TransactionPool {
+
+    /**
+     * Class constant for the default max number of transactions in the pool.
+     */
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    /**
+     * Orders entries by fee in descending order and then by arrival in ascending order.
+     */
+    private static final Comparator<PoolEntry> PRIORITY_ORDER = Comparator
+            .comparingInt((PoolEntry entry) -> entry.txn.getFee()).reversed()
+            .thenComparingLong(entry -> entry.arrival);
+
+    /**
+     * Max number of transactions in the pool.
+     */
+    private int capacity;
+
+    /**
+     * Arrival number of the next transaction added to the pool.
+     */
+    private long nextArrival;
+
+    /**
+     * Entries ordered by priority.
+     */
+    private TreeSet<PoolEntry> entries;
+
+    /**
+     * Maps transaction IDs to entries.
+     */
+    private Map<Long, PoolEntry> entryMap;
+
+    /**
+     * Class constructor that sets the capacity and initializes the entries.
+     *
+     * @param aCapacity  Max number of transactions in the pool
+     */
+    public TransactionPool(int aCapacity) {
+        this.capacity = aCapacity;
+        this.nextArrival = 0;
+        this.entries = new TreeSet<>(PRIORITY_ORDER);
+        this.entryMap = new HashMap<>();
+    }
+
+    /**
+     * Retrieves the number of transactions in the pool.
+     *
+     * @return  Number of transactions
+     */
+    public int size() {
+        return this.entryMap.size();
+    }
+
+    /**
+     * Determines whether the pool has reached its capacity.
+     *
+     * @return  True if the pool is full. Otherwise, returns false.
+     */
+    public boolean isFull() {
+        return this.entryMap.size() >= this.capacity;
+    }
+
+    /**
+     * Determines whether the pool contains a transaction with the given ID.
+     *
+     * @param txnId  Unique identifier of the transaction
+     * @return  True if the pool contains the transaction. Otherwise, returns false.
+     */
+    public boolean contains(long txnId) {
+        return this.entryMap.containsKey(txnId);
+    }
+
+    /**
+     * Adds a transaction to the pool. The caller is responsible for making room in the pool.
+     *
+     * @param txn  Transaction to be added
+     */
+    public void add(Transaction txn) {
+        PoolEntry entry = new PoolEntry(txn, this.nextArrival++);
+        this.entries.add(entry);
+        this.entryMap.put(txn.getTransactionId(), entry);
+    }
+
+    /**
+     * Removes a transaction from the pool.
+     *
+     * @param txn  Transaction to be removed
+     */
+    public void remove(Transaction txn) {
+        PoolEntry entry = this.entryMap.remove(txn.getTransactionId());
+        if (entry != null) {
+            this.entries.remove(entry);
+        }
+    }
+
+    /**
+     * Retrieves the transaction with the lowest priority.
+     *
+     * @return  Lowest priority transaction, null if the pool is empty
+     */
+    public Transaction getLowest() {
+        return this.entries.isEmpty() ? null : this.entries.last().txn;
+    }
+
+    /**
+     * Determines whether the given transaction would have a higher priority than the lowest priority transaction in
+     * the pool. Since a new transaction arrives after every pooled transaction, it must pay a strictly higher fee.
+     *
+     * @param txn  Transaction to be compared
+     * @return  True if the transaction outranks the lowest priority transaction. Otherwise, returns false.
+     */
+    public boolean outranksLowest(Transaction txn) {
+        return this.entries.isEmpty() || txn.getFee() > this.entries.last().txn.getFee();
+    }
+
+    /**
+     * Retrieves the pooled transactions in priority order.
+     *
+     * @return  List of transactions ordered by fee and then by arrival
+     */
+    public List<Transaction> getByPriority() {
+        List<Transaction> txns = new ArrayList<>(this.entries.size());
+        for (PoolEntry entry : this.entries) {
+            txns.add(entry.txn);
+        }
+        return txns;
+    }
+
+    /**
+     * Retrieves the pooled transactions in arrival order.
+     *
+     * @return  List of transactions ordered by arrival
+     */
+    public List<Transaction> getByArrival() {
+        List<PoolEntry> sorted = new ArrayList<>(this.entries);
+        sorted.sort(Comparator.comparingLong(entry -> entry.arrival));
+
+        List<Transaction> txns = new ArrayList<>(sorted.size());
+        for (PoolEntry entry : sorted) {
+            txns.add(entry.txn);
+        }
+        return txns;
+    }
+
+    /**
+     * Pairs a pooled transaction with its arrival number.
+     */
+    private static class PoolEntry {
+
+        /**
+         * Pooled transaction.
+         */
+        private final Transaction txn;
+
+        /**
+         * Order in which the transaction arrived at the pool.
+         */
+        private final long arrival;
+
+        /**
+         * Class constructor that sets the transaction and its arrival number.
+         *
+         * @param aTxn  Pooled transaction
+         * @param anArrival  Order in which the transaction arrived at the pool
+         */
+        private PoolEntry(Transaction aTxn, long anArrival) {
+            this.txn = aTxn;
+            this.arrival = anArrival;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.cscie97.ledger;
+
+/**
+ * Represents the outcome of a transaction that was submitted as part of a batch. A transaction is either accepted
+ * into the current block or rejected with a reason.
+ *
+ * @author Burak Ufuktepe
+ */
+public class TransactionResult {
+
+    /**
+     * Unique identifier of the submitted transaction.
+     */
+    private long transactionId;
+
+    /**
+     * Reason for the rejection. Null if the transaction was accepted.
+     */
+    private String reason;
+
+    /**
+     * Class constructor that sets the transaction ID and the rejection reason.
+     *
+     * @param aTransactionId  Unique identifier of the submitted transaction
+     * @param aReason  Reason for the rejection, null if the transaction was accepted
+     */
+    public TransactionResult(long aTransactionId, String aReason) {
+        this.transactionId = aTransactionId;
+        this.reason = aReason;
+    }
+
+    /**
+     * Retrieves the unique ID of the submitted transaction.
+     *
+     * @return  Transaction's identifier
+     */
+    public long getTransactionId() {
+        return this.transactionId;
+    }
+
+    /**
+     * Determines whether the transaction was accepted.
+     *
+     * @return  True if the transaction was accepted. Otherwise, returns false.
+     */
+    public boolean isAccepted() {
+        return this.reason == null;
+    }
+
+    /**
+     * Retrieves the reason for the rejection.
+     *
+     * @return  Rejection reason, null if the transaction was accepted
+     */
+    public String getReason() {
+        return this.reason;
+    }
+
+    /**
+     * Returns the string representation of the outcome that includes the transaction ID and the rejection reason if
+     * the transaction was rejected.
+     *
+     * @return  String representation of the TransactionResult object
+     */
+    public String toString() {
+        if (this.isAccepted()) {
+            return "Transaction " + this.transactionId + " accepted";
+        }
+        return "Transaction " + this.transactionId + " rejected: " + this.reason;
+    }
+}
@@ -0,0 +1,525 @@
+package com.cscie97.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the account creations and transactions accepted by a Ledger that have not been committed to a
+ * block yet. Replaying the log rebuilds the Ledger's open block after a restart. Records are written to a FileChannel
+ * and made durable by group commit: a background thread forces the channel to disk once per sync window, and every
+ * appender waits until a force covers its record. Many concurrent appends therefore share a single fsync. A sync
+ * window of 0 forces the channel on every append.
+ *
+ * Each record is stored as its payload length, a CRC32 checksum of the payload, and the payload. A torn or corrupt
+ * record at the end of the log is discarded on replay.
+ *
+ * @author Burak Ufuktepe
+ */
+public class WriteAheadLog {
+
+    /**
+     * Class constant for the default sync window in milliseconds.
+     */
+    public static final long DEFAULT_SYNC_WINDOW_MILLIS = 5;
+
+    /**
+     * Class constant for the record type of an account creation.
+     */
+    public static final byte ACCOUNT_RECORD = 1;
+
+    /**
+     * Class constant for the record type of an accepted transaction.
+     */
+    public static final byte TRANSACTION_RECORD = 2;
+
+    /**
+     * Class constant for the size of the length and checksum that precede each payload.
+     */
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    /**
+     * Log file.
+     */
+    private Path file;
+
+    /**
+     * Channel of the log file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Max time in milliseconds between an append and the fsync that makes it durable.
+     */
+    private long syncWindowMillis;
+
+    /**
+     * Position up to which records have been written to the channel. Positions keep increasing when the log is
+     * reset, so a position returned before a reset is covered by every sync after it.
+     */
+    private long writtenPosition;
+
+    /**
+     * Position up to which records have been forced to disk.
+     */
+    private long syncedPosition;
+
+    /**
+     * Position that corresponds to the start of the log file.
+     */
+    private long baseOffset;
+
+    /**
+     * Error raised by the last force, reported to the waiting appenders. Null if the last force succeeded.
+     */
+    private IOException syncError;
+
+    /**
+     * Background thread that forces the channel once per sync window. Null if the sync window is 0.
+     */
+    private Thread flusher;
+
+    /**
+     * Indicates whether the log has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Class constructor that opens the log file, creating it if it does not exist, and starts the flusher thread.
+     *
+     * @param aFile  Log file
+     * @param aSyncWindowMillis  Max time in milliseconds between an append and its fsync, 0 to sync every append
+     * @throws LedgerException  if the log file cannot be opened or the sync window is negative
+     */
+    public WriteAheadLog(Path aFile, long aSyncWindowMillis) throws LedgerException {
+        if (aSyncWindowMillis < 0) {
+            throw new LedgerException("open write-ahead log", "sync window cannot be negative");
+        }
+
+        try {
+            this.channel = FileChannel.open(aFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.writtenPosition = this.channel.size();
+        } catch (IOException e) {
+            throw new LedgerException("open write-ahead log", "cannot open " + aFile);
+        }
+
+        this.file = aFile;
+        this.syncWindowMillis = aSyncWindowMillis;
+        this.syncedPosition = this.writtenPosition;
+
+        if (this.syncWindowMillis > 0) {
+            this.flusher = new Thread(this::flushLoop, "wal-flusher-" + aFile.getFileName());
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    /**
+     * Reads every intact record in the log. A torn or corrupt record ends the log, and the file is truncated to the
+     * last intact record so that new records are appended after it.
+     *
+     * @return  List of records in the order they were appended
+     * @throws LedgerException  if the log file cannot be read
+     */
+    public synchronized List<Record> readRecords() throws LedgerException {
+        List<Record> records = new ArrayList<>();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) this.channel.size());
+            while (buffer.hasRemaining() && this.channel.read(buffer, buffer.position()) >= 0) {
+                // Keep reading until the buffer is full
+            }
+            buffer.flip();
+
+            CRC32 crc = new CRC32();
+            long validPosition = 0;
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+
+                ByteBuffer payload = buffer.slice();
+                payload.limit(length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                records.add(decode(payload));
+                buffer.position(buffer.position() + length);
+                validPosition = buffer.position();
+            }
+
+            // Discard a torn record at the end of the log
+            if (validPosition < this.channel.size()) {
+                this.channel.truncate(validPosition);
+                this.channel.force(false);
+            }
+            this.baseOffset = 0;
+            this.writtenPosition = validPosition;
+            this.syncedPosition = validPosition;
+        } catch (IOException e) {
+            throw new LedgerException("read write-ahead log", e.getMessage());
+        }
+        return records;
+    }
+
+    /**
+     * Appends an account creation and waits until it is durable.
+     *
+     * @param anAddress  Unique address of the created account
+     * @throws LedgerException  if the record cannot be written or synced
+     */
+    public void appendAccount(String anAddress) throws LedgerException {
+        this.sync(this.writeAccount(anAddress));
+    }
+
+    /**
+     * Writes an account creation without waiting until it is durable.
+     *
+     * @param anAddress  Unique address of the created account
+     * @return  Position in the log after the record
+     * @throws LedgerException  if the record cannot be written
+     */
+    private long writeAccount(String anAddress) throws LedgerException {
+        byte[] address = anAddress.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + Integer.BYTES + address.length);
+        payload.put(ACCOUNT_RECORD);
+        putBytes(payload, address);
+        return this.write(payload);
+    }
+
+    /**
+     * Writes an accepted transaction without waiting until it is durable. The caller makes it durable by calling
+     * sync, so a batch of transactions can share a single sync.
+     *
+     * @param txn  Accepted transaction
+     * @return  Position in the log after the record
+     * @throws LedgerException  if the record cannot be written
+     */
+    public long writeTransaction(Transaction txn) throws LedgerException {
+        byte[] note = txn.getNote().getBytes(StandardCharsets.UTF_8);
+        byte[] payer = txn.getPayer().getBytes(StandardCharsets.UTF_8);
+        byte[] receiver = txn.getReceiver().getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer payload = ByteBuffer.allocate(1 + Long.BYTES + 2 * Integer.BYTES
+                + 3 * Integer.BYTES + note.length + payer.length + receiver.length);
+        payload.put(TRANSACTION_RECORD);
+        payload.putLong(txn.getTransactionId());
+        payload.putInt(txn.getAmount());
+        payload.putInt(txn.getFee());
+        putBytes(payload, note);
+        putBytes(payload, payer);
+        putBytes(payload, receiver);
+        return this.write(payload);
+    }
+
+    /**
+     * Writes a record to the channel.
+     *
+     * @param payload  Encoded record
+     * @return  Position in the log after the record
+     * @throws LedgerException  if the log is closed or the record cannot be written
+     */
+    private synchronized long write(ByteBuffer payload) throws LedgerException {
+        if (this.closed) {
+            throw new LedgerException("write to write-ahead log", "log is closed");
+        }
+
+        payload.flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.remaining());
+        record.putInt(payload.remaining());
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        record.flip();
+
+        try {
+            while (record.hasRemaining()) {
+                this.writtenPosition += this.channel.write(record, this.writtenPosition - this.baseOffset);
+            }
+        } catch (IOException e) {
+            throw new LedgerException("write to write-ahead log", e.getMessage());
+        }
+
+        // Wake up the flusher
+        this.notifyAll();
+        return this.writtenPosition;
+    }
+
+    /**
+     * Waits until the log is durable up to the given position. With a sync window of 0, forces the channel directly.
+     *
+     * @param aPosition  Position in the log that must be durable
+     * @throws LedgerException  if the channel cannot be forced
+     */
+    public synchronized void sync(long aPosition) throws LedgerException {
+        if (this.syncWindowMillis == 0) {
+            if (this.syncedPosition < aPosition) {
+                try {
+                    this.channel.force(false);
+                } catch (IOException e) {
+                    throw new LedgerException("sync write-ahead log", e.getMessage());
+                }
+                this.syncedPosition = this.writtenPosition;
+            }
+            return;
+        }
+
+        // Wait for the flusher, releasing the lock so that other appenders can join the same fsync
+        while (this.syncedPosition < aPosition) {
+            if (this.syncError != null) {
+                throw new LedgerException("sync write-ahead log", this.syncError.getMessage());
+            }
+            if (this.closed) {
+                throw new LedgerException("sync write-ahead log", "log is closed");
+            }
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LedgerException("sync write-ahead log", "interrupted while waiting for sync");
+            }
+        }
+    }
+
+    /**
+     * Truncates the log and rewrites it with the given account creations and transactions. Called when blocks are
+     * committed so that the log only holds the changes that are not yet included in a committed block.
+     *
+     * @param addresses  Addresses of the accounts that are not in a committed block yet
+     * @param txns  Transactions that are not in a committed block yet, in arrival order
+     * @throws LedgerException  if the log cannot be truncated, written or synced
+     */
+    public synchronized void reset(List<String> addresses, List<Transaction> txns) throws LedgerException {
+        // Write the new log to a temporary file so that a crash never leaves a partially rewritten log behind
+        Path tempFile = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        FileChannel oldChannel = this.channel;
+        long oldWrittenPosition = this.writtenPosition;
+        long oldBaseOffset = this.baseOffset;
+        try {
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.baseOffset = this.writtenPosition;
+
+            for (String address : addresses) {
+                this.writeAccount(address);
+            }
+            for (Transaction txn : txns) {
+                this.writeTransaction(txn);
+            }
+            this.channel.force(false);
+
+            // Replace the log
+            Files.move(tempFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | LedgerException e) {
+            // Keep appending to the old log
+            if (this.channel != oldChannel) {
+                try {
+                    this.channel.close();
+                } catch (IOException closeError) {
+                    // The old log is still intact
+                }
+            }
+            this.channel = oldChannel;
+            this.writtenPosition = oldWrittenPosition;
+            this.baseOffset = oldBaseOffset;
+            throw new LedgerException("reset write-ahead log", e.getMessage());
+        }
+
+        try {
+            oldChannel.close();
+        } catch (IOException e) {
+            // The old log has already been replaced
+        }
+        this.syncedPosition = this.writtenPosition;
+        this.notifyAll();
+    }
+
+    /**
+     * Stops the flusher, forces the remaining records to disk, and closes the channel.
+     *
+     * @throws LedgerException  if the channel cannot be forced or closed
+     */
+    public void close() throws LedgerException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.notifyAll();
+        }
+
+        try {
+            if (this.flusher != null) {
+                this.flusher.join();
+            }
+            this.channel.force(false);
+            this.channel.close();
+        } catch (IOException e) {
+            throw new LedgerException("close write-ahead log", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LedgerException("close write-ahead log", "interrupted while closing");
+        }
+    }
+
+    /**
+     * Forces the channel once per sync window while there are written records that are not durable yet, and wakes up
+     * the appenders that are waiting for them.
+     */
+    private void flushLoop() {
+        while (true) {
+            synchronized (this) {
+                // Sleep until there is something to sync
+                while (!this.closed && this.syncedPosition >= this.writtenPosition) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (this.closed) {
+                    return;
+                }
+            }
+
+            // Let more appenders join this fsync
+            try {
+                Thread.sleep(this.syncWindowMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            FileChannel target;
+            long targetPosition;
+            synchronized (this) {
+                target = this.channel;
+                targetPosition = this.writtenPosition;
+            }
+
+            // Force outside the lock so that appends can continue
+            IOException error = null;
+            try {
+                target.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            synchronized (this) {
+                // A reset replaces the channel and syncs the new log itself
+                if (target == this.channel) {
+                    if (error == null) {
+                        this.syncedPosition = Math.max(this.syncedPosition, targetPosition);
+                    }
+                    this.syncError = error;
+                    this.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes a record payload.
+     *
+     * @param payload  Encoded record
+     * @return  Decoded record
+     * @throws IOException  if the record type is unknown
+     */
+    private static Record decode(ByteBuffer payload) throws IOException {
+        byte type = payload.get();
+        if (type == ACCOUNT_RECORD) {
+            return new Record(getString(payload), null);
+        } else if (type == TRANSACTION_RECORD) {
+            long txnId = payload.getLong();
+            int amount = payload.getInt();
+            int fee = payload.getInt();
+            String note = getString(payload);
+            String payer = getString(payload);
+            String receiver = getString(payload);
+            return new Record(null, new Transaction(txnId, amount, fee, note, payer, receiver));
+        }
+        throw new IOException("unknown record type " + type);
+    }
+
+    /**
+     * Writes a length-prefixed byte array to a buffer.
+     *
+     * @param buffer  Buffer to be written to
+     * @param bytes  Bytes to be written
+     */
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from a buffer.
+     *
+     * @param buffer  Buffer to be read from
+     * @return  Decoded string
+     */
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Represents a record read from the log, which is either an account creation or an accepted transaction.
+     */
+    public static class Record {
+
+        /**
+         * Address of the created account. Null if this is a transaction record.
+         */
+        private final String address;
+
+        /**
+         * Accepted transaction. Null if this is an account record.
+         */
+        private final Transaction transaction;
+
+        /**
+         * Class constructor that sets the address or the transaction.
+         *
+         * @param anAddress  Address of the created account, null for a transaction record
+         * @param aTransaction  Accepted transaction, null for an account record
+         */
+        private Record(String anAddress, Transaction aTransaction) {
+            this.address = anAddress;
+            this.transaction = aTransaction;
+        }
+
+        /**
+         * Retrieves the address of the created account.
+         *
+         * @return  Account address, null if this is a transaction record
+         */
+        public String getAddress() {
+            return this.address;
+        }
+
+        /**
+         * Retrieves the accepted transaction.
+         *
+         * @return  Transaction, null if this is an account record
+         */
+        public Transaction getTransaction() {
+            return this.transaction;
+        }
+    }
+}
@@ -1,61 +1,107 @@
 package com.cscie97.store;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * Represents a location within a store.
+ * Represents a location within a store. Addresses are immutable values that can be used as map keys. Addresses are
+ * created through the factory methods, which intern them in a cache per store, so parsing the same address string
+ * again returns the cached Address without splitting the string.
  */
-public class Address {
+public final class Address {
+
+    /**
+     * Class constant for the max number of addresses interned per store. Addresses beyond the limit are still
+     * created, but not cached.
+     */
+    private static final int MAX_INTERNED_PER_STORE = 4096;
+
+    /**
+     * Class variable that maps store IDs to maps of address strings and interned addresses.
+     */
+    private static final Map<String, Map<String, Address>> internCache = new ConcurrentHashMap<>();
 
     /**
      * Unique ID of the store
      */
-    private String storeId;
+    private final String storeId;
 
     /**
      * Unique ID of the aisle
      */
-    private String aisleId;
+    private final String aisleId;
 
     /**
      * Unique ID of the shelf
      */
-    private String shelfId;
+    private final String shelfId;
+
+    /**
+     * String in the form of storeId:aisleId or storeId:aisleId:shelfId, computed once.
+     */
+    private final String text;
+
+    /**
+     * Hash code computed once from the store, aisle, and shelf IDs.
+     */
+    private final int hash;
 
     /**
      * Class constructor that accepts a storeId, aisleId, and shelfId as parameters.
      *
      * @param storeId  Unique ID of the store
      * @param aisleId  Unique ID of the aisle
-     * @param shelfId  Unique ID of the shelf
+     * @param shelfId  Unique ID of the shelf, null for an aisle address
      */
-    public Address(String storeId, String aisleId, String shelfId) {
+    private Address(String storeId, String aisleId, String shelfId) {
         this.storeId = storeId;
         this.aisleId = aisleId;
         this.shelfId = shelfId;
+        this.text = shelfId == null ? storeId + ":" + aisleId : storeId + ":" + aisleId + ":" + shelfId;
+        this.hash = Objects.hash(storeId, aisleId, shelfId);
+    }
+
+    /**
+     * Retrieves the interned address of a shelf.
+     *
+     * @param storeId  Unique ID of the store
+     * @param aisleId  Unique ID of the aisle
+     * @param shelfId  Unique ID of the shelf
+     * @return  The Address object
+     */
+    public static Address of(String storeId, String aisleId, String shelfId) {
+        return intern(new Address(storeId, aisleId, shelfId));
     }
 
     /**
-     * Class constructor that accepts a storeId and aisleId as parameters. Sets the shelfId to null.
+     * Retrieves the interned address of an aisle. The shelfId of the address is null.
      *
      * @param storeId  Unique ID of the store
      * @param aisleId  Unique ID of the aisle
+     * @return  The Address object
      */
-    public Address(String storeId, String aisleId) {
-        this.storeId = storeId;
-        this.aisleId = aisleId;
-        this.shelfId = null;
+    public static Address of(String storeId, String aisleId) {
+        return intern(new Address(storeId, aisleId, null));
     }
 
     /**
-     * Constructs an Address object from a string in the form of storeId:aisleId.
+     * Constructs an Address object from a string in the form of storeId:aisleId. A shelf ID at the end of the string
+     * is ignored.
      *
      * @param aisleAddress  Aisle address in the form of storeId:aisleId
      * @return  The Address object
      */
     public static Address constructFromAisleAddress(String aisleAddress) {
+        Address cached = lookup(aisleAddress);
+        if (cached != null) {
+            return cached.toAisleAddress();
+        }
+
         String[] addressComponents;
         addressComponents = extractAisleAddress(aisleAddress);
 
-        return new Address(addressComponents[0], addressComponents[1]);
+        return of(addressComponents[0], addressComponents[1]);
     }
 
     /**
@@ -65,10 +111,51 @@ public class Address {
      * @return  The Address object
      */
     public static Address constructFromShelfAddress(String shelfAddress) {
+        Address cached = lookup(shelfAddress);
+        if (cached != null && cached.shelfId != null) {
+            return cached;
+        }
+
         String[] addressComponents;
         addressComponents = extractShelfAddress(shelfAddress);
 
-        return new Address(addressComponents[0], addressComponents[1], addressComponents[2]);
+        return of(addressComponents[0], addressComponents[1], addressComponents[2]);
+    }
+
+    /**
+     * Finds an interned address by its string.
+     *
+     * @param addressString  String in the form of storeId:aisleId or storeId:aisleId:shelfId
+     * @return  The interned Address object, null if the string is not cached
+     */
+    private static Address lookup(String addressString) {
+        int end = addressString.indexOf(':');
+        if (end < 0) {
+            return null;
+        }
+        Map<String, Address> storeCache = internCache.get(addressString.substring(0, end));
+        return storeCache == null ? null : storeCache.get(addressString);
+    }
+
+    /**
+     * Returns the interned address that is equal to the given address, interning the given address if there is none
+     * and the store's cache is not full.
+     *
+     * @param address  Newly created address
+     * @return  The interned Address object
+     */
+    private static Address intern(Address address) {
+        Map<String, Address> storeCache = internCache.computeIfAbsent(address.storeId,
+                k -> new ConcurrentHashMap<>());
+        Address cached = storeCache.get(address.text);
+        if (cached != null) {
+            return cached;
+        }
+        if (storeCache.size() >= MAX_INTERNED_PER_STORE) {
+            return address;
+        }
+        cached = storeCache.putIfAbsent(address.text, address);
+        return cached == null ? address : cached;
     }
 
     /**
@@ -101,32 +188,63 @@ public class Address {
     }
 
     /**
-     * Checks if the address matches the given address.
+     * Retrieves the address of the aisle that contains this address.
+     *
+     * @return  This address if it is an aisle address. Otherwise, the interned address of its aisle.
+     */
+    public Address toAisleAddress() {
+        return this.shelfId == null ? this : of(this.storeId, this.aisleId);
+    }
+
+    /**
+     * Checks if the address matches the given address. Two shelf addresses match if they are equal. Otherwise, the
+     * addresses match if they are in the same aisle.
      *
      * @param anotherAddress  Address to be checked against
      * @return  True if the addresses match. Otherwise, returns false.
      */
-    public boolean equals(Address anotherAddress) {
+    public boolean matches(Address anotherAddress) {
         if (this.shelfId != null && anotherAddress.getShelfId() != null) {
-            return this.toString().equals(anotherAddress.toString());
+            return this.equals(anotherAddress);
         }
 
         return this.storeId.equals(anotherAddress.storeId) && this.aisleId.equals(anotherAddress.aisleId);
     }
 
+    /**
+     * Checks if the given object is an address with the same store, aisle, and shelf IDs.
+     *
+     * @param anObject  Object to be checked against
+     * @return  True if the addresses are equal. Otherwise, returns false.
+     */
+    public boolean equals(Object anObject) {
+        if (this == anObject) {
+            return true;
+        }
+        if (!(anObject instanceof Address)) {
+            return false;
+        }
+        Address anotherAddress = (Address) anObject;
+        return this.hash == anotherAddress.hash && this.storeId.equals(anotherAddress.storeId)
+                && this.aisleId.equals(anotherAddress.aisleId) && Objects.equals(this.shelfId, anotherAddress.shelfId);
+    }
+
+    /**
+     * Returns the hash code computed when the address was created.
+     *
+     * @return  Hash code of the address
+     */
+    public int hashCode() {
+        return this.hash;
+    }
+
     /**
      * Returns a string representation of the address.
      *
      * @return  String in the form of storeId:aisleId or storeId:aisleId:shelfId
      */
     public String toString() {
-        String output = this.storeId + ":" + this.aisleId;
-
-        if (this.shelfId != null) {
-            output += ":" + this.shelfId;
-        }
-
-        return output;
+        return this.text;
     }
 
     /**
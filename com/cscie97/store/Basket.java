@@ -1,11 +1,9 @@
 package com.cscie97.store;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
- * Represents a shopping basket used by the customers to carry product items. It has a unique ID and a
- * productCountMap that maps Product objects to their count in the basket.
+ * Represents a shopping basket used by the customers to carry product items. It has a unique ID and the counts of the
+ * products in the basket keyed by product ID. The total price and weight of the items are kept up to date as items
+ * are added and removed, so reading them does not iterate over the basket.
  *
  * @author Burak Ufuktepe
  */
@@ -23,18 +21,33 @@ public class Basket {
 	private String id;
 
 	/**
-	 * Map of Product objects that are contained in the basket and their count.
+	 * Products that are contained in the basket and their count, keyed by product ID.
+	 */
+	private ProductCounts productCounts;
+
+	/**
+	 * Total price of the items in the basket.
 	 */
-	private Map<Product, Integer> productCountMap;
+	private volatile int totalPrice;
 
 	/**
-	 * Class constructor. Sets the unique ID and initializes productCountMap.
+	 * Total weight of the items in the basket in ounces.
+	 */
+	private volatile double totalWeight;
+
+	/**
+	 * Number of times the basket has been assigned to a customer. Identifies the current assignment of the basket.
+	 */
+	private volatile int assignmentNumber;
+
+	/**
+	 * Class constructor. Sets the unique ID and initializes productCounts.
 	 *
 	 * @param anId  Unique ID of the basket
 	 */
 	public Basket(String anId) {
 		this.id = anId;
-		this.productCountMap = new HashMap<>();
+		this.productCounts = new ProductCounts();
 		System.out.println(this.id + " created");
 	}
 
@@ -47,6 +60,22 @@ public class Basket {
 		return this.id;
 	}
 
+	/**
+	 * Retrieves the number that identifies the current assignment of the basket to a customer.
+	 *
+	 * @return  Number of times the basket has been assigned, 0 if it has never been assigned
+	 */
+	public int getAssignmentNumber() {
+		return this.assignmentNumber;
+	}
+
+	/**
+	 * Records that the basket has been assigned to a customer.
+	 */
+	synchronized void assigned() {
+		this.assignmentNumber++;
+	}
+
 	/**
 	 * Add a product item to the basket. Checks if quantity is positive and throws an IllegalArgumentException if
 	 * quantity is not positive.
@@ -55,28 +84,18 @@ public class Basket {
 	 * @param quantity  Number of items to be added to the basket
 	 * @return  the Basket object
 	 */
-	public Basket addToBasket(Product aProduct, int quantity) {
+	public synchronized Basket addToBasket(Product aProduct, int quantity) {
 		// Check if quantity is positive
 		if (quantity <= 0) {
 			throw new IllegalArgumentException("Quantity must be a positive integer");
 		}
 
-		// Get the actual product object from productCountMap
-		Product product = this.getProduct(aProduct);
-
-		// Add the product to productCountMap if it does not already exist
-		if (product == null) {
-			product = aProduct;
-			this.productCountMap.put(product, 0);
-		}
-
-		int preQuantity = this.productCountMap.get(product);
-		int postQuantity = this.productCountMap.get(product) + quantity;
+		// Update the quantity and the totals. The product is added if it does not already exist.
+		int postQuantity = this.productCounts.change(aProduct, quantity);
+		int preQuantity = postQuantity - quantity;
+		this.addToTotals(aProduct, quantity);
 
-		// Update the quantity
-		this.productCountMap.put(product, postQuantity);
-
-		System.out.println("The number of " + product.getId() + " in " + this.id + " changed from " + preQuantity
+		System.out.println("The number of " + aProduct.getId() + " in " + this.id + " changed from " + preQuantity
 				+ " to " + postQuantity);
 
 		return this;
@@ -93,36 +112,31 @@ public class Basket {
 	 * @param quantity  Number of product items to be removed from the basket
 	 * @return  The Basket object
 	 */
-	public Basket removeFromBasket(Product aProduct, int quantity) {
+	public synchronized Basket removeFromBasket(Product aProduct, int quantity) {
 		// Check if quantity is positive
 		if (quantity <= 0) {
 			throw new IllegalArgumentException("Quantity must be a positive integer");
 		}
 
-		// Get the actual product object from productCountMap
-		Product product = this.getProduct(aProduct);
+		int preQuantity = this.productCounts.getCount(aProduct.getId());
 
 		// Check if the product exists in the basket
-		if (product == null) {
+		if (preQuantity == 0) {
 			throw new IllegalArgumentException("Product " + aProduct.getId() + " was not found in " + this.id);
 		}
 
-		int preQuantity = this.productCountMap.get(product);
-		int postQuantity = this.productCountMap.get(product) - quantity;
-
 		// Check if the new quantity is negative
-		if (postQuantity < 0) {
+		if (preQuantity - quantity < 0) {
 			throw new IllegalArgumentException("New quantity cannot be negative");
 		}
 
-		// Remove product from productCountMap if newQuantity is zero. Otherwise, update the quantity for the product.
-		if (postQuantity == 0) {
-			this.productCountMap.remove(product);
-		} else {
-			this.productCountMap.put(product, postQuantity);
-		}
+		// Update the quantity. The product is removed if the new quantity is zero.
+		int postQuantity = this.productCounts.change(aProduct, -quantity);
+
+		// Update the totals
+		this.addToTotals(aProduct, -quantity);
 
-		System.out.println("The number of " + product.getId() + " in " + this.id + " changed from " + preQuantity +
+		System.out.println("The number of " + aProduct.getId() + " in " + this.id + " changed from " + preQuantity +
 				" to "
 				+ postQuantity);
 
@@ -130,26 +144,43 @@ public class Basket {
 	}
 
 	/**
-	 * Clears the productCountMap.
+	 * Clears the productCounts.
 	 *
 	 * @return  the Basket object
 	 */
-	public Basket clearBasket() {
-		this.productCountMap.clear();
+	public synchronized Basket clearBasket() {
+		this.productCounts.clear();
+		this.totalPrice = 0;
+		this.totalWeight = 0;
 		System.out.println("Cleared all items in " + this.id);
 		return this;
 	}
 
 	/**
-	 * Computes the total bill for the basket.
+	 * Retrieves the total price of the items in the basket without printing it.
+	 *
+	 * @return  total bill
+	 */
+	public int getTotalPrice() {
+		return this.totalPrice;
+	}
+
+	/**
+	 * Retrieves the total weight of the items in the basket without printing it.
+	 *
+	 * @return  basket's weight in ounces
+	 */
+	public double getTotalWeight() {
+		return this.totalWeight;
+	}
+
+	/**
+	 * Retrieves and prints the total bill for the basket.
 	 *
 	 * @return  total bill
 	 */
 	public int computeTotal() {
-		int total = 0;
-		for (Map.Entry<Product, Integer> entry : this.productCountMap.entrySet()) {
-			total += entry.getKey().getUnitPrice() * entry.getValue();
-		}
+		int total = this.totalPrice;
 
 		System.out.println("The total value of items in " + this.id + " is " + total);
 
@@ -157,15 +188,12 @@ public class Basket {
 	}
 
 	/**
-	 * Computes the weight of the basket.
+	 * Retrieves and prints the weight of the basket.
 	 *
 	 * @return  basket's weight
 	 */
 	public int computeWeight() {
-		int total = 0;
-		for (Map.Entry<Product, Integer> entry : this.productCountMap.entrySet()) {
-			total += entry.getKey().getWeight() * entry.getValue();
-		}
+		int total = (int) this.totalWeight;
 
 		int weightLbs = (int) Math.floor(total / 16.0);
 		double weightOz = total - weightLbs * 16;
@@ -177,21 +205,20 @@ public class Basket {
 	}
 
 	/**
-	 * Retrieves the Product object from productCountMap which has the same product ID as the given Product object.
+	 * Adds the price and weight of the given quantity of a product to the totals.
 	 *
-	 * @param product  The given Product object
-	 * @return  The Product object from productCountMap. Returns null if no match is found.
-	 */
-	private Product getProduct(Product product) {
-		// Iterate over productCountMap and return the Product that has the same product ID as the given Product object.
-		for (Map.Entry<Product, Integer> entry : this.productCountMap.entrySet()) {
-			if (entry.getKey().getId().equals(product.getId())) {
-				return entry.getKey();
-			}
+	 * @param product  Product that was added or removed
+	 * @param quantity  Number of items added, negative if items were removed
+	 */
+	private void addToTotals(Product product, int quantity) {
+		// Reset the totals once the basket is empty so that rounding errors of the weight do not accumulate
+		if (this.productCounts.isEmpty()) {
+			this.totalPrice = 0;
+			this.totalWeight = 0;
+			return;
 		}
-
-		// If no match is found return null
-		return null;
+		this.totalPrice += product.getUnitPrice() * quantity;
+		this.totalWeight += product.getWeight() * quantity;
 	}
 
 	/**
@@ -200,22 +227,23 @@ public class Basket {
 	 *
 	 * @return  String representation of the Basket object
 	 */
-	public String toString() {
+	public synchronized String toString() {
 
 		// Add the basket ID to the output string
 		StringBuilder output = new StringBuilder(String.format("Basket ID: %-10s%n", this.id));
 
-		if (!this.productCountMap.isEmpty()) {
+		if (!this.productCounts.isEmpty()) {
 			// Add titles for product details, quantity, and total price
 			output.append(String.format("%-15s%-15s%-20s%-15s%-15s%-15s%-15s%-15s%-15s", "PRODUCT_ID", "NAME",
 					"DESCRIPTION", "SIZE", "CATEGORY", "UNIT_PRICE", "TEMPERATURE", "QUANTITY", "TOTAL_PRICE"));
 
 			// Add product details, quantities, and total prices
-			for (Map.Entry<Product, Integer> entry : this.productCountMap.entrySet()) {
-				Product p = entry.getKey();
+			for (int i = 0; i < this.productCounts.size(); i++) {
+				Product p = this.productCounts.getProduct(i);
+				int quantity = this.productCounts.getCount(i);
 				output.append(String.format("%n%-15s%-15s%-20s%-15s%-15s%-15s%-15s%-15s%-15s", p.getId(), p.getName(),
 						p.getDescription(), p.getWeight(), p.getCategory(), p.getUnitPrice(), p.getTemperature(),
-						entry.getValue(), entry.getValue() * entry.getKey().getUnitPrice()));
+						quantity, quantity * p.getUnitPrice()));
 			}
 		} else {
 			output.append("Basket is empty");
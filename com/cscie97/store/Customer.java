@@ -44,17 +44,23 @@ public class Customer {
 	/**
 	 * Location of the customer.
 	 */
-	private Address location;
+	private volatile Address location;
 
 	/**
 	 * Time last seen (gets updated when location updates).
 	 */
-	private Timestamp lastSeen;
+	private volatile Timestamp lastSeen;
 
 	/**
 	 * Shopping basket of the customer.
 	 */
-	private Basket basket;
+	private volatile Basket basket;
+
+	/**
+	 * Index of customer locations that is notified of location changes. Null until the customer is registered with
+	 * the Store Model Service.
+	 */
+	private CustomerLocationIndex locationIndex;
 
 	/**
 	 * Class constructor. Sets the ID, name, type, email, and account address of the customer.
@@ -76,12 +82,21 @@ public class Customer {
 		this.accountAddress = anAccountAddress;
 	}
 
+	/**
+	 * Sets the index that is notified of location changes.
+	 *
+	 * @param aLocationIndex  Index of customer locations
+	 */
+	synchronized void setLocationIndex(CustomerLocationIndex aLocationIndex) {
+		this.locationIndex = aLocationIndex;
+	}
+
 	/**
 	 * Sets the basket of the customer.
 	 *
 	 * @param basket  Basket object representing a shopping basket
 	 */
-	public void setBasket(Basket basket) {
+	public synchronized void setBasket(Basket basket) {
 		this.basket = basket;
 	}
 
@@ -145,7 +160,7 @@ public class Customer {
 	 * @param location  Location of the customer in the form of storeId:aisleId
 	 * @return  The Customer object
 	 */
-	public Customer updateLocation(Address location) {
+	public synchronized Customer updateLocation(Address location) {
 		if (location == null && this.location != null) {
 			System.out.println(this.id + " left " + this.location.getStoreId());
 		} else if (location != null && this.location == null) {
@@ -155,9 +170,15 @@ public class Customer {
 			System.out.println(this.id + " moved from " + this.location.getAisleId() + " to " + location.getAisleId());
 		}
 
+		Address oldLocation = this.location;
 		this.location = location;
 		this.lastSeen = new Timestamp(System.currentTimeMillis());
 
+		// Keep the index of customer locations in sync
+		if (this.locationIndex != null) {
+			this.locationIndex.customerMoved(this, oldLocation, location);
+		}
+
 		return this;
 	}
 
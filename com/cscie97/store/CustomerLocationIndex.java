@@ -0,0 +1,160 @@
+package com.cscie97.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Index of the customers that are located in a store, by store ID and aisle ID. Customers report every change of their
+ * location, so the customers in a store or an aisle are found without scanning all customers. The index is updated
+ * while the customer's monitor is held, and concurrent sets let customers of different stores move in parallel.
+ * The index also keeps lock-free occupancy counters per store and per aisle, so headcounts are read without copying
+ * the sets of customers.
+ *
+ * @author Burak Ufuktepe
+ */
+public class CustomerLocationIndex {
+
+	/**
+	 * Map of store IDs to maps of aisle IDs and the customers located in the aisle.
+	 */
+	private Map<String, Map<String, Set<Customer>>> locationMap;
+
+	/**
+	 * Map of store IDs and the number of customers located in the store.
+	 */
+	private Map<String, LongAdder> storeOccupancyMap;
+
+	/**
+	 * Map of store IDs to maps of aisle IDs and the number of customers located in the aisle.
+	 */
+	private Map<String, Map<String, LongAdder>> aisleOccupancyMap;
+
+	/**
+	 * Class constructor that initializes an empty index.
+	 */
+	public CustomerLocationIndex() {
+		this.locationMap = new ConcurrentHashMap<>();
+		this.storeOccupancyMap = new ConcurrentHashMap<>();
+		this.aisleOccupancyMap = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Updates the index after a customer has moved.
+	 *
+	 * @param customer  Customer who moved
+	 * @param from  Previous location of the customer, null if the customer was not in a store
+	 * @param to  New location of the customer, null if the customer left the store
+	 */
+	void customerMoved(Customer customer, Address from, Address to) {
+		if (from != null) {
+			Set<Customer> customers = this.findCustomers(from.getStoreId(), from.getAisleId());
+			if (customers != null && customers.remove(customer)) {
+				this.getAisleOccupancy(from).decrement();
+				if (to == null || !to.getStoreId().equals(from.getStoreId())) {
+					this.getStoreOccupancy(from.getStoreId()).decrement();
+				}
+			}
+		}
+		if (to != null) {
+			boolean added = this.locationMap.computeIfAbsent(to.getStoreId(), k -> new ConcurrentHashMap<>())
+					.computeIfAbsent(to.getAisleId(), k -> ConcurrentHashMap.newKeySet())
+					.add(customer);
+			if (added) {
+				this.getAisleOccupancy(to).increment();
+				if (from == null || !from.getStoreId().equals(to.getStoreId())) {
+					this.getStoreOccupancy(to.getStoreId()).increment();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the number of customers located in the given store.
+	 *
+	 * @param storeId  Unique ID of the store
+	 * @return  Number of customers in the store
+	 */
+	public long countCustomersInStore(String storeId) {
+		LongAdder occupancy = this.storeOccupancyMap.get(storeId);
+		return occupancy == null ? 0 : occupancy.sum();
+	}
+
+	/**
+	 * Retrieves the number of customers located in the given aisle.
+	 *
+	 * @param storeId  Unique ID of the store
+	 * @param aisleId  Unique ID of the aisle
+	 * @return  Number of customers in the aisle
+	 */
+	public long countCustomersInAisle(String storeId, String aisleId) {
+		Map<String, LongAdder> aisleMap = this.aisleOccupancyMap.get(storeId);
+		LongAdder occupancy = aisleMap == null ? null : aisleMap.get(aisleId);
+		return occupancy == null ? 0 : occupancy.sum();
+	}
+
+	/**
+	 * Retrieves the customers that are located in the given store.
+	 *
+	 * @param storeId  Unique ID of the store
+	 * @return  Copy of the list of customers in the store
+	 */
+	public List<Customer> getCustomersInStore(String storeId) {
+		List<Customer> customers = new ArrayList<>();
+		Map<String, Set<Customer>> aisleMap = this.locationMap.get(storeId);
+		if (aisleMap != null) {
+			for (Set<Customer> aisleCustomers : aisleMap.values()) {
+				customers.addAll(aisleCustomers);
+			}
+		}
+		return customers;
+	}
+
+	/**
+	 * Retrieves the customers that are located in the given aisle.
+	 *
+	 * @param storeId  Unique ID of the store
+	 * @param aisleId  Unique ID of the aisle
+	 * @return  Copy of the list of customers in the aisle
+	 */
+	public List<Customer> getCustomersInAisle(String storeId, String aisleId) {
+		Set<Customer> customers = this.findCustomers(storeId, aisleId);
+		return customers == null ? new ArrayList<>() : new ArrayList<>(customers);
+	}
+
+	/**
+	 * Retrieves the occupancy counter of a store, creating it if it does not exist.
+	 *
+	 * @param storeId  Unique ID of the store
+	 * @return  Occupancy counter of the store
+	 */
+	private LongAdder getStoreOccupancy(String storeId) {
+		return this.storeOccupancyMap.computeIfAbsent(storeId, k -> new LongAdder());
+	}
+
+	/**
+	 * Retrieves the occupancy counter of the aisle of an address, creating it if it does not exist.
+	 *
+	 * @param address  Location in the aisle
+	 * @return  Occupancy counter of the aisle
+	 */
+	private LongAdder getAisleOccupancy(Address address) {
+		return this.aisleOccupancyMap.computeIfAbsent(address.getStoreId(), k -> new ConcurrentHashMap<>())
+				.computeIfAbsent(address.getAisleId(), k -> new LongAdder());
+	}
+
+	/**
+	 * Retrieves the set of customers in an aisle.
+	 *
+	 * @param storeId  Unique ID of the store
+	 * @param aisleId  Unique ID of the aisle
+	 * @return  Set of customers in the aisle, null if no customer has been in the aisle
+	 */
+	private Set<Customer> findCustomers(String storeId, String aisleId) {
+		Map<String, Set<Customer>> aisleMap = this.locationMap.get(storeId);
+		return aisleMap == null ? null : aisleMap.get(aisleId);
+	}
+}
@@ -23,6 +23,11 @@ public abstract class Device {
  	 */
 	private Address address;
 
+	/**
+	 * Store that indexes the device by its location. Null until the device is added to a store.
+	 */
+	private Store store;
+
 	/**
 	 * Class constructor that sets the ID, name, and address.
 	 *
@@ -64,12 +69,25 @@ public abstract class Device {
 	}
 
 	/**
-	 * Sets the location of the device
+	 * Sets the location of the device and reports the move to the store.
 	 *
 	 * @param address  Address of the device
 	 */
 	public void setAddress(Address address) {
+		Address oldAddress = this.address;
 		this.address = address;
+		if (this.store != null) {
+			this.store.deviceMoved(this, oldAddress);
+		}
+	}
+
+	/**
+	 * Sets the store that indexes the device by its location.
+	 *
+	 * @param aStore  Store of the device
+	 */
+	void setStore(Store aStore) {
+		this.store = aStore;
 	}
 
 	/**
@@ -1,9 +1,14 @@
 package com.cscie97.store;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * The Inventory class helps identify the location of products within the Store. It contains a single product type
  * and has a location in the form of storeId:aisleId:shelfId. It also maintains the count of products and has a
  * capacity that identifies the maximum number of products that can fit on the shelf.
+ * The count and the number of reserved products are packed into a single AtomicLong and changed with compare-and-set,
+ * so concurrent updates never take the count out of range and never need a store-wide lock. A robot reserves products
+ * before it moves them, then commits the reservation once they are picked up or releases it if the move fails.
  *
  * @author Burak Ufuktepe
  */
@@ -26,9 +31,11 @@ public class Inventory {
 	private int capacity;
 
 	/**
-	 * The current count of product items on the shelf that is less than or equal to the capacity and non-negative.
+	 * The current count of product items on the shelf in the upper 32 bits and the number of those items that are
+	 * reserved in the lower 32 bits. The count is less than or equal to the capacity and never less than the number
+	 * of reserved items.
 	 */
-	private int count;
+	private final AtomicLong state;
 
 	/**
 	 * Location of the inventory.
@@ -40,6 +47,17 @@ public class Inventory {
 	 */
 	private String productId;
 
+	/**
+	 * Index of the store's inventories with stock that is notified of count changes. Null until the inventory is
+	 * added to a store.
+	 */
+	private StockIndex stockIndex;
+
+	/**
+	 * Room of the aisle that holds the inventory.
+	 */
+	private RoomType room;
+
 	/**
 	 * Class constructor that sets the ID, capacity, count, location, and product ID.
 	 *
@@ -52,7 +70,7 @@ public class Inventory {
 	public Inventory(String anId, int aCapacity, int aCount, Address aLocation, String aProductId) {
 		this.id = anId;
 		this.capacity = aCapacity;
-		this.count = aCount;
+		this.state = new AtomicLong(pack(aCount, 0));
 		this.location = aLocation;
 		this.productId = aProductId;
 	}
@@ -71,7 +89,26 @@ public class Inventory {
 	}
 
 	public int getCount() {
-		return this.count;
+		return countOf(this.state.get());
+	}
+
+	/**
+	 * Retrieves the number of product items that are reserved but not yet taken from the shelf.
+	 *
+	 * @return  Number of reserved product items
+	 */
+	public int getReserved() {
+		return reservedOf(this.state.get());
+	}
+
+	/**
+	 * Retrieves the number of product items that are on the shelf and not reserved.
+	 *
+	 * @return  Number of available product items
+	 */
+	public int getAvailable() {
+		long current = this.state.get();
+		return countOf(current) - reservedOf(current);
 	}
 
 	public Address getLocation() {
@@ -82,6 +119,17 @@ public class Inventory {
 		return this.productId;
 	}
 
+	/**
+	 * Sets the index that is notified of count changes and the room of the inventory.
+	 *
+	 * @param aStockIndex  Index of the store's inventories with stock
+	 * @param aRoom  Room of the aisle that holds the inventory
+	 */
+	void setStockIndex(StockIndex aStockIndex, RoomType aRoom) {
+		this.stockIndex = aStockIndex;
+		this.room = aRoom;
+	}
+
 	/**
 	 * Verifies the following conditions:
 	 * - New product count does not exceed capacity
@@ -91,8 +139,128 @@ public class Inventory {
 	 * @param changeCount  number of product items to increment/decrement
 	 */
 	public void validateInventoryUpdate(int changeCount) {
-		int newCount = this.count + changeCount;
+		long current = this.state.get();
+		this.validateCount(countOf(current) + changeCount, reservedOf(current));
+	}
 
+	/**
+	 * Increments or decrements the inventory count. The count is validated and changed in a single atomic step, so
+	 * a concurrent update cannot take it out of range between the validation and the change.
+	 * Throws an IllegalArgumentException if the new count would exceed the capacity or fall below zero or below the
+	 * number of reserved items.
+	 *
+	 * @param changeCount  number of product items to increment/decrement
+	 * @return  The inventory object
+	 */
+	public Inventory updateInventory(int changeCount) {
+		long current;
+		int newCount;
+		do {
+			current = this.state.get();
+			newCount = countOf(current) + changeCount;
+			this.validateCount(newCount, reservedOf(current));
+		} while (!this.state.compareAndSet(current, pack(newCount, reservedOf(current))));
+
+		System.out.println("The number of products in " + this.id + " changed from " + countOf(current) + " to "
+				+ newCount);
+
+		this.stockChanged();
+
+		return this;
+	}
+
+	/**
+	 * Reserves the given number of available product items so that no other update can take them.
+	 * Throws an IllegalArgumentException if fewer items are available.
+	 *
+	 * @param quantity  Number of product items to reserve
+	 */
+	public void reserve(int quantity) {
+		if (this.reserveUpTo(quantity, false) < quantity) {
+			throw new IllegalArgumentException(this.id + " includes less than " + quantity + " product(s)");
+		}
+	}
+
+	/**
+	 * Reserves as many of the requested product items as are available.
+	 *
+	 * @param quantity  Max number of product items to reserve
+	 * @return  Number of reserved product items, 0 if none are available
+	 */
+	public int reserveUpTo(int quantity) {
+		return this.reserveUpTo(quantity, true);
+	}
+
+	/**
+	 * Takes reserved product items off the shelf by decrementing both the count and the number of reserved items.
+	 * Throws an IllegalArgumentException if fewer items are reserved.
+	 *
+	 * @param quantity  Number of reserved product items to take
+	 */
+	public void commitReservation(int quantity) {
+		long current;
+		do {
+			current = this.state.get();
+			this.validateReserved(quantity, current);
+		} while (!this.state.compareAndSet(current, pack(countOf(current) - quantity, reservedOf(current) - quantity)));
+
+		System.out.println("The number of products in " + this.id + " changed from " + countOf(current) + " to "
+				+ (countOf(current) - quantity));
+
+		this.stockChanged();
+	}
+
+	/**
+	 * Makes reserved product items available again without changing the count.
+	 * Throws an IllegalArgumentException if fewer items are reserved.
+	 *
+	 * @param quantity  Number of reserved product items to release
+	 */
+	public void releaseReservation(int quantity) {
+		long current;
+		do {
+			current = this.state.get();
+			this.validateReserved(quantity, current);
+		} while (!this.state.compareAndSet(current, pack(countOf(current), reservedOf(current) - quantity)));
+
+		this.stockChanged();
+	}
+
+	/**
+	 * Reserves available product items.
+	 *
+	 * @param quantity  Number of product items to reserve
+	 * @param partial  Whether fewer items may be reserved if not enough are available
+	 * @return  Number of reserved product items
+	 */
+	private int reserveUpTo(int quantity, boolean partial) {
+		if (quantity < 0) {
+			throw new IllegalArgumentException("Reserved quantity cannot be negative");
+		}
+		long current;
+		int reserved;
+		do {
+			current = this.state.get();
+			int available = countOf(current) - reservedOf(current);
+			if (available < quantity && !partial) {
+				return available;
+			}
+			reserved = Math.min(quantity, available);
+		} while (!this.state.compareAndSet(current, pack(countOf(current), reservedOf(current) + reserved)));
+
+		if (reserved > 0) {
+			this.stockChanged();
+		}
+		return reserved;
+	}
+
+	/**
+	 * Checks that a new count is within the capacity and not less than zero or the number of reserved items.
+	 *
+	 * @param newCount  New number of product items
+	 * @param reserved  Number of reserved product items
+	 */
+	private void validateCount(int newCount, int reserved) {
 		// Check if the new number of product items exceeds shelf capacity
 		if (newCount > this.capacity) {
 			throw new IllegalArgumentException("The number of product items exceeds shelf capacity");
@@ -102,23 +270,63 @@ public class Inventory {
 		if (newCount < 0) {
 			throw new IllegalArgumentException("The number of product items cannot be negative");
 		}
+
+		// Check if the new number of product items would take reserved items
+		if (newCount < reserved) {
+			throw new IllegalArgumentException(reserved + " product item(s) in " + this.id + " are reserved");
+		}
 	}
 
 	/**
-	 * Increments or decrements the inventory count.
+	 * Checks that a reservation of the given size can be committed or released.
 	 *
-	 * @param changeCount  number of product items to increment/decrement
-	 * @return  The inventory object
+	 * @param quantity  Number of reserved product items
+	 * @param current  Current packed state
 	 */
-	public Inventory updateInventory(int changeCount) {
+	private void validateReserved(int quantity, long current) {
+		if (quantity < 0 || quantity > reservedOf(current)) {
+			throw new IllegalArgumentException(this.id + " has less than " + quantity + " reserved product(s)");
+		}
+	}
 
-		int newCount = this.count + changeCount;
+	/**
+	 * Keeps the store's stock index in sync after the count or the number of reserved items has changed.
+	 */
+	private void stockChanged() {
+		if (this.stockIndex != null) {
+			this.stockIndex.stockChanged(this, this.room);
+		}
+	}
 
-		System.out.println("The number of products in " + this.id + " changed from " + this.count + " to " + newCount);
+	/**
+	 * Packs a count and a number of reserved items into a single state value.
+	 *
+	 * @param count  Number of product items
+	 * @param reserved  Number of reserved product items
+	 * @return  Packed state
+	 */
+	private static long pack(int count, int reserved) {
+		return ((long) count << 32) | (reserved & 0xFFFFFFFFL);
+	}
 
-		this.count = newCount;
+	/**
+	 * Extracts the count from a packed state value.
+	 *
+	 * @param state  Packed state
+	 * @return  Number of product items
+	 */
+	private static int countOf(long state) {
+		return (int) (state >>> 32);
+	}
 
-		return this;
+	/**
+	 * Extracts the number of reserved items from a packed state value.
+	 *
+	 * @param state  Packed state
+	 * @return  Number of reserved product items
+	 */
+	private static int reservedOf(long state) {
+		return (int) state;
 	}
 
 	/**
@@ -129,6 +337,6 @@ public class Inventory {
 	 */
 	public String toString() {
 		return String.format("Inventory ID: %-15s Capacity: %-10s Count: %-10s Location: %-20s Product ID: %-15s",
-				this.id, this.capacity, this.count, this.location, this.productId);
+				this.id, this.capacity, this.getCount(), this.location, this.productId);
 	}
 }
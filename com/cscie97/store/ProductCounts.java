@@ -0,0 +1,214 @@
+package com.cscie97.store;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts of products keyed by product ID, kept in parallel arrays in the order the products were first added. Most
+ * baskets hold only a few distinct products, so up to COMPACT_LIMIT products are found by scanning the IDs. Beyond
+ * that, a map of product IDs to array positions is built and maintained.
+ *
+ * @author Burak Ufuktepe
+ */
+public class ProductCounts {
+
+	/**
+	 * Class constant for the max number of distinct products that are found by scanning.
+	 */
+	public static final int COMPACT_LIMIT = 16;
+
+	/**
+	 * Class constant for the initial length of the arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/**
+	 * Product IDs.
+	 */
+	private String[] ids;
+
+	/**
+	 * Product objects at the same positions as their IDs.
+	 */
+	private Product[] products;
+
+	/**
+	 * Counts at the same positions as their product IDs.
+	 */
+	private int[] counts;
+
+	/**
+	 * Number of distinct products.
+	 */
+	private int size;
+
+	/**
+	 * Map of product IDs and array positions. Null while the number of distinct products is within COMPACT_LIMIT.
+	 */
+	private Map<String, Integer> positionMap;
+
+	/**
+	 * Class constructor that initializes empty arrays.
+	 */
+	public ProductCounts() {
+		this.ids = new String[INITIAL_CAPACITY];
+		this.products = new Product[INITIAL_CAPACITY];
+		this.counts = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Retrieves the number of distinct products.
+	 *
+	 * @return  Number of distinct products
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Checks whether there are no products.
+	 *
+	 * @return  True if there are no products. Otherwise, returns false.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Retrieves the product at the given position.
+	 *
+	 * @param position  Position between 0 and size - 1, in the order the products were first added
+	 * @return  The Product object
+	 */
+	public Product getProduct(int position) {
+		return this.products[position];
+	}
+
+	/**
+	 * Retrieves the count at the given position.
+	 *
+	 * @param position  Position between 0 and size - 1, in the order the products were first added
+	 * @return  Count of the product
+	 */
+	public int getCount(int position) {
+		return this.counts[position];
+	}
+
+	/**
+	 * Retrieves the count of the product with the given ID.
+	 *
+	 * @param productId  Unique ID of the product
+	 * @return  Count of the product, 0 if the product is not counted
+	 */
+	public int getCount(String productId) {
+		int position = this.positionOf(productId);
+		return position < 0 ? 0 : this.counts[position];
+	}
+
+	/**
+	 * Changes the count of a product. A product is added when its count becomes positive and removed when its count
+	 * becomes zero. The caller checks that the new count is not negative.
+	 *
+	 * @param product  Product whose count changes
+	 * @param change  Number of items to add, negative to remove items
+	 * @return  New count of the product
+	 */
+	public int change(Product product, int change) {
+		int position = this.positionOf(product.getId());
+		if (position < 0) {
+			if (change != 0) {
+				this.append(product, change);
+			}
+			return change;
+		}
+
+		int newCount = this.counts[position] + change;
+		if (newCount == 0) {
+			this.removeAt(position);
+		} else {
+			this.counts[position] = newCount;
+		}
+		return newCount;
+	}
+
+	/**
+	 * Removes all products.
+	 */
+	public void clear() {
+		Arrays.fill(this.ids, 0, this.size, null);
+		Arrays.fill(this.products, 0, this.size, null);
+		this.size = 0;
+		this.positionMap = null;
+	}
+
+	/**
+	 * Finds the array position of a product ID.
+	 *
+	 * @param productId  Unique ID of the product
+	 * @return  Position of the product, -1 if the product is not counted
+	 */
+	private int positionOf(String productId) {
+		if (this.positionMap != null) {
+			Integer position = this.positionMap.get(productId);
+			return position == null ? -1 : position;
+		}
+		for (int i = 0; i < this.size; i++) {
+			if (this.ids[i].equals(productId)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a product at the end of the arrays, growing them and building the position map when needed.
+	 *
+	 * @param product  Product to be added
+	 * @param count  Count of the product
+	 */
+	private void append(Product product, int count) {
+		if (this.size == this.ids.length) {
+			int length = this.ids.length * 2;
+			this.ids = Arrays.copyOf(this.ids, length);
+			this.products = Arrays.copyOf(this.products, length);
+			this.counts = Arrays.copyOf(this.counts, length);
+		}
+		this.ids[this.size] = product.getId();
+		this.products[this.size] = product;
+		this.counts[this.size] = count;
+		this.size++;
+
+		if (this.positionMap != null) {
+			this.positionMap.put(product.getId(), this.size - 1);
+		} else if (this.size > COMPACT_LIMIT) {
+			this.positionMap = new HashMap<>();
+			for (int i = 0; i < this.size; i++) {
+				this.positionMap.put(this.ids[i], i);
+			}
+		}
+	}
+
+	/**
+	 * Removes the product at the given position and shifts the following products to keep their order.
+	 *
+	 * @param position  Position of the product to be removed
+	 */
+	private void removeAt(int position) {
+		String productId = this.ids[position];
+		int moved = this.size - position - 1;
+		System.arraycopy(this.ids, position + 1, this.ids, position, moved);
+		System.arraycopy(this.products, position + 1, this.products, position, moved);
+		System.arraycopy(this.counts, position + 1, this.counts, position, moved);
+		this.size--;
+		this.ids[this.size] = null;
+		this.products[this.size] = null;
+
+		if (this.positionMap != null) {
+			this.positionMap.remove(productId);
+			for (int i = position; i < this.size; i++) {
+				this.positionMap.put(this.ids[i], i);
+			}
+		}
+	}
+}
@@ -29,7 +29,7 @@ public class Robot extends Device {
 	public void setAddress(Address address) {
 
 		// Return if the robot is already at the given address
-		if (address != null && this.getAddress() != null && address.equals(this.getAddress())) {
+		if (address != null && this.getAddress() != null && address.matches(this.getAddress())) {
 			return;
 		}
 
@@ -44,7 +44,7 @@ public class Robot extends Device {
 			System.out.println(this.getId() + " moved from " + this.getAddress().getAisleId() + " to "
 					+ address.getAisleId());
 		}
-		super.setAddress(new Address(address.getStoreId(), address.getAisleId()));
+		super.setAddress(address.toAisleAddress());
 	}
 
 	/**
@@ -55,7 +55,7 @@ public class Robot extends Device {
 	 */
 	public void cleanUpAisle(Address address, String item) {
 		// Move the robot to the relevant address if it is located in another location
-		if (!address.equals(this.getAddress())) {
+		if (!address.matches(this.getAddress())) {
 			this.setAddress(address);
 		}
 
@@ -64,7 +64,8 @@ public class Robot extends Device {
 
 	/**
 	 * Move to the given location, check if there is enough products in the source inventory and check if there is
-	 * enough space in the destination inventory. Validate the product IDs and move the inventory.
+	 * enough space in the destination inventory. Validate the product IDs and move the inventory. The products are
+	 * reserved in the source inventory before they are moved, and put back if the destination cannot take them.
 	 *
 	 * @param fromInventory  Source inventory
 	 * @param toInventory  Destination inventory
@@ -74,9 +75,10 @@ public class Robot extends Device {
 		// Move the robot to the relevant address
 		this.setAddress(fromInventory.getLocation());
 
-		// Check if there is enough products in the fromInventory
-		if (fromInventory.getCount() < count) {
-			throw new IllegalArgumentException(fromInventory.getId() + " includes less than " + count + " product(s)");
+		// Check if the product IDs match
+		if (!fromInventory.getProductId().equals(toInventory.getProductId())) {
+			throw new IllegalArgumentException(fromInventory.getId() + " and " + toInventory.getId() + " do not " +
+					"include the same type of product");
 		}
 
 		// Check if there is enough space in the toInventory
@@ -85,18 +87,15 @@ public class Robot extends Device {
 					+ "product(s)");
 		}
 
-		// Check if the product IDs match
-		if (!fromInventory.getProductId().equals(toInventory.getProductId())) {
-			throw new IllegalArgumentException(fromInventory.getId() + " and " + toInventory.getId() + " do not " +
-					"include the same type of product");
-		}
+		// Reserve the products in the fromInventory, which fails if there is not enough products
+		fromInventory.reserve(count);
 
 		System.out.println(this.getId() + " picked up " + count + " of " + fromInventory.getProductId() + " from "
 				+ fromInventory.getId() + " in " + fromInventory.getLocation().getAisleId() + ":"
 				+ fromInventory.getLocation().getShelfId());
 
 		// Update the fromInventory
-		fromInventory.updateInventory(-1 * count);
+		fromInventory.commitReservation(count);
 
 		// Move to where toInventory is located
 		this.setAddress(toInventory.getLocation());
@@ -105,8 +104,13 @@ public class Robot extends Device {
 				+ toInventory.getId() + " in " + toInventory.getLocation().getAisleId() + ":"
 				+ toInventory.getLocation().getShelfId());
 
-		// Update the toInventory
-		toInventory.updateInventory(count);
+		// Update the toInventory. Put the products back if the toInventory was filled in the meantime.
+		try {
+			toInventory.updateInventory(count);
+		} catch (IllegalArgumentException e) {
+			fromInventory.updateInventory(count);
+			throw e;
+		}
 	}
 
 	/**
@@ -122,12 +126,13 @@ public class Robot extends Device {
 		// Move the robot to the relevant address
 		this.setAddress(fromInventory.getLocation());
 
-		// Check if there is enough products in the fromInventory
-		if (fromInventory.getCount() == 0) {
+		// Reserve as many of the products as there are left in the fromInventory
+		int reserved = fromInventory.reserveUpTo(count);
+		if (reserved == 0) {
 			throw new IllegalArgumentException("No products left in " + fromInventory.getId());
-		} else if (fromInventory.getCount() < count) {
-			System.out.println("Only " + fromInventory.getCount() + " product(s) left in " + fromInventory.getId());
-			count = fromInventory.getCount();
+		} else if (reserved < count) {
+			System.out.println("Only " + reserved + " product(s) left in " + fromInventory.getId());
+			count = reserved;
 		}
 
 		System.out.println(this.getId() + " picked up " + count + " of " + fromInventory.getProductId() + " from "
@@ -135,7 +140,7 @@ public class Robot extends Device {
 				+ fromInventory.getLocation().getShelfId());
 
 		// Update the fromInventory
-		fromInventory.updateInventory(-1 * count);
+		fromInventory.commitReservation(count);
 
 		// Move to the destination address
 		this.setAddress(toAddress);
@@ -154,7 +159,7 @@ public class Robot extends Device {
 	 */
 	public void addressEmergency(EmergencyType emergencyType, Address address) {
 		// Move the robot to the relevant address if it is located in another location
-		if (!address.equals(this.getAddress())) {
+		if (!address.matches(this.getAddress())) {
 			this.setAddress(address);
 		}
 
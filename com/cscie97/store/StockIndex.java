@@ -0,0 +1,89 @@
+package com.cscie97.store;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the inventories of a store that have products in stock, by room and product ID. Inventories are added when
+ * they are defined and report every change of their count or reservations, so the index always reflects which
+ * inventories have unreserved stock. Inventories report changes without holding the store's lock, so the index
+ * synchronizes on itself and reads the current stock on every report instead of trusting the order of reports.
+ * Within a room and product, inventories are kept in the order they were defined.
+ *
+ * @author Burak Ufuktepe
+ */
+public class StockIndex {
+
+	/**
+	 * Map of rooms to maps of product IDs and the inventories that have the product in stock.
+	 */
+	private Map<RoomType, Map<String, Set<Inventory>>> stockMap;
+
+	/**
+	 * Class constructor that initializes an empty index for every room.
+	 */
+	public StockIndex() {
+		this.stockMap = new EnumMap<>(RoomType.class);
+		for (RoomType room : RoomType.values()) {
+			this.stockMap.put(room, new HashMap<>());
+		}
+	}
+
+	/**
+	 * Adds a newly defined inventory to the index and subscribes the index to its count changes.
+	 *
+	 * @param inventory  Newly defined inventory
+	 * @param room  Room of the aisle that holds the inventory
+	 */
+	public synchronized void add(Inventory inventory, RoomType room) {
+		inventory.setStockIndex(this, room);
+		if (inventory.getAvailable() > 0) {
+			this.getInventories(room, inventory.getProductId()).add(inventory);
+		}
+	}
+
+	/**
+	 * Updates the index after the count or the reservations of an inventory have changed. Only whether the inventory
+	 * has unreserved stock affects the index.
+	 *
+	 * @param inventory  Inventory whose stock has changed
+	 * @param room  Room of the aisle that holds the inventory
+	 */
+	synchronized void stockChanged(Inventory inventory, RoomType room) {
+		if (inventory.getAvailable() > 0) {
+			this.getInventories(room, inventory.getProductId()).add(inventory);
+		} else {
+			Map<String, Set<Inventory>> productMap = this.stockMap.get(room);
+			Set<Inventory> inventories = productMap.get(inventory.getProductId());
+			if (inventories != null && inventories.remove(inventory) && inventories.isEmpty()) {
+				productMap.remove(inventory.getProductId());
+			}
+		}
+	}
+
+	/**
+	 * Retrieves an inventory in the given room that has the given product in stock.
+	 *
+	 * @param room  FLOOR or STORE_ROOM
+	 * @param productId  Unique ID of the product
+	 * @return  The earliest defined inventory with the product in stock, null if there is none
+	 */
+	public synchronized Inventory find(RoomType room, String productId) {
+		Set<Inventory> inventories = this.stockMap.get(room).get(productId);
+		return inventories == null || inventories.isEmpty() ? null : inventories.iterator().next();
+	}
+
+	/**
+	 * Retrieves the set of inventories for a room and product, creating it if it does not exist.
+	 *
+	 * @param room  Room of the inventories
+	 * @param productId  Unique ID of the product
+	 * @return  Set of inventories that have the product in stock
+	 */
+	private Set<Inventory> getInventories(RoomType room, String productId) {
+		return this.stockMap.get(room).computeIfAbsent(productId, k -> new LinkedHashSet<>());
+	}
+}
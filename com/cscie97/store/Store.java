@@ -2,8 +2,11 @@ package com.cscie97.store;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a store which contains aisles, inventories, and devices.
@@ -27,6 +30,11 @@ public class Store {
 	 */
 	private String phsicalAddress;
 
+	/**
+	 * Max number of customers allowed in the store at the same time, 0 for no limit.
+	 */
+	private volatile int capacity;
+
 	/**
 	 * Map of Aisle numbers and Aisle objects.
 	 */
@@ -37,11 +45,32 @@ public class Store {
 	 */
 	private Map<String, Inventory> inventoryMap;
 
+	/**
+	 * Index of the inventories that have products in stock, by room and product ID.
+	 */
+	private StockIndex stockIndex;
+
+	/**
+	 * Map of shelf addresses to maps of product IDs and the inventories on the shelf. Holds the earliest defined
+	 * inventory if a shelf has several inventories of the same product.
+	 */
+	private Map<Address, Map<String, Inventory>> shelfInventoryMap;
+
 	/**
 	 * Map of Device Ids and Device objects.
 	 */
 	private Map<String, Device> deviceMap;
 
+	/**
+	 * Map of device classes and the devices of each class in the order they were defined.
+	 */
+	private Map<Class<?>, List<Device>> deviceTypeMap;
+
+	/**
+	 * Map of aisle IDs to maps of device classes and the devices of each class that are located in the aisle.
+	 */
+	private Map<String, Map<Class<?>, Set<Device>>> aisleDeviceMap;
+
 	/**
 	 * Class constructor. Sets the ID, name, and address of the store. Also, initializes aisleMap, inventoryMap, and
 	 * deviceMap.
@@ -55,8 +84,12 @@ public class Store {
 		this.name = aName;
 		this.phsicalAddress = aPhysicalAddress;
 		this.aisleMap = new HashMap<>();
-		this.inventoryMap = new HashMap<>();
+		this.inventoryMap = new ConcurrentHashMap<>();
+		this.stockIndex = new StockIndex();
+		this.shelfInventoryMap = new HashMap<>();
 		this.deviceMap = new HashMap<>();
+		this.deviceTypeMap = new HashMap<>();
+		this.aisleDeviceMap = new HashMap<>();
 	}
 
 	/**
@@ -77,6 +110,28 @@ public class Store {
 		return this.name;
 	}
 
+	/**
+	 * Retrieves the max number of customers allowed in the store at the same time.
+	 *
+	 * @return  Capacity of the store, 0 for no limit
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Sets the max number of customers allowed in the store at the same time. Throws an IllegalArgumentException if
+	 * the capacity is negative.
+	 *
+	 * @param aCapacity  Capacity of the store, 0 for no limit
+	 */
+	public void setCapacity(int aCapacity) {
+		if (aCapacity < 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative");
+		}
+		this.capacity = aCapacity;
+	}
+
 	/**
 	 * Validates the ID of an aisle for uniqueness or existence.
 	 * If the given ID is a new ID, checks for uniqueness. Throws an IllegalArgumentException if the ID is not unique.
@@ -109,7 +164,7 @@ public class Store {
 	 * @param location  RoomType that identifies the location of the aisle
 	 * @return  The new Aisle object
 	 */
-	public Aisle defineAisle(String id, String name, String description, RoomType location) {
+	public synchronized Aisle defineAisle(String id, String name, String description, RoomType location) {
 		// Check if the given id is unique
 		this.validateAisleId(id, true);
 
@@ -127,7 +182,7 @@ public class Store {
 	 * @param id Unique ID of the aisle
 	 * @return The Aisle object for the given aisle ID
 	 */
-	public Aisle getAisle(String id) {
+	public synchronized Aisle getAisle(String id) {
 
 		// Check if the given id exists
 		this.validateAisleId(id, false);
@@ -146,8 +201,8 @@ public class Store {
 	 * @param temperature  TemperatureType that identifies the shelf temperature
 	 * @return  The Shelf object
 	 */
-	public Shelf defineShelf(String aisleId, String shelfId, String name, LevelType level, String description,
-							 TemperatureType temperature) {
+	public synchronized Shelf defineShelf(String aisleId, String shelfId, String name, LevelType level,
+										  String description, TemperatureType temperature) {
 		// Check if the given aisle id exists
 		this.validateAisleId(aisleId, false);
 
@@ -162,7 +217,7 @@ public class Store {
 	 * @param shelfId  unique ID of the shelf
 	 * @return  The Shelf object
 	 */
-	public Shelf getShelf(String aisleId, String shelfId) {
+	public synchronized Shelf getShelf(String aisleId, String shelfId) {
 		// Check if the given aisle id exists
 		this.validateAisleId(aisleId, false);
 
@@ -170,7 +225,8 @@ public class Store {
 	}
 
 	/**
-	 * Validates the aisle ID and shelf ID then creates the inventory and adds it to inventoryMap.
+	 * Validates the aisle ID and shelf ID then creates the inventory and adds it to inventoryMap, stockIndex, and
+	 * shelfInventoryMap.
 	 * The inventory ID, product ID, capacity, and count are validated by the Store Model Service.
 	 *
 	 * @param inventoryId  Unique identifier of the inventory
@@ -180,7 +236,8 @@ public class Store {
 	 * @param productId  Product ID of the inventory
 	 * @return  The Inventory object
 	 */
-	public Inventory defineInventory(String inventoryId, Address address, int capacity, int count, String productId) {
+	public synchronized Inventory defineInventory(String inventoryId, Address address, int capacity, int count,
+												  String productId) {
 		String aisleId = address.getAisleId();
 		String shelfId = address.getShelfId();
 
@@ -196,6 +253,8 @@ public class Store {
 
 		Inventory inventory = new Inventory(inventoryId, capacity, count, address, productId);
 		this.inventoryMap.put(inventory.getId(), inventory);
+		this.stockIndex.add(inventory, this.aisleMap.get(aisleId).getLocation());
+		this.shelfInventoryMap.computeIfAbsent(address, k -> new HashMap<>()).putIfAbsent(productId, inventory);
 
 		return inventory;
 	}
@@ -209,7 +268,7 @@ public class Store {
 	 * @param productId  Unique ID of the product contained in the inventory
 	 * @return  The Inventory that is restocked
 	 */
-	public Inventory restockShelf(Address address, String productId) {
+	public synchronized Inventory restockShelf(Address address, String productId) {
 		// Find a robot
 		Device robot = this.getDeviceAtAddress(address, Robot.class, false);
 
@@ -247,7 +306,7 @@ public class Store {
 	 * @param count  Number of products to be fetched
 	 * @return  Number of fetched products
 	 */
-	public int fetchProduct(Address toAddress, String productId, int count) {
+	public synchronized int fetchProduct(Address toAddress, String productId, int count) {
 		// Find a robot
 		Device robot = this.getDeviceAtAddress(toAddress, Robot.class, false);
 
@@ -277,38 +336,26 @@ public class Store {
 	}
 
 	/**
-	 * Retrieves the inventory that includes the given product ID in the given room.
+	 * Retrieves an inventory that includes the given product ID in the given room and has products in stock. Looks
+	 * the inventory up in stockIndex instead of scanning inventoryMap.
 	 *
 	 * @param room  FLOOR or STORE_ROOM
 	 * @param productId  Unique ID of the product contained in the inventory
-	 * @return  The Inventory object
+	 * @return  The Inventory object, null if no inventory in the room has the product in stock
 	 */
-	public Inventory findInventoryInRoom(RoomType room, String productId) {
-		// Find the inventory with the productId in the given room
-		for (Map.Entry<String, Inventory> entry : this.inventoryMap.entrySet()) {
-			Inventory inventory = entry.getValue();
-			String aisleId = inventory.getLocation().getAisleId();
-			Aisle aisle = this.aisleMap.get(aisleId);
-
-			// Check if the aisle is in the given room, product ID matches the given productId, and there is product
-			// in inventory
-			if (aisle.getLocation() == room && inventory.getProductId().equals(productId) && inventory.getCount() > 0) {
-				return inventory;
-			}
-		}
-
-		return null;
+	public synchronized Inventory findInventoryInRoom(RoomType room, String productId) {
+		return this.stockIndex.find(room, productId);
 	}
 
 	/**
 	 * Validates the aisle ID and shelf ID and then retrieves the inventory that includes the given product ID at the
-	 * given address.
+	 * given address. Looks the inventory up in shelfInventoryMap, so no address strings are built.
 	 *
 	 * @param address  Location of the inventory
 	 * @param productId  Unique ID of the product contained in the inventory
 	 * @return  The Inventory object
 	 */
-	public Inventory findInventoryAtAddress(Address address, String productId) {
+	public synchronized Inventory findInventoryAtAddress(Address address, String productId) {
 		// Validate the aisle ID
 		if (!this.aisleMap.containsKey(address.getAisleId())) {
 			throw new IllegalArgumentException(this.id + " does not include " + address.getAisleId());
@@ -317,14 +364,13 @@ public class Store {
 		// Validate the shelf ID
 		this.getAisle(address.getAisleId()).getShelf(address.getShelfId());
 
-		for (Map.Entry<String, Inventory> entry : this.inventoryMap.entrySet()) {
-			Inventory inventory = entry.getValue();
-			if (inventory.getLocation().equals(address) && inventory.getProductId().equals(productId)) {
-				return inventory;
-			}
+		// Find the inventories on the shelf
+		Map<String, Inventory> shelfInventories = this.shelfInventoryMap.get(address);
+		if (shelfInventories == null) {
+			return null;
 		}
 
-		return null;
+		return shelfInventories.get(productId);
 	}
 
 	/**
@@ -340,7 +386,8 @@ public class Store {
 
 	/**
 	 * Increments or decrements the inventory count for the given inventory ID. A positive changeCount indicates an
-	 * increment whereas a negative changeCount indicates a decrement.
+	 * increment whereas a negative changeCount indicates a decrement. The inventory validates and applies the change
+	 * atomically, so the store's lock is not taken.
 	 * The inventory ID is validated by the Store Model Service.
 	 *
 	 * @param id  Unique identifier of the inventory
@@ -361,7 +408,7 @@ public class Store {
 	 * @param address  Location of the device
 	 * @return  The Device object
 	 */
-	public Device defineDevice(String deviceId, String name, String type, Address address) {
+	public synchronized Device defineDevice(String deviceId, String name, String type, Address address) {
 		// Check if the given aisle id exists
 		this.validateAisleId(address.getAisleId(), false);
 
@@ -376,33 +423,70 @@ public class Store {
 		};
 
 		this.deviceMap.put(device.getId(), device);
+
+		// Index the device by its type and aisle, and have it report its moves
+		this.deviceTypeMap.computeIfAbsent(device.getClass(), k -> new ArrayList<>()).add(device);
+		this.addToAisle(device, address);
+		device.setStore(this);
+
 		return device;
 	}
 
+	/**
+	 * Updates the aisle index after a device has moved.
+	 *
+	 * @param device  Device that has moved
+	 * @param oldAddress  Previous location of the device, null if it was outside the store
+	 */
+	synchronized void deviceMoved(Device device, Address oldAddress) {
+		if (oldAddress != null) {
+			Map<Class<?>, Set<Device>> typeMap = this.aisleDeviceMap.get(oldAddress.getAisleId());
+			if (typeMap != null && typeMap.containsKey(device.getClass())) {
+				typeMap.get(device.getClass()).remove(device);
+			}
+		}
+		this.addToAisle(device, device.getAddress());
+	}
+
+	/**
+	 * Adds a device to the aisle index.
+	 *
+	 * @param device  Device to be added
+	 * @param address  Location of the device, null if it is outside the store
+	 */
+	private void addToAisle(Device device, Address address) {
+		if (address == null) {
+			return;
+		}
+		this.aisleDeviceMap.computeIfAbsent(address.getAisleId(), k -> new HashMap<>())
+				.computeIfAbsent(device.getClass(), k -> new LinkedHashSet<>()).add(device);
+	}
+
 	/**
 	 * Retrieves the Device object for the given device ID. The device ID is validated by the Store Model Service.
 	 *
 	 * @param id  Unique identifier of the device
 	 * @return  The Device object
 	 */
-	public Device getDevice(String id) {
+	public synchronized Device getDevice(String id) {
 		return this.deviceMap.get(id);
 	}
 
-	public List<Device> getDevices(Class<?> cls) {
-		List<Device> devices = new ArrayList<>();
-		for (Map.Entry<String, Device> entry : this.deviceMap.entrySet()) {
-			if (entry.getValue().getClass() == cls) {
-				devices.add( entry.getValue());
-			}
-		}
-		return devices;
+	/**
+	 * Retrieves the devices of the given class from deviceTypeMap.
+	 *
+	 * @param cls  Child Device class
+	 * @return  List of the devices of the class in the order they were defined
+	 */
+	public synchronized List<Device> getDevices(Class<?> cls) {
+		List<Device> devices = this.deviceTypeMap.get(cls);
+		return devices == null ? new ArrayList<>() : new ArrayList<>(devices);
 	}
 
 	/**
-	 * Loops through each device in the store. If exactLocation is true, then returns the device that is located at
-	 * the given address. If exactLocation is false, then returns any device if no device is found at the given
-	 * address.
+	 * Looks up the devices of the given class in the aisle of the given address. If exactLocation is true, then
+	 * returns the device that is located in the aisle. If exactLocation is false, then returns any device of the
+	 * class if no device is found in the aisle.
 	 *
 	 * @param address  location of the device to be retrieved
 	 * @param cls  Child Device class
@@ -411,31 +495,24 @@ public class Store {
 	 *                       address.
 	 * @return  The Device object
 	 */
-	public Device getDeviceAtAddress(Address address, Class<?> cls, boolean exactLocation) {
-
-		Device device = null;
-
-		// Iterate over each device in the store
-		for (Map.Entry<String, Device> entry : this.deviceMap.entrySet()) {
-			Device currentDevice = entry.getValue();
-			if (currentDevice.getClass() == cls) {
-				// If the device is at the given address break out of the loop and return the device.
-				if (currentDevice.getAddress().equals(address)) {
-					return currentDevice;
-				} else if (device == null && !exactLocation) {
-					device = currentDevice;
-				}
-			}
+	public synchronized Device getDeviceAtAddress(Address address, Class<?> cls, boolean exactLocation) {
+		// Return a device of the class in the given aisle
+		Map<Class<?>, Set<Device>> typeMap = this.aisleDeviceMap.get(address.getAisleId());
+		if (typeMap != null && typeMap.containsKey(cls) && !typeMap.get(cls).isEmpty()) {
+			return typeMap.get(cls).iterator().next();
 		}
 
 		// Throw IllegalArgumentExceptions if no device was found
-		if (device == null && exactLocation) {
+		if (exactLocation) {
 			throw new IllegalArgumentException(this.getId() + " has no " + cls.getSimpleName() + "s in " + address.getAisleId());
-		} else if (device == null) {
+		}
+		List<Device> devices = this.deviceTypeMap.get(cls);
+		if (devices == null) {
 			throw new IllegalArgumentException(this.getId() + " has no " + cls.getSimpleName() + "s");
 		}
 
-		return device;
+		// Return any device of the class
+		return devices.get(0);
 	}
 
 	/**
@@ -444,7 +521,7 @@ public class Store {
 	 * @param address  Location for the cleaning event
 	 * @param item  String representing the thing that needs to be cleaned up
 	 */
-	public void cleanUpAisle(Address address, String item) {
+	public synchronized void cleanUpAisle(Address address, String item) {
 		// Check if the given aisle ID exists
 		this.validateAisleId(address.getAisleId(), false);
 
@@ -463,7 +540,7 @@ public class Store {
 	 * @param isEmergency  boolean that identifies if the event is an emergency or not
 	 * @param open  boolean that identifies if the turnstile needs to be opened or closed.
 	 */
-	public void setTurnstileState(String deviceId, boolean isEmergency, boolean open) {
+	public synchronized void setTurnstileState(String deviceId, boolean isEmergency, boolean open) {
 		if (isEmergency) {
 			// Get all turnstiles of the store
 			List<Device> turnstiles = this.getDevices(Turnstile.class);
@@ -500,7 +577,7 @@ public class Store {
 	 * @param isEmergency  boolean that identifies if the event is an emergency or not
 	 * @param message  Message to be announced
 	 */
-	public void announceMessage(String sourceDeviceId, boolean isEmergency, String message) {
+	public synchronized void announceMessage(String sourceDeviceId, boolean isEmergency, String message) {
 
 		if (isEmergency) {
 			// Get all speakers of the store
@@ -537,7 +614,7 @@ public class Store {
 	 * @param emergencyType  Type of the emergency
 	 * @param address  Location for the emergency
 	 */
-	public void addressEmergency(String robotId, EmergencyType emergencyType, Address address) {
+	public synchronized void addressEmergency(String robotId, EmergencyType emergencyType, Address address) {
 		Device device = this.getDevice(robotId);
 
 		// Validate the device
@@ -554,7 +631,7 @@ public class Store {
 	 *
 	 * @param robotId  Unique ID of the robot
 	 */
-	public void assistCustomersExit(String robotId) {
+	public synchronized void assistCustomersExit(String robotId) {
 		Device device = this.getDevice(robotId);
 
 		// Validate the device
@@ -571,7 +648,7 @@ public class Store {
 	 *
 	 * @param customer  The customer who needs assistance
 	 */
-	public void assistCustomerToCar(Customer customer) {
+	public synchronized void assistCustomerToCar(Customer customer) {
 		// Get customer's current location
 		Address customersLocation = customer.getLocation();
 
@@ -588,7 +665,7 @@ public class Store {
 	 *
 	 * @return  String representation of the Store object
 	 */
-	public String toString() {
+	public synchronized String toString() {
 		// Add the Store ID, name, and address to the output string
 		StringBuilder output = new StringBuilder(String.format("Store ID: %-15s Name: %-15s Address: %-30s%n", this.id,
 				this.name, this.phsicalAddress));
@@ -7,9 +7,13 @@ import com.cscie97.controller.Event;
 
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Provides the API used by clients of the Store Model Service. It contains Stores, Products, Customers, and Baskets.
+ * The registries are concurrent maps and each Store guards its own state with its monitor, so events of different
+ * stores can be processed in parallel. Changes to a customer's basket assignment are serialized by customer ID.
  *
  * @author Burak Ufuktepe
  */
@@ -55,6 +59,16 @@ public class StoreModelService implements Subject{
 	 */
 	private List<Observer> observerList;
 
+	/**
+	 * Locks that serialize the basket assignment changes of a customer, striped by customer ID.
+	 */
+	private StripedLock customerLocks;
+
+	/**
+	 * Index of the customers located in each store and aisle.
+	 */
+	private CustomerLocationIndex customerLocationIndex;
+
 	/**
 	 * Authentication Service instance.
 	 */
@@ -64,14 +78,16 @@ public class StoreModelService implements Subject{
 	 * Class constructor that initializes all the Maps.
 	 */
 	public StoreModelService(AuthenticationService authenticationService) {
-		this.storeMap = new HashMap<>();
-		this.customerMap = new HashMap<>();
-		this.productMap = new HashMap<>();
-		this.basketMap = new HashMap<>();
-		this.inventoryStoreMap = new HashMap<>();
-		this.deviceStoreMap = new HashMap<>();
-		this.basketCustomerMap = new HashMap<>();
-		this.observerList = new ArrayList<>();
+		this.storeMap = new ConcurrentHashMap<>();
+		this.customerMap = new ConcurrentHashMap<>();
+		this.productMap = new ConcurrentHashMap<>();
+		this.basketMap = new ConcurrentHashMap<>();
+		this.inventoryStoreMap = new ConcurrentHashMap<>();
+		this.deviceStoreMap = new ConcurrentHashMap<>();
+		this.basketCustomerMap = new ConcurrentHashMap<>();
+		this.observerList = new CopyOnWriteArrayList<>();
+		this.customerLocks = new StripedLock(StripedLock.DEFAULT_STRIPES);
+		this.customerLocationIndex = new CustomerLocationIndex();
 		this.authenticationService = authenticationService;
 	}
 
@@ -111,7 +127,9 @@ public class StoreModelService implements Subject{
 		}
 
 		Store store = new Store(id, name, physicalAddress);
-		this.storeMap.put(store.getId(), store);
+		if (this.storeMap.putIfAbsent(store.getId(), store) != null) {
+			throw new StoreModelServiceException("define store", id + " already exists");
+		}
 
 		return store;
 	}
@@ -389,7 +407,9 @@ public class StoreModelService implements Subject{
 		}
 
 		Product product = new Product(id, name, description, weightDouble, category, unitPriceInt, temperatureType);
-		this.productMap.put(product.getId(), product);
+		if (this.productMap.putIfAbsent(product.getId(), product) != null) {
+			throw new StoreModelServiceException("define product", id + " already exists");
+		}
 
 		System.out.println(product.getId() + " created.");
 
@@ -481,17 +501,21 @@ public class StoreModelService implements Subject{
 			throw new StoreModelServiceException("define inventory", "Invalid count");
 		}
 
+		// Reserve the inventory ID so that a concurrent definition of the same ID fails
+		Store store = this.storeMap.get(storeId);
+		if (this.inventoryStoreMap.putIfAbsent(inventoryId, store) != null) {
+			throw new StoreModelServiceException("define inventory", inventoryId + " already exists");
+		}
+
 		// Have the Store create the inventory
 		Inventory inventory;
 		try {
-			inventory = this.storeMap.get(storeId).defineInventory(inventoryId, address, capacityInt, countInt,
-					productId);
+			inventory = store.defineInventory(inventoryId, address, capacityInt, countInt, productId);
 		} catch (IllegalArgumentException e) {
+			this.inventoryStoreMap.remove(inventoryId);
 			throw new StoreModelServiceException("define inventory", e.getMessage());
 		}
 
-		this.inventoryStoreMap.put(inventory.getId(), this.storeMap.get(storeId));
-
 		System.out.println(inventory.getId() + " created.");
 
 		return inventory;
@@ -534,11 +558,12 @@ public class StoreModelService implements Subject{
 		String storeId = address.getStoreId();
 
 		// Validate the store ID
-		if (!this.storeMap.containsKey(storeId)) {
+		Store store = this.storeMap.get(storeId);
+		if (store == null) {
 			throw new StoreModelServiceException("find inventory at address", storeId + " does not exist");
 		}
 
-		Inventory inventory = this.storeMap.get(storeId).findInventoryAtAddress(address, productId);
+		Inventory inventory = store.findInventoryAtAddress(address, productId);
 
 		if (inventory == null) {
 			throw new StoreModelServiceException("find inventory at address", "No inventory found in " + address +
@@ -599,7 +624,12 @@ public class StoreModelService implements Subject{
 		// Validate the update
 		this.validateInventoryUpdate(id, count, authToken);
 
-		return this.inventoryStoreMap.get(id).updateInventory(id, Integer.parseInt(count));
+		// Have the store validate and apply the update atomically, since the count may have changed in the meantime
+		try {
+			return this.inventoryStoreMap.get(id).updateInventory(id, Integer.parseInt(count));
+		} catch (IllegalArgumentException e) {
+			throw new StoreModelServiceException("update inventory", e.getMessage());
+		}
 	}
 
 	/**
@@ -634,7 +664,10 @@ public class StoreModelService implements Subject{
 		}
 
 		Customer customer = new Customer(id, first, last, customerType, email, accountAddress);
-		this.customerMap.put(customer.getId(), customer);
+		if (this.customerMap.putIfAbsent(customer.getId(), customer) != null) {
+			throw new StoreModelServiceException("define customer", id + " already exists");
+		}
+		customer.setLocationIndex(this.customerLocationIndex);
 
 		System.out.println(customer.getId() + " created.");
 
@@ -702,6 +735,130 @@ public class StoreModelService implements Subject{
 		return this.customerMap.get(id);
 	}
 
+	/**
+	 * Validates the store ID and returns the customers that are located in the store.
+	 *
+	 * @param storeId  Unique ID of the store
+	 * @param authToken  Authorization token
+	 * @return  List of customers in the store
+	 * @throws StoreModelServiceException  if the given store ID is invalid
+	 */
+	public List<Customer> getCustomersInStore(String storeId, String authToken) throws StoreModelServiceException {
+		// Check for permission
+		this.checkPermission("read_user", null, authToken);
+
+		// Validate the store ID
+		if (!this.storeMap.containsKey(storeId)) {
+			throw new StoreModelServiceException("get customers in store", storeId + " does not exist");
+		}
+
+		return this.customerLocationIndex.getCustomersInStore(storeId);
+	}
+
+	/**
+	 * Validates the store and aisle IDs and returns the customers that are located in the aisle.
+	 *
+	 * @param address  Location of the aisle in the form of storeId:aisleId
+	 * @param authToken  Authorization token
+	 * @return  List of customers in the aisle
+	 * @throws StoreModelServiceException  if the given store or aisle ID is invalid
+	 */
+	public List<Customer> getCustomersInAisle(Address address, String authToken) throws StoreModelServiceException {
+		// Check for permission
+		this.checkPermission("read_user", null, authToken);
+
+		// Validate the store ID
+		Store store = this.storeMap.get(address.getStoreId());
+		if (store == null) {
+			throw new StoreModelServiceException("get customers in aisle", address.getStoreId() + " does not exist");
+		}
+
+		// Validate the aisle ID
+		try {
+			store.getAisle(address.getAisleId());
+		} catch (IllegalArgumentException e) {
+			throw new StoreModelServiceException("get customers in aisle", e.getMessage());
+		}
+
+		return this.customerLocationIndex.getCustomersInAisle(address.getStoreId(), address.getAisleId());
+	}
+
+	/**
+	 * Validates the store ID and returns the number of customers that are located in the store.
+	 *
+	 * @param storeId  Unique ID of the store
+	 * @param authToken  Authorization token
+	 * @return  Number of customers in the store
+	 * @throws StoreModelServiceException  if the given store ID is invalid
+	 */
+	public long getStoreOccupancy(String storeId, String authToken) throws StoreModelServiceException {
+		// Check for permission
+		this.checkPermission("read_user", null, authToken);
+
+		// Validate the store ID
+		if (!this.storeMap.containsKey(storeId)) {
+			throw new StoreModelServiceException("get store occupancy", storeId + " does not exist");
+		}
+
+		return this.customerLocationIndex.countCustomersInStore(storeId);
+	}
+
+	/**
+	 * Validates the store and aisle IDs and returns the number of customers that are located in the aisle.
+	 *
+	 * @param address  Location of the aisle in the form of storeId:aisleId
+	 * @param authToken  Authorization token
+	 * @return  Number of customers in the aisle
+	 * @throws StoreModelServiceException  if the given store or aisle ID is invalid
+	 */
+	public long getAisleOccupancy(Address address, String authToken) throws StoreModelServiceException {
+		// Check for permission
+		this.checkPermission("read_user", null, authToken);
+
+		// Validate the store ID
+		Store store = this.storeMap.get(address.getStoreId());
+		if (store == null) {
+			throw new StoreModelServiceException("get aisle occupancy", address.getStoreId() + " does not exist");
+		}
+
+		// Validate the aisle ID
+		try {
+			store.getAisle(address.getAisleId());
+		} catch (IllegalArgumentException e) {
+			throw new StoreModelServiceException("get aisle occupancy", e.getMessage());
+		}
+
+		return this.customerLocationIndex.countCustomersInAisle(address.getStoreId(), address.getAisleId());
+	}
+
+	/**
+	 * Validates the store ID and sets the max number of customers allowed in the store at the same time.
+	 *
+	 * @param storeId  Unique ID of the store
+	 * @param capacity  Capacity of the store, 0 for no limit
+	 * @param authToken  Authorization token
+	 * @return  The Store object
+	 * @throws StoreModelServiceException  if the given store ID or capacity is invalid
+	 */
+	public Store setStoreCapacity(String storeId, int capacity, String authToken) throws StoreModelServiceException {
+		// Check for permission
+		this.checkPermission("provision_store", null, authToken);
+
+		// Validate the store ID
+		Store store = this.storeMap.get(storeId);
+		if (store == null) {
+			throw new StoreModelServiceException("set store capacity", storeId + " does not exist");
+		}
+
+		try {
+			store.setCapacity(capacity);
+		} catch (IllegalArgumentException e) {
+			throw new StoreModelServiceException("set store capacity", e.getMessage());
+		}
+
+		return store;
+	}
+
 	/**
 	 * Returns the given customer's account address.
 	 *
@@ -736,7 +893,9 @@ public class StoreModelService implements Subject{
 		}
 
 		Basket basket = new Basket(id);
-		this.basketMap.put(basket.getId(), basket);
+		if (this.basketMap.putIfAbsent(basket.getId(), basket) != null) {
+			throw new StoreModelServiceException("define basket", id + " already exists");
+		}
 
 		return basket;
 	}
@@ -778,20 +937,24 @@ public class StoreModelService implements Subject{
 		Basket basket = this.basketMap.get(basketId);
 		Customer customer = this.customerMap.get(customerId);
 
-		// Check if the customer already has a basket
-		if (customer.getBasket() != null) {
-			throw new StoreModelServiceException("assign basket", customerId + " already has a basket "
-					+ "(Basket " + customer.getBasket().getId() + ")");
-		}
+		synchronized (this.customerLocks.forKey(customerId)) {
+			// Check if the customer already has a basket
+			Basket currentBasket = customer.getBasket();
+			if (currentBasket != null) {
+				throw new StoreModelServiceException("assign basket", customerId + " already has a basket "
+						+ "(Basket " + currentBasket.getId() + ")");
+			}
 
-		// Check if the basket is already assigned to a customer
-		if (this.basketCustomerMap.containsKey(basket.getId())) {
-			throw new StoreModelServiceException("assign basket", basketId + " is already assigned to "
-					+ "Customer " + this.basketCustomerMap.get(basket.getId()).getId());
-		}
+			// Claim the basket unless it is already assigned to a customer
+			Customer owner = this.basketCustomerMap.putIfAbsent(basket.getId(), customer);
+			if (owner != null) {
+				throw new StoreModelServiceException("assign basket", basketId + " is already assigned to "
+						+ "Customer " + owner.getId());
+			}
 
-		customer.setBasket(basket);
-		this.basketCustomerMap.put(basket.getId(), customer);
+			basket.assigned();
+			customer.setBasket(basket);
+		}
 
 		System.out.println(basket.getId() + " assigned to " + customer.getId());
 
@@ -821,36 +984,36 @@ public class StoreModelService implements Subject{
 			throw new StoreModelServiceException("get customer basket", id + " is not registered");
 		}
 
-		Basket basket = this.customerMap.get(id).getBasket();
+		synchronized (this.customerLocks.forKey(id)) {
+			Basket basket = this.customerMap.get(id).getBasket();
 
-		// Create new basket if the customer does not already have a basket.
-		if (basket == null) {
-			// Generate new basket
-			basket = new Basket(this.generateBasketId());
-			this.basketMap.put(basket.getId(), basket);
-			// Assign the basket
-			this.assignBasket(basket.getId(), id, authToken);
-		}
+			// Create new basket if the customer does not already have a basket.
+			if (basket == null) {
+				// Generate new basket
+				basket = this.generateBasket();
+				// Assign the basket
+				this.assignBasket(basket.getId(), id, authToken);
+			}
 
-		return basket;
+			return basket;
+		}
 	}
 
 	/**
-	 * Generates a unique basket ID that starts with the letter 'b'.
+	 * Generates a basket with a unique ID that starts with "BASKET_" and adds it to basketMap.
 	 *
-	 * @return  Unique basket ID
+	 * @return  The new Basket object
 	 */
-	private String generateBasketId() {
-		// Generate an initial basket ID that starts with the letter 'b' and followed by an integer
-		String id = "BASKET_" + (this.basketMap.size() + 1);
-
-		// Increment the integer part until a unique ID is found
+	private Basket generateBasket() {
+		// Start from the number of baskets and increment until an unused ID is claimed
+		int number = this.basketMap.size() + 1;
 		while (true) {
-			if (!this.basketMap.containsKey(id)) break;
-			id = "BASKET_" + (Integer.parseInt(id.substring(1)) + 1);
+			Basket basket = new Basket("BASKET_" + number);
+			if (this.basketMap.putIfAbsent(basket.getId(), basket) == null) {
+				return basket;
+			}
+			number++;
 		}
-
-		return id;
 	}
 
 	/**
@@ -950,16 +1113,22 @@ public class StoreModelService implements Subject{
 		}
 
 		// Check if the basket is assigned to a customer
-		if (!this.basketCustomerMap.containsKey(id)) {
+		Customer customer = this.basketCustomerMap.get(id);
+		if (customer == null) {
 			throw new StoreModelServiceException("clear basket", id + " is not associated with any "
 					+ "customer");
 		}
 
-		// Set customer's basket to null
-		this.basketCustomerMap.get(id).setBasket(null);
+		synchronized (this.customerLocks.forKey(customer.getId())) {
+			// Remove the basket-customer association unless another thread has already removed it
+			if (!this.basketCustomerMap.remove(id, customer)) {
+				throw new StoreModelServiceException("clear basket", id + " is not associated with any "
+						+ "customer");
+			}
 
-		// Remove the basket-customer association
-		this.basketCustomerMap.remove(id);
+			// Set customer's basket to null
+			customer.setBasket(null);
+		}
 
 		// Clear contents of the Basket and return the Basket
 		return this.basketMap.get(id).clearBasket();
@@ -1109,24 +1278,24 @@ public class StoreModelService implements Subject{
 			throw new StoreModelServiceException("define device", storeId + " does not exist");
 		}
 
-		// Validate the Device ID
-		if (this.deviceStoreMap.containsKey(deviceId)) {
+		// Validate the Device ID and reserve it so that a concurrent definition of the same ID fails
+		Store store = this.storeMap.get(storeId);
+		if (this.deviceStoreMap.putIfAbsent(deviceId, store) != null) {
 			throw new StoreModelServiceException("define device", deviceId + " already exists");
 		}
 
 		// Create the address
-		Address address = new Address(storeId, aisleId);
+		Address address = Address.of(storeId, aisleId);
 
 		// Have the store create the Device object
 		Device device;
 		try {
-			device = this.storeMap.get(storeId).defineDevice(deviceId, name, type, address);
+			device = store.defineDevice(deviceId, name, type, address);
 		} catch (IllegalArgumentException e) {
+			this.deviceStoreMap.remove(deviceId);
 			throw new StoreModelServiceException("define device", e.getMessage());
 		}
 
-		this.deviceStoreMap.put(device.getId(), this.storeMap.get(storeId));
-
 		return device;
 	}
 
@@ -1398,16 +1567,18 @@ public class StoreModelService implements Subject{
 			this.deviceStoreMap.get(deviceId).assistCustomersExit(deviceId);
 		}
 
-		for (Map.Entry<String, Customer> entry : this.customerMap.entrySet()) {
-			Customer customer = entry.getValue();
-			if (customer.getLocation() != null && customer.getLocation().getStoreId().equals(storeId)) {
-				// Remove the basket-customer association and clear the contents of the basket
-				Basket basket = customer.getBasket();
-				if (basket != null) {
-					basket.clearBasket();
+		for (Customer customer : this.customerLocationIndex.getCustomersInStore(storeId)) {
+			synchronized (this.customerLocks.forKey(customer.getId())) {
+				Address location = customer.getLocation();
+				if (location != null && location.getStoreId().equals(storeId)) {
+					// Remove the basket-customer association and clear the contents of the basket
+					Basket basket = customer.getBasket();
+					if (basket != null) {
+						basket.clearBasket();
+					}
+					// Customer leaves the store
+					customer.updateLocation(null);
 				}
-				// Customer leaves the store
-				customer.updateLocation(null);
 			}
 		}
 
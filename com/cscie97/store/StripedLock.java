@@ -0,0 +1,46 @@
+package com.cscie97.store;
+
+/**
+ * Fixed set of lock objects that keys are spread over by their hash codes. Holding the lock of a key serializes the
+ * changes to everything guarded by that key, while changes for keys on other stripes run in parallel. Two keys may
+ * share a stripe, so a thread must not hold the locks of two keys at the same time.
+ *
+ * @author Burak Ufuktepe
+ */
+public class StripedLock {
+
+	/**
+	 * Class constant for the default number of stripes.
+	 */
+	public static final int DEFAULT_STRIPES = 64;
+
+	/**
+	 * Lock objects of the stripes.
+	 */
+	private final Object[] stripes;
+
+	/**
+	 * Class constructor that creates the lock objects.
+	 *
+	 * @param numOfStripes  Number of stripes, rounded up to a power of two
+	 */
+	public StripedLock(int numOfStripes) {
+		int size = Integer.highestOneBit(Math.max(1, numOfStripes - 1)) << 1;
+		this.stripes = new Object[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new Object();
+		}
+	}
+
+	/**
+	 * Retrieves the lock object of the stripe that the given key falls on.
+	 *
+	 * @param key  Key that identifies the guarded state
+	 * @return  Lock object to synchronize on
+	 */
+	public Object forKey(String key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return this.stripes[hash & (this.stripes.length - 1)];
+	}
+}